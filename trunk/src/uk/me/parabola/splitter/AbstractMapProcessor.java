@@ -13,11 +13,49 @@
 
 package uk.me.parabola.splitter;
 
+import java.io.File;
 import java.util.concurrent.BlockingQueue;
 
+import uk.me.parabola.splitter.args.SplitterParams;
+import uk.me.parabola.splitter.tools.ConcurrentSparseLong2IntMap;
+import uk.me.parabola.splitter.tools.SparseLong2IntMap;
+
 public abstract class AbstractMapProcessor implements MapProcessor {
 	public static final int UNASSIGNED = Short.MIN_VALUE;
 
+	/**
+	 * Create a map for ids which uses the storage and encoding given with --map-storage and --map-encoding.
+	 * @param dataDesc the description used in messages
+	 * @param mainOptions the main program options
+	 * @return the new map, it returns {@link #UNASSIGNED} for unknown keys
+	 */
+	protected static SparseLong2IntMap createSparseMap(String dataDesc, SplitterParams mainOptions) {
+		SparseLong2IntMap.Storage storage = SparseLong2IntMap.Storage.valueOf(mainOptions.getMapStorage().toUpperCase());
+		String outputDir = mainOptions.getOutputDir();
+		SparseLong2IntMap map = new SparseLong2IntMap(dataDesc, storage, new File(outputDir == null ? "." : outputDir));
+		map.setEncoding(SparseLong2IntMap.Encoding.valueOf(mainOptions.getMapEncoding().toUpperCase()));
+		map.defaultReturnValue(UNASSIGNED);
+		return map;
+	}
+
+	/**
+	 * Create a thread-safe map for ids which uses the storage and encoding given with --map-storage and --map-encoding.
+	 * @param dataDesc the description used in messages
+	 * @param numThreads the number of threads that write concurrently
+	 * @param mainOptions the main program options
+	 * @return the new map, it returns {@link #UNASSIGNED} for unknown keys
+	 */
+	protected static ConcurrentSparseLong2IntMap createConcurrentSparseMap(String dataDesc, int numThreads,
+			SplitterParams mainOptions) {
+		SparseLong2IntMap.Storage storage = SparseLong2IntMap.Storage.valueOf(mainOptions.getMapStorage().toUpperCase());
+		String outputDir = mainOptions.getOutputDir();
+		ConcurrentSparseLong2IntMap map = new ConcurrentSparseLong2IntMap(dataDesc, numThreads, storage,
+				new File(outputDir == null ? "." : outputDir));
+		map.setEncoding(SparseLong2IntMap.Encoding.valueOf(mainOptions.getMapEncoding().toUpperCase()));
+		map.defaultReturnValue(UNASSIGNED);
+		return map;
+	}
+
 	@Override
 	public boolean skipTags(){
 		return false;
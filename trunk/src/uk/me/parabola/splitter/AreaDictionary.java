@@ -16,25 +16,54 @@ import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
 /**
  * Maps a set containing the used areas to an int value.  
  * An OSM element is written to one or more areas. Every used
  * combination of areas is translated to an int.
+ * <p>
+ * The index is keyed by a 64 bit fingerprint of the set and is split into segments,
+ * each an open addressing table with primitive arrays. A lookup doesn't need a lock,
+ * only new combinations are added while holding the lock of the segment. 
+ * A match of the fingerprint is always verified by comparing the sets.
+ * All public methods are thread-safe.
  * @author Gerd Petermann
  *
  */
 public class AreaDictionary {
 	private static final int DICT_START = Short.MAX_VALUE; 
+	private static final int SEGMENT_BITS = 4;
+	private static final int NOT_FOUND = Integer.MIN_VALUE;
+	private static final IntArrayList NO_EDGES = new IntArrayList(0);
 	private final Area[] areas; 
-	private final ArrayList<AreaSet> sets; 
+	/** the sets, the value returned by translate() is the position minus DICT_START */
+	private volatile AreaSet[] sets;
+	private volatile int numSets;
 	private final int numOfAreas;
-	private final HashMap<AreaSet, Integer> index;
+	private final Segment[] segments = new Segment[1 << SEGMENT_BITS];
 	private final HashSet<AreaSet> simpleNeighbours = new HashSet<>();
 	private final int overlapAmount;
+
+	/**
+	 * Part of the index. The table arrays are only modified while holding the lock of the segment. 
+	 * The volatile fields are written after each modification, so that readers see
+	 * complete entries. 
+	 */
+	private static final class Segment {
+		private volatile long[] keys;
+		private volatile int[] vals;
+		private volatile int count;
+
+		Segment() {
+			keys = new long[64];
+			vals = new int[64];
+		}
+	}
 	
 	/**
 	 * Create a dictionary for a given array of areas.
@@ -45,8 +74,9 @@ public class AreaDictionary {
 		this.areas = areas.toArray(new Area[areas.size()]);
 		this.overlapAmount = overlapAmount;
 		this.numOfAreas = areas.size();
-		sets = new ArrayList<>();
-		index = new HashMap<>(areas.size() * 4, 0.5f);
+		sets = new AreaSet[Math.max(16, numOfAreas * 2)];
+		for (int i = 0; i < segments.length; i++)
+			segments[i] = new Segment();
 		init();
 	}
 	
@@ -58,7 +88,8 @@ public class AreaDictionary {
 		ArrayList<AreaSet> areaSets = new ArrayList<>(numOfAreas);
 		for (int i = 0; i < numOfAreas; i++) {
 			AreaSet b = new AreaSet(i);
-			translate(b);
+			// the single area sets are stored in the order of the areas, see translate(int) 
+			lookupOrAdd(b, b.fingerprint());
 			rectangles.add(Utils.area2Rectangle(areas[i], 0));
 			areaSets.add(b);
 		}
@@ -70,63 +101,210 @@ public class AreaDictionary {
 	 * Calculate the int value for a given AreaSet. The AreaSet must not 
 	 * contain values higher than numOfAreas.
 	 * @param areaSet the AreaSet 
-	 * @return an Integer value that identifies this AreaSet, never null 
+	 * @return an int value that identifies this AreaSet 
 	 */
-	public Integer translate(final AreaSet areaSet) {
-		Integer combiIndex = index.get(areaSet);
-		if (combiIndex == null) {
-			combiIndex = (sets.size() - DICT_START);
-			if (combiIndex == Integer.MAX_VALUE) {
-				throw new SplitFailedException("areaDictionary is full. Try to decrease number of areas.");
+	public int translate(final AreaSet areaSet) {
+		if (areaSet.cardinality() == 1) {
+			// no need to do lookup in the dictionary
+			return translate(areaSet.iterator().nextInt());
+		}
+		long fp = areaSet.fingerprint();
+		int combiIndex = find(segments[segmentOf(fp)], areaSet, fp);
+		if (combiIndex != NOT_FOUND)
+			return combiIndex;
+		return lookupOrAdd(areaSet, fp);
+	}
+
+	private static int segmentOf(long fp) {
+		return (int) (fp >>> (64 - SEGMENT_BITS));
+	}
+
+	/**
+	 * Search the set in the segment without locking.
+	 * @return the int value or NOT_FOUND 
+	 */
+	private int find(Segment seg, AreaSet areaSet, long fp) {
+		if (seg.count == 0)
+			return NOT_FOUND;
+		long[] keys = seg.keys;
+		int[] vals = seg.vals;
+		int mask = keys.length - 1;
+		AreaSet[] knownSets = sets;
+		for (int i = (int) fp & mask; keys[i] != 0; i = (i + 1) & mask) {
+			if (keys[i] == fp) {
+				// vals may be from a newer table or not yet written, the check of the set detects that 
+				int pos = vals.length == keys.length ? vals[i] : -1;
+				if (pos >= 0 && pos < knownSets.length) {
+					AreaSet candidate = knownSets[pos];
+					if (candidate != null && candidate.equals(areaSet))
+						return pos - DICT_START;
+				}
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	/**
+	 * Search the set while holding the lock of the segment, add it if not found.
+	 * @return the int value
+	 */
+	private int lookupOrAdd(AreaSet areaSet, long fp) {
+		Segment seg = segments[segmentOf(fp)];
+		synchronized (seg) {
+			long[] keys = seg.keys;
+			int[] vals = seg.vals;
+			int mask = keys.length - 1;
+			int i = (int) fp & mask;
+			for (; keys[i] != 0; i = (i + 1) & mask) {
+				if (keys[i] == fp && sets[vals[i]].equals(areaSet))
+					return vals[i] - DICT_START;
 			}
 			AreaSet set = new AreaSet(areaSet);
 			set.lock();
-			sets.add(set);
-			index.put(set, combiIndex);
-			if (sets.size() % 1000 == 0)
-				System.out.println("dictionary contains now " + Utils.format(sets.size()) + " entries");
+			int pos = addSet(set);
+			vals[i] = pos;
+			keys[i] = fp;
+			if ((seg.count + 1) * 2 > keys.length) 
+				rehash(seg);
+			seg.count++; // publishes the new entry
+			return pos - DICT_START;
+		}
+	}
+
+	/**
+	 * Double the size of the table of the segment.
+	 */
+	private static void rehash(Segment seg) {
+		long[] oldKeys = seg.keys;
+		int[] oldVals = seg.vals;
+		long[] keys = new long[oldKeys.length * 2];
+		int[] vals = new int[keys.length];
+		int mask = keys.length - 1;
+		for (int j = 0; j < oldKeys.length; j++) {
+			long fp = oldKeys[j];
+			if (fp != 0) {
+				int i = (int) fp & mask;
+				while (keys[i] != 0)
+					i = (i + 1) & mask;
+				keys[i] = fp;
+				vals[i] = oldVals[j];
+			}
+		}
+		seg.vals = vals;
+		seg.keys = keys;
+	}
+
+	/**
+	 * Append a new set.
+	 * @return the position of the set
+	 */
+	private synchronized int addSet(AreaSet set) {
+		int pos = numSets;
+		if (pos - DICT_START == Integer.MAX_VALUE) {
+			throw new SplitFailedException("areaDictionary is full. Try to decrease number of areas.");
 		}
-		return combiIndex;
+		AreaSet[] arr = sets;
+		if (pos == arr.length)
+			arr = Arrays.copyOf(arr, arr.length * 2);
+		arr[pos] = set;
+		sets = arr;
+		numSets = pos + 1;
+		if (numSets % 1000 == 0)
+			System.out.println("dictionary contains now " + Utils.format(numSets) + " entries");
+		return pos;
 	}
 
 	/**
 	 * Find those areas that build rectangles when they are 
 	 * added together. A way or relation that lies exactly within 
-	 * such a combination cannot cross other areas. 
+	 * such a combination cannot cross other areas.
+	 * <p>
+	 * Two rectangles are combined when they share a full edge. The edges are 
+	 * stored in hash maps keyed by the position of the edge and its lower end,
+	 * so the neighbours of a rectangle are found without comparing all pairs.
+	 * Each round combines the rectangles found in the previous round with all 
+	 * known rectangles, pairs of older rectangles were already checked before.    
 	 * @param rectangles 
 	 * @param areaSets
 	 */
 	private void findSimpleNeigbours(ArrayList<Rectangle> rectangles, ArrayList<AreaSet> areaSets){
-		ArrayList<Rectangle> newRectangles = new ArrayList<>();
-		ArrayList<AreaSet> newAreaSets = new ArrayList<>();
-		
-		for (int i = 0; i < rectangles.size(); i++) {
-			Rectangle r1 = rectangles.get(i);
-			for (int j = i + 1; j < rectangles.size(); j++) {
-				Rectangle r2 = rectangles.get(j);
-				boolean isSimple = r1.y == r2.y && r1.height == r2.height
-						&& (r1.x == r2.getMaxX() || r2.x == r1.getMaxX())
-						|| (r1.x == r2.x && r1.width == r2.width && (r1.y == r2.getMaxY() || r2.y == r1.getMaxY()));
-				if (isSimple) {
-					AreaSet simpleNeighbour = new AreaSet(areaSets.get(i));
-					simpleNeighbour.or(areaSets.get(j));
-					if (simpleNeighbour.cardinality() <= 10 && !simpleNeighbours.contains(simpleNeighbour)) {
-						simpleNeighbours.add(simpleNeighbour);
-						Rectangle pair = new Rectangle(r1);
-						pair.add(r2);
-						newRectangles.add(pair);
-						newAreaSets.add(simpleNeighbour);
-					}
-				}
+		Long2ObjectOpenHashMap<IntArrayList> leftEdges = new Long2ObjectOpenHashMap<>();
+		Long2ObjectOpenHashMap<IntArrayList> rightEdges = new Long2ObjectOpenHashMap<>();
+		Long2ObjectOpenHashMap<IntArrayList> lowerEdges = new Long2ObjectOpenHashMap<>();
+		Long2ObjectOpenHashMap<IntArrayList> upperEdges = new Long2ObjectOpenHashMap<>();
+		int firstNew = 0;
+		while (firstNew < rectangles.size()) {
+			int end = rectangles.size();
+			for (int i = firstNew; i < end; i++) {
+				Rectangle r = rectangles.get(i);
+				addEdge(leftEdges, r.x, r.y, i);
+				addEdge(rightEdges, r.x + r.width, r.y, i);
+				addEdge(lowerEdges, r.y, r.x, i);
+				addEdge(upperEdges, r.y + r.height, r.x, i);
 			}
-		}
-		if (!newRectangles.isEmpty()) {
+			ArrayList<Rectangle> newRectangles = new ArrayList<>();
+			ArrayList<AreaSet> newAreaSets = new ArrayList<>();
+			for (int i = firstNew; i < end; i++) {
+				Rectangle r = rectangles.get(i);
+				// new rectangles are combined with all on the right / upper side and with the older ones 
+				// on the left / lower side, so that each pair is checked once
+				combineAll(i, getEdge(leftEdges, r.x + r.width, r.y), end, true, rectangles, areaSets, newRectangles, newAreaSets);
+				combineAll(i, getEdge(rightEdges, r.x, r.y), firstNew, true, rectangles, areaSets, newRectangles, newAreaSets);
+				combineAll(i, getEdge(lowerEdges, r.y + r.height, r.x), end, false, rectangles, areaSets, newRectangles, newAreaSets);
+				combineAll(i, getEdge(upperEdges, r.y, r.x), firstNew, false, rectangles, areaSets, newRectangles, newAreaSets);
+			}
+			if (simpleNeighbours.size() >= 1000)
+				break;
 			rectangles.addAll(newRectangles);
 			areaSets.addAll(newAreaSets);
-			newRectangles = null;
-			newAreaSets = null;
-			if (simpleNeighbours.size() < 1000)
-				findSimpleNeigbours(rectangles, areaSets);
+			firstNew = end;
+		}
+	}
+
+	private static long edgeKey(int pos, int start) {
+		return ((long) pos << 32) | (start & 0xffffffffL);
+	}
+
+	private static void addEdge(Long2ObjectOpenHashMap<IntArrayList> edges, int pos, int start, int idx) {
+		long key = edgeKey(pos, start);
+		IntArrayList list = edges.get(key);
+		if (list == null) {
+			list = new IntArrayList(2);
+			edges.put(key, list);
+		}
+		list.add(idx);
+	}
+
+	private static IntArrayList getEdge(Long2ObjectOpenHashMap<IntArrayList> edges, int pos, int start) {
+		IntArrayList list = edges.get(edgeKey(pos, start));
+		return list == null ? NO_EDGES : list;
+	}
+
+	/**
+	 * Combine a rectangle with those candidates that share the full edge.
+	 * @param i the index of the rectangle
+	 * @param candidates indexes of rectangles with a matching edge position and start
+	 * @param limit only candidates with a lower index are used
+	 * @param horizontal true if the candidates are left or right of the rectangle
+	 */
+	private void combineAll(int i, IntArrayList candidates, int limit, boolean horizontal, ArrayList<Rectangle> rectangles,
+			ArrayList<AreaSet> areaSets, ArrayList<Rectangle> newRectangles, ArrayList<AreaSet> newAreaSets) {
+		Rectangle r1 = rectangles.get(i);
+		for (int k = 0; k < candidates.size(); k++) {
+			int j = candidates.getInt(k);
+			if (j >= limit || j == i)
+				continue;
+			Rectangle r2 = rectangles.get(j);
+			if (horizontal ? r1.height != r2.height : r1.width != r2.width)
+				continue;
+			AreaSet simpleNeighbour = new AreaSet(areaSets.get(i));
+			simpleNeighbour.or(areaSets.get(j));
+			if (simpleNeighbour.cardinality() <= 10 && simpleNeighbours.add(simpleNeighbour)) {
+				Rectangle pair = new Rectangle(r1);
+				pair.add(r2);
+				newRectangles.add(pair);
+				newAreaSets.add(simpleNeighbour);
+			}
 		}
 	}
 	
@@ -137,7 +315,7 @@ public class AreaDictionary {
 	 * @return the AreaSet
 	 */
 	public AreaSet getSet(final int idx) {
-		return sets.get(DICT_START + idx);
+		return sets[DICT_START + idx];
 	}
 	
 
@@ -146,13 +324,17 @@ public class AreaDictionary {
 	 * @return the number of sets in this dictionary
 	 */
 	public int size() {
-		return sets.size();
+		return numSets;
 	}
 
 	public int getNumOfAreas() {
 		return numOfAreas;
 	}
 
+	public int getOverlapAmount() {
+		return overlapAmount;
+	}
+
 	public boolean mayCross(AreaSet areaSet) {
 		return !simpleNeighbours.contains(areaSet);
 	}
@@ -14,20 +14,29 @@
 package uk.me.parabola.splitter;
 
 import java.util.Arrays;
-import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+import it.unimi.dsi.fastutil.ints.AbstractIntIterator;
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 
 /**
  * A partly set implementation. Used as a replacement for BitSet which is slow when 
  * values are rather high, e.g. > 50000. 
+ * Small sets are stored as sorted list, sets with more than {@code BITMAP_LIMIT} 
+ * elements are stored as bitmap so that or() and subtract() work on whole words.
+ * hashCode() and equals() don't depend on the representation.
  *  
  * @author Gerd Petermann
  *
  */
 public final class AreaSet implements Iterable<Integer> {
 	private static final int BIN_SEARCH_LIMIT = 10;
+	private static final int BITMAP_LIMIT = 32;
 	private final IntArrayList list;
+	/** if not null, the elements are stored here and list is empty */
+	private long[] bits;
+	private int bitCount;
 	private boolean locked;
 	
 	/** Create empty set. */
@@ -39,7 +48,11 @@ public final class AreaSet implements Iterable<Integer> {
 	 * @param other set to clone
 	 */
 	public AreaSet(final AreaSet other) {
-		if (!other.isEmpty()) {
+		if (other.bits != null) {
+			list = new IntArrayList();
+			bits = Arrays.copyOf(other.bits, other.usedWords());
+			bitCount = other.bitCount;
+		} else if (!other.isEmpty()) {
 			list = new IntArrayList(other.list);
 		} else 
 			list = new IntArrayList();
@@ -56,8 +69,14 @@ public final class AreaSet implements Iterable<Integer> {
 	
 	/**
 	 * Lock this set. A locked set cannot be changed.
+	 * The smaller representation is used for locked sets.
 	 */
 	public void lock() {
+		if (bits != null && bitCount * 4 < usedWords() * 8) {
+			toList();
+		}
+		if (bits != null)
+			bits = Arrays.copyOf(bits, usedWords());
 		this.list.trim();
 		this.locked = true;
 	}
@@ -70,6 +89,10 @@ public final class AreaSet implements Iterable<Integer> {
      * @return the value of the bit with the specified index
      */
 	public boolean get(final int index) {
+		if (bits != null) {
+			int w = index >>> 6;
+			return w < bits.length && (bits[w] & (1L << index)) != 0;
+		}
 		if (list.size() < BIN_SEARCH_LIMIT) {
 			return list.contains(index);
 		}
@@ -83,16 +106,31 @@ public final class AreaSet implements Iterable<Integer> {
 	public void set(final int index) {
 		if (locked)
 			throw new IllegalAccessError("AreaSet is locked");
-		if (list.isEmpty()) {
+		if (bits != null) {
+			setBit(index);
+		} else if (list.isEmpty()) {
 			list.add(index);
 		} else {
 			int p = Arrays.binarySearch(list.elements(), 0, list.size(), index);
 			if (p < 0) {
 				list.add(-p - 1, index);
+				if (list.size() > BITMAP_LIMIT)
+					toBitmap();
 			}
 		}
 	}
 
+	private void setBit(final int index) {
+		int w = index >>> 6;
+		if (w >= bits.length)
+			bits = Arrays.copyOf(bits, Math.max(w + 1, bits.length + (bits.length >> 1)));
+		long mask = 1L << index;
+		if ((bits[w] & mask) == 0) {
+			bits[w] |= mask;
+			bitCount++;
+		}
+	}
+
 	/**
 	 * Remove the element from the set. 
 	 * @param index the element
@@ -100,6 +138,15 @@ public final class AreaSet implements Iterable<Integer> {
 	public void clear(final int index) {
 		if (locked)
 			throw new IllegalAccessError("AreaSet is locked");
+		if (bits != null) {
+			int w = index >>> 6;
+			long mask = 1L << index;
+			if (w < bits.length && (bits[w] & mask) != 0) {
+				bits[w] &= ~mask;
+				bitCount--;
+			}
+			return;
+		}
 		int pos;
 		if (list.size() < BIN_SEARCH_LIMIT) {
 			list.rem(index);
@@ -107,7 +154,7 @@ public final class AreaSet implements Iterable<Integer> {
 			pos = Arrays.binarySearch(list.elements(), 0, list.size(), index);
 			if (pos >= 0) {
 				list.removeInt(pos);
-		}
+			}
 		}
 	}
 
@@ -120,13 +167,60 @@ public final class AreaSet implements Iterable<Integer> {
 			throw new IllegalAccessError("AreaSet is locked");
 		if (other.isEmpty())
 			return;
-		if (list.isEmpty()) {
+		if (other.bits != null) {
+			if (bits == null)
+				toBitmap();
+			int words = other.usedWords();
+			if (words > bits.length)
+				bits = Arrays.copyOf(bits, words);
+			for (int i = 0; i < words; i++) {
+				long old = bits[i];
+				long merged = old | other.bits[i];
+				if (merged != old) {
+					bits[i] = merged;
+					bitCount += Long.bitCount(merged) - Long.bitCount(old);
+				}
+			}
+		} else if (bits != null) {
+			int[] elems = other.list.elements();
+			for (int i = 0; i < other.list.size(); i++)
+				setBit(elems[i]);
+		} else if (list.isEmpty()) {
 			list.addAll(other.list);
-		} else { 
-			for (int i : other.list) {
-				set(i);
+		} else if (list.size() + other.list.size() > BITMAP_LIMIT) {
+			toBitmap();
+			or(other);
+		} else {
+			mergeLists(other.list);
+		}
+	}
+
+	/**
+	 * Merge two sorted lists.
+	 */
+	private void mergeLists(IntArrayList other) {
+		int n = list.size();
+		int m = other.size();
+		int[] a = list.elements();
+		int[] b = other.elements();
+		int[] res = new int[n + m];
+		int i = 0, j = 0, k = 0;
+		while (i < n && j < m) {
+			if (a[i] < b[j])
+				res[k++] = a[i++];
+			else if (a[i] > b[j])
+				res[k++] = b[j++];
+			else {
+				res[k++] = a[i++];
+				j++;
 			}
 		}
+		while (i < n)
+			res[k++] = a[i++];
+		while (j < m)
+			res[k++] = b[j++];
+		list.clear();
+		list.addElements(0, res, 0, k);
 	}
 	
 	/**
@@ -136,8 +230,28 @@ public final class AreaSet implements Iterable<Integer> {
 	public void subtract(final AreaSet other) {
 		if (locked)
 			throw new IllegalAccessError("AreaSet is locked");
-		for (int i : other.list) { 
-			clear(i);
+		if (bits != null && other.bits != null) {
+			int words = Math.min(bits.length, other.bits.length);
+			for (int i = 0; i < words; i++) {
+				long old = bits[i];
+				long res = old & ~other.bits[i];
+				if (res != old) {
+					bits[i] = res;
+					bitCount -= Long.bitCount(old) - Long.bitCount(res);
+				}
+			}
+		} else if (bits == null && other.bits != null) {
+			int[] elems = list.elements();
+			int k = 0;
+			for (int i = 0; i < list.size(); i++) {
+				if (!other.get(elems[i]))
+					elems[k++] = elems[i];
+			}
+			list.size(k);
+		} else {
+			for (IntIterator iter = other.iterator(); iter.hasNext();) {
+				clear(iter.nextInt());
+			}
 		}
 	}
 	
@@ -145,7 +259,7 @@ public final class AreaSet implements Iterable<Integer> {
 	 * @return number of elements in this set
 	 */
 	public int cardinality() {
-		return list.size();
+		return bits != null ? bitCount : list.size();
 	}
 
 	/**
@@ -161,22 +275,99 @@ public final class AreaSet implements Iterable<Integer> {
 	public void clear() {
 		if (locked)
 			throw new IllegalAccessError("AreaSet is locked");
+		if (bits != null) {
+			Arrays.fill(bits, 0, usedWords(), 0);
+			bitCount = 0;
+		}
 		list.clear();
 	}
-	
 
 	/**
-	 * @return an iterator over this set.
+	 * @return the number of words up to the highest word which is not 0
+	 */
+	private int usedWords() {
+		int n = bits.length;
+		while (n > 0 && bits[n - 1] == 0)
+			n--;
+		return n;
+	}
+
+	private void toBitmap() {
+		int max = list.isEmpty() ? 0 : list.getInt(list.size() - 1);
+		bits = new long[(max >>> 6) + 1];
+		int[] elems = list.elements();
+		for (int i = 0; i < list.size(); i++)
+			bits[elems[i] >>> 6] |= 1L << elems[i];
+		bitCount = list.size();
+		list.clear();
+	}
+
+	private void toList() {
+		list.clear();
+		for (IntIterator iter = iterator(); iter.hasNext();)
+			list.add(iter.nextInt());
+		bits = null;
+		bitCount = 0;
+	}
+
+	/**
+	 * @return an iterator over this set. The elements are returned in ascending order. 
 	 */
 	@Override
-	public Iterator<Integer> iterator() {
-		return list.iterator();
-		
+	public IntIterator iterator() {
+		if (bits == null)
+			return list.iterator();
+		return new AbstractIntIterator() {
+			private int word = -1;
+			private long remaining;
+
+			@Override
+			public boolean hasNext() {
+				while (remaining == 0) {
+					if (++word >= bits.length)
+						return false;
+					remaining = bits[word];
+				}
+				return true;
+			}
+
+			@Override
+			public int nextInt() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				int res = word * 64 + Long.numberOfTrailingZeros(remaining);
+				remaining &= remaining - 1;
+				return res;
+			}
+		};
 	}
 	
+	/**
+	 * Calculate a 64 bit hash of the elements which doesn't depend on the representation.
+	 * @return the hash value, never 0
+	 */
+	long fingerprint() {
+		long h = 0x9E3779B97F4A7C15L * (cardinality() + 1);
+		for (IntIterator iter = iterator(); iter.hasNext();) {
+			h ^= iter.nextInt();
+			h *= 0xFF51AFD7ED558CCDL;
+			h ^= h >>> 32;
+		}
+		h ^= h >>> 29;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 32;
+		return h == 0 ? 1 : h;
+	}
+
 	@Override
 	public int hashCode() {
-		return list.hashCode();
+		if (bits == null)
+			return list.hashCode();
+		// same as IntArrayList.hashCode()
+		int h = 1;
+		for (IntIterator iter = iterator(); iter.hasNext();)
+			h = 31 * h + iter.nextInt();
+		return h;
 	}
 
 	@Override
@@ -188,12 +379,29 @@ public final class AreaSet implements Iterable<Integer> {
 		AreaSet other = (AreaSet) obj;
 		if (isEmpty() && other.isEmpty())
 			return true;
-		return list.equals(other.list);
+		if (cardinality() != other.cardinality())
+			return false;
+		if (bits == null && other.bits == null)
+			return list.equals(other.list);
+		IntIterator iter1 = iterator();
+		IntIterator iter2 = other.iterator();
+		while (iter1.hasNext()) {
+			if (iter1.nextInt() != iter2.nextInt())
+				return false;
+		}
+		return true;
 	}
 
 	@Override
 	public String toString() {
-		return list.toString();
+		if (bits == null)
+			return list.toString();
+		StringBuilder sb = new StringBuilder("[");
+		for (IntIterator iter = iterator(); iter.hasNext();) {
+			sb.append(iter.nextInt());
+			if (iter.hasNext())
+				sb.append(", ");
+		}
+		return sb.append(']').toString();
 	}
 }
-
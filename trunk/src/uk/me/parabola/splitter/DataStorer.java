@@ -17,11 +17,9 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
 import uk.me.parabola.splitter.tools.Long2IntClosedMapFunction;
-import uk.me.parabola.splitter.tools.OSMId2ObjectMap;
-import uk.me.parabola.splitter.tools.SparseLong2IntMap;
+import uk.me.parabola.splitter.tools.Long2IntMapFunction;
+import uk.me.parabola.splitter.tools.OSMId2IntMap;
 import uk.me.parabola.splitter.writer.OSMWriter;
 
 /**
@@ -34,6 +32,8 @@ public class DataStorer {
 	public static final int NODE_TYPE = 0;
 	public static final int WAY_TYPE = 1;
 	public static final int REL_TYPE = 2;
+	/** returned by the relation maps for unknown ids, {@link AbstractMapProcessor#UNASSIGNED} is a valid value */
+	public static final int NOT_STORED = Integer.MIN_VALUE;
 
 	private final int numOfAreas;
 
@@ -41,16 +41,16 @@ public class DataStorer {
 
 	private final AreaDictionary areaDictionary;
 	private final AreaIndex areaIndex;
-	private SparseLong2IntMap usedWays = null;
-	private final OSMId2ObjectMap<Integer> usedRels = new OSMId2ObjectMap<>();
+	private Long2IntMapFunction usedWays = null;
+	private final OSMId2IntMap usedRels = new OSMId2IntMap(NOT_STORED);
 	private boolean idsAreNotSorted;
 	private OSMWriter[] writers;
 	/**
 	 * map with relations that should be complete and are written to only one
 	 * tile
 	 */
-	private final Long2ObjectOpenHashMap<Integer> oneDistinctAreaOnlyRels = new Long2ObjectOpenHashMap<>();
-	private final OSMId2ObjectMap<Integer> oneTileOnlyRels = new OSMId2ObjectMap<>();
+	private final OSMId2IntMap oneDistinctAreaOnlyRels = new OSMId2IntMap(NOT_STORED);
+	private final OSMId2IntMap oneTileOnlyRels = new OSMId2IntMap(NOT_STORED);
 
 	/**
 	 * Create a dictionary for a given number of writers
@@ -62,7 +62,7 @@ public class DataStorer {
 	DataStorer(List<Area> areas, int overlapAmount) {
 		this.numOfAreas = areas.size();
 		this.areaDictionary = new AreaDictionary(areas, overlapAmount);
-		this.areaIndex = new AreaGrid(areaDictionary);
+		this.areaIndex = new FlatAreaIndex(areaDictionary);
 		return;
 	}
 
@@ -98,15 +98,15 @@ public class DataStorer {
 		return areaIndex;
 	}
 
-	public SparseLong2IntMap getUsedWays() {
+	public Long2IntMapFunction getUsedWays() {
 		return usedWays;
 	}
 
-	public OSMId2ObjectMap<Integer> getUsedRels() {
+	public OSMId2IntMap getUsedRels() {
 		return usedRels;
 	}
 
-	public void setUsedWays(SparseLong2IntMap ways) {
+	public void setUsedWays(Long2IntMapFunction ways) {
 		usedWays = ways;
 	}
 
@@ -138,13 +138,13 @@ public class DataStorer {
 		for (Long2IntClosedMapFunction map : maps) {
 			if (map != null) {
 				if (!msgWritten) {
-					System.out.println("Writing results of MultiTileAnalyser to temp files ...");
+					System.out.println("Preparing results of MultiTileAnalyser for sequential access ...");
 					msgWritten = true;
 				}
 				map.switchToSeqAccess(fileOutputDir);
 			}
 		}
-		System.out.println("Writing temp files took " + (System.currentTimeMillis() - start) + " ms");
+		System.out.println("Preparing results took " + (System.currentTimeMillis() - start) + " ms");
 	}
 
 	public void finish() {
@@ -169,7 +169,11 @@ public class DataStorer {
 		oneDistinctAreaOnlyRels.put(id, areaDictionary.translate(areaSet));
 	}
 
-	public Integer getOneTileOnlyRels(long id) {
+	/**
+	 * @param id the relation id
+	 * @return the area index or {@link #NOT_STORED}
+	 */
+	public int getOneTileOnlyRels(long id) {
 		return oneTileOnlyRels.get(id);
 	}
 
@@ -196,19 +200,18 @@ public class DataStorer {
 			} 
 		}
 
-		for (Entry<Long, Integer> e : distinctDataStorer.oneDistinctAreaOnlyRels.entrySet()) {
-			AreaSet singleArea =  distinctDataStorer.getAreaDictionary().getSet(e.getValue());
+		distinctDataStorer.oneDistinctAreaOnlyRels.forEach((relId, distinctIdx) -> {
+			AreaSet singleArea = distinctDataStorer.getAreaDictionary().getSet(distinctIdx);
 			assert singleArea.cardinality() == 1;
-			int pos = singleArea.iterator().next();
+			int pos = singleArea.iterator().nextInt();
 			if (!distinctAreas.get(pos).isPseudoArea()) {
 				Integer areaIdx = map.get(distinctAreas.get(pos));
 				if (areaIdx == null)
 					throw new SplitFailedException("failed to find index for area " + distinctAreas.get(pos)); 
-				oneTileOnlyRels.put(e.getKey(), areaIdx);
+				oneTileOnlyRels.put(relId, areaIdx);
 			} else {
-				oneTileOnlyRels.put(e.getKey(), AbstractMapProcessor.UNASSIGNED);
+				oneTileOnlyRels.put(relId, AbstractMapProcessor.UNASSIGNED);
 			}
-
-		}
+		});
 	}
 }
@@ -0,0 +1,431 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import uk.me.parabola.splitter.tools.IntervalTree;
+
+/**
+ * Sweep-line algorithms on lists of areas. A vertical line moves from west to east and stops
+ * at each longitude where an area starts or ends, the latitude intervals of the areas which
+ * are crossed by the line are kept in an {@link IntervalTree} or a segment tree.
+ * All calculations use the integer map units of the areas.
+ */
+final class DistinctAreas {
+	private static final int FIRST_ARTIFICIAL_ID = -99999999;
+
+	private DistinctAreas() {
+	}
+
+	/** a rectangle that is covered by the same areas */
+	private static class Piece {
+		final int minLat;
+		final int minLong;
+		int maxLat;
+		int maxLong;
+		final BitSet cover;
+
+		Piece(int minLat, int minLong, int maxLat, int maxLong, BitSet cover) {
+			this.minLat = minLat;
+			this.minLong = minLong;
+			this.maxLat = maxLat;
+			this.maxLong = maxLong;
+			this.cover = cover;
+		}
+	}
+
+	/**
+	 * Sort key for the start and end of an area, at the same longitude the ends come first.
+	 */
+	private static long eventKey(int lon, boolean isStart, int pos) {
+		return (long) lon << 32 | (isStart ? 1L << 31 : 0) | pos;
+	}
+
+	private static long[] createEvents(List<Area> areas) {
+		long[] events = new long[2 * areas.size()];
+		for (int i = 0; i < areas.size(); i++) {
+			Area a = areas.get(i);
+			events[2 * i] = eventKey(a.getMinLong(), true, i);
+			events[2 * i + 1] = eventKey(a.getMaxLong(), false, i);
+		}
+		Arrays.sort(events);
+		return events;
+	}
+
+	/**
+	 * Find all pairs of areas that overlap. Areas which only share an edge don't overlap.
+	 * @param areas the areas
+	 * @return the pairs of positions in the list, the first position is always the lower one,
+	 * sorted by the first and then by the second position
+	 */
+	static List<int[]> findOverlaps(List<Area> areas) {
+		IntervalTree active = new IntervalTree();
+		IntArrayList found = new IntArrayList();
+		List<int[]> overlaps = new ArrayList<>();
+		for (long event : createEvents(areas)) {
+			int pos = (int) (event & Integer.MAX_VALUE);
+			Area a = areas.get(pos);
+			if ((event & (1L << 31)) == 0) {
+				active.remove(a.getMinLat(), pos);
+				continue;
+			}
+			found.clear();
+			active.findOverlapping(a.getMinLat(), a.getMaxLat(), found);
+			for (int i = 0; i < found.size(); i++) {
+				int other = found.getInt(i);
+				overlaps.add(new int[] { Math.min(pos, other), Math.max(pos, other) });
+			}
+			active.add(a.getMinLat(), a.getMaxLat(), pos);
+		}
+		overlaps.sort((p1, p2) -> p1[0] != p2[0] ? Integer.compare(p1[0], p2[0]) : Integer.compare(p1[1], p2[1]));
+		return overlaps;
+	}
+
+	/**
+	 * Create a list of areas that do not overlap. Areas without overlaps are kept, each group
+	 * of overlapping areas is divided into rectangles which are covered by the same areas.
+	 * A rectangle which lies in one area only gets the id of this area, the others get an
+	 * artificial id and the id of the last area in the list as name.
+	 * @param realAreas the list of areas
+	 * @param overlaps the result of {@link #findOverlaps(List)} for this list
+	 * @return the new list
+	 */
+	static ArrayList<Area> getNonOverlappingAreas(List<Area> realAreas, List<int[]> overlaps) {
+		if (overlaps.isEmpty())
+			return new ArrayList<>(realAreas);
+		System.out.println("Removing overlaps from tiles...");
+		int n = realAreas.size();
+		int[] group = new int[n];
+		for (int i = 0; i < n; i++)
+			group[i] = i;
+		for (int[] pair : overlaps) {
+			int g1 = findGroup(group, pair[0]);
+			int g2 = findGroup(group, pair[1]);
+			group[Math.max(g1, g2)] = Math.min(g1, g2);
+		}
+		Int2ObjectOpenHashMap<List<Area>> members = new Int2ObjectOpenHashMap<>();
+		for (int i = 0; i < n; i++) {
+			int g = findGroup(group, i);
+			List<Area> list = members.get(g);
+			if (list == null) {
+				list = new ArrayList<>();
+				members.put(g, list);
+			}
+			list.add(realAreas.get(i));
+		}
+		ArrayList<Area> result = new ArrayList<>();
+		int artificialId = FIRST_ARTIFICIAL_ID;
+		for (int i = 0; i < n; i++) {
+			// the group is represented by its first member
+			if (findGroup(group, i) != i)
+				continue;
+			List<Area> groupAreas = members.get(i);
+			if (groupAreas.size() == 1) {
+				result.add(groupAreas.get(0));
+				continue;
+			}
+			for (Piece p : divide(groupAreas)) {
+				Area a = new Area(p.minLat, p.minLong, p.maxLat, p.maxLong);
+				if (p.cover.cardinality() == 1) {
+					a.setMapId(groupAreas.get(p.cover.nextSetBit(0)).getMapId());
+				} else {
+					a.setMapId(artificialId++);
+					a.setName("" + groupAreas.get(p.cover.length() - 1).getMapId());
+					a.setJoinable(false);
+				}
+				result.add(a);
+			}
+		}
+		if (!findOverlaps(result).isEmpty())
+			throw new SplitFailedException("Failed to create list of distinct areas");
+		return result;
+	}
+
+	private static int findGroup(int[] group, int pos) {
+		while (group[pos] != pos) {
+			group[pos] = group[group[pos]];
+			pos = group[pos];
+		}
+		return pos;
+	}
+
+	/**
+	 * Divide the union of a group of overlapping areas into rectangles. The line stops at
+	 * each edge of an area, the rectangles of the stripe between two stops are
+	 * joined with the rectangles of the previous stripe if they have the same latitudes and
+	 * are covered by the same areas.
+	 * @param areas the group of areas
+	 * @return the rectangles, ordered by the longitude and then the latitude of the lower left corner
+	 */
+	private static List<Piece> divide(List<Area> areas) {
+		int[] lons = distinctSorted(areas, false);
+		List<Piece> pieces = new ArrayList<>();
+		Int2ObjectOpenHashMap<Piece> open = new Int2ObjectOpenHashMap<>();
+		IntArrayList active = new IntArrayList();
+		for (int s = 0; s + 1 < lons.length; s++) {
+			int x0 = lons[s];
+			int x1 = lons[s + 1];
+			active.clear();
+			List<Area> crossed = new ArrayList<>();
+			for (int k = 0; k < areas.size(); k++) {
+				Area a = areas.get(k);
+				if (a.getMinLong() <= x0 && a.getMaxLong() >= x1) {
+					active.add(k);
+					crossed.add(a);
+				}
+			}
+			int[] lats = distinctSorted(crossed, true);
+			Int2ObjectOpenHashMap<Piece> next = new Int2ObjectOpenHashMap<>();
+			Piece cur = null;
+			List<Piece> stripe = new ArrayList<>();
+			for (int t = 0; t + 1 < lats.length; t++) {
+				int y0 = lats[t];
+				int y1 = lats[t + 1];
+				BitSet cover = new BitSet();
+				for (int i = 0; i < active.size(); i++) {
+					Area a = areas.get(active.getInt(i));
+					if (a.getMinLat() <= y0 && a.getMaxLat() >= y1)
+						cover.set(active.getInt(i));
+				}
+				if (cover.isEmpty()) {
+					cur = null;
+				} else if (cur != null && cur.cover.equals(cover)) {
+					cur.maxLat = y1;
+				} else {
+					cur = new Piece(y0, x0, y1, x1, cover);
+					stripe.add(cur);
+				}
+			}
+			for (Piece p : stripe) {
+				Piece prev = open.get(p.minLat);
+				if (prev != null && prev.maxLat == p.maxLat && prev.cover.equals(p.cover)) {
+					prev.maxLong = x1;
+					p = prev;
+				} else {
+					pieces.add(p);
+				}
+				next.put(p.minLat, p);
+			}
+			open = next;
+		}
+		return pieces;
+	}
+
+	private static int[] distinctSorted(List<Area> areas, boolean lat) {
+		int[] vals = new int[2 * areas.size()];
+		for (int i = 0; i < areas.size(); i++) {
+			Area a = areas.get(i);
+			vals[2 * i] = lat ? a.getMinLat() : a.getMinLong();
+			vals[2 * i + 1] = lat ? a.getMaxLat() : a.getMaxLong();
+		}
+		return unique(vals, vals.length);
+	}
+
+	private static int[] unique(int[] vals, int len) {
+		Arrays.sort(vals, 0, len);
+		int num = 0;
+		for (int i = 0; i < len; i++) {
+			if (num == 0 || vals[num - 1] != vals[i])
+				vals[num++] = vals[i];
+		}
+		return Arrays.copyOf(vals, num);
+	}
+
+	/**
+	 * Make sure that the areas cover the planet. The parts above and below the areas are
+	 * covered by one pseudo-area each. The remaining gaps are filled from west to east
+	 * with stripes, a stripe is joined with the pseudo-area on its west side if that has the
+	 * same latitudes.
+	 * @param realAreas the areas, they must not overlap
+	 * @return new list of areas containing the real areas and the pseudo-areas
+	 */
+	static List<Area> addPseudoAreas(List<Area> realAreas) {
+		ArrayList<Area> areas = new ArrayList<>(realAreas);
+		int minLon = Utils.toMapUnit(-180.0);
+		int maxLon = minLon + 2 * Utils.toMapUnit(180.0);
+		int minLat = Utils.toMapUnit(-90.0);
+		int maxLat = minLat + 2 * Utils.toMapUnit(90.0);
+		long planetSize = (long) (maxLon - minLon) * (maxLat - minLat);
+
+		int coveredMinLat = 0;
+		int coveredMaxLat = 0;
+		long sumAreas = 0;
+		for (int i = 0; i < areas.size(); i++) {
+			Area a = areas.get(i);
+			coveredMinLat = (i == 0) ? a.getMinLat() : Math.min(coveredMinLat, a.getMinLat());
+			coveredMaxLat = (i == 0) ? a.getMaxLat() : Math.max(coveredMaxLat, a.getMaxLat());
+			sumAreas += (long) a.getHeight() * a.getWidth();
+		}
+		if (maxLat > coveredMaxLat)
+			addPseudoArea(areas, coveredMaxLat, minLon, maxLat, maxLon); // top
+		if (coveredMinLat > minLat)
+			addPseudoArea(areas, minLat, minLon, coveredMinLat, maxLon); // bottom
+		fillGaps(areas, realAreas, minLon, maxLon, Math.max(minLat, coveredMinLat), Math.min(maxLat, coveredMaxLat));
+		for (int i = realAreas.size(); i < areas.size(); i++) {
+			sumAreas += (long) areas.get(i).getHeight() * areas.get(i).getWidth();
+		}
+		if (sumAreas != planetSize)
+			throw new SplitFailedException("Failed to fill planet with pseudo-areas");
+		return areas;
+	}
+
+	private static Area addPseudoArea(List<Area> areas, int minLat, int minLong, int maxLat, int maxLong) {
+		Area pseudo = new Area(minLat, minLong, maxLat, maxLong);
+		pseudo.setMapId(-1 * (areas.size() + 1));
+		pseudo.setPseudoArea(true);
+		areas.add(pseudo);
+		return pseudo;
+	}
+
+	/**
+	 * Add pseudo-areas for the parts of the band which are not covered by the real areas.
+	 */
+	private static void fillGaps(List<Area> areas, List<Area> realAreas, int minLon, int maxLon, int bandMinLat,
+			int bandMaxLat) {
+		if (bandMinLat >= bandMaxLat || minLon >= maxLon)
+			return;
+		// clip the areas to the band
+		List<Area> clipped = new ArrayList<>();
+		int[] lats = new int[2 * realAreas.size() + 2];
+		int numLats = 0;
+		lats[numLats++] = bandMinLat;
+		lats[numLats++] = bandMaxLat;
+		for (Area a : realAreas) {
+			int lat0 = Math.max(a.getMinLat(), bandMinLat);
+			int lat1 = Math.min(a.getMaxLat(), bandMaxLat);
+			int lon0 = Math.max(a.getMinLong(), minLon);
+			int lon1 = Math.min(a.getMaxLong(), maxLon);
+			if (lat0 >= lat1 || lon0 >= lon1)
+				continue;
+			clipped.add(new Area(lat0, lon0, lat1, lon1));
+			lats[numLats++] = lat0;
+			lats[numLats++] = lat1;
+		}
+		lats = unique(lats, numLats);
+		CoverageTree coverage = new CoverageTree(lats.length - 1);
+		long[] events = createEvents(clipped);
+		// maps the latitudes of a pseudo-area that ends at the current longitude to its position in areas
+		Long2IntOpenHashMap open = new Long2IntOpenHashMap();
+		open.defaultReturnValue(-1);
+		IntArrayList gaps = new IntArrayList();
+		int e = 0;
+		int lon = minLon;
+		while (lon < maxLon) {
+			for (; e < events.length && (int) (events[e] >> 32) == lon; e++) {
+				Area a = clipped.get((int) (events[e] & Integer.MAX_VALUE));
+				int delta = (events[e] & (1L << 31)) != 0 ? 1 : -1;
+				coverage.add(Arrays.binarySearch(lats, a.getMinLat()), Arrays.binarySearch(lats, a.getMaxLat()), delta);
+			}
+			int nextLon = (e < events.length) ? Math.min((int) (events[e] >> 32), maxLon) : maxLon;
+			gaps.clear();
+			coverage.findUncovered(lats, gaps);
+			Long2IntOpenHashMap next = new Long2IntOpenHashMap();
+			next.defaultReturnValue(-1);
+			for (int i = 0; i < gaps.size(); i += 2) {
+				int lat0 = gaps.getInt(i);
+				int lat1 = gaps.getInt(i + 1);
+				long key = (long) lat0 << 32 | (lat1 & 0xffffffffL);
+				int pos = open.get(key);
+				if (pos >= 0) {
+					Area prev = areas.get(pos);
+					Area pseudo = prev.add(new Area(lat0, lon, lat1, nextLon));
+					pseudo.setMapId(prev.getMapId());
+					pseudo.setPseudoArea(true);
+					areas.set(pos, pseudo);
+				} else {
+					addPseudoArea(areas, lat0, lon, lat1, nextLon);
+					pos = areas.size() - 1;
+				}
+				next.put(key, pos);
+			}
+			open = next;
+			lon = nextLon;
+		}
+	}
+
+	/**
+	 * Segment tree that counts how often the intervals between a sorted list of latitudes are covered.
+	 */
+	private static class CoverageTree {
+		private final int numLeaves;
+		/** number of added intervals which cover the whole node */
+		private final int[] count;
+		/** true if the node is completely covered */
+		private final boolean[] full;
+		/** true if no part of the node is covered */
+		private final boolean[] empty;
+
+		CoverageTree(int numLeaves) {
+			this.numLeaves = numLeaves;
+			count = new int[4 * numLeaves];
+			full = new boolean[4 * numLeaves];
+			empty = new boolean[4 * numLeaves];
+			Arrays.fill(empty, true);
+		}
+
+		/**
+		 * Add or remove the interval between the leaves from and to (exclusive).
+		 */
+		void add(int from, int to, int delta) {
+			add(1, 0, numLeaves, from, to, delta);
+		}
+
+		private void add(int node, int l, int r, int from, int to, int delta) {
+			if (to <= l || r <= from)
+				return;
+			if (from <= l && r <= to) {
+				count[node] += delta;
+			} else {
+				int mid = (l + r) >>> 1;
+				add(2 * node, l, mid, from, to, delta);
+				add(2 * node + 1, mid, r, from, to, delta);
+			}
+			boolean isLeaf = r - l == 1;
+			full[node] = count[node] > 0 || (!isLeaf && full[2 * node] && full[2 * node + 1]);
+			empty[node] = count[node] == 0 && (isLeaf || empty[2 * node] && empty[2 * node + 1]);
+		}
+
+		/**
+		 * @param lats the latitudes of the leaf boundaries
+		 * @param gaps receives lower and upper latitude of each maximal uncovered interval, from south to north
+		 */
+		void findUncovered(int[] lats, IntArrayList gaps) {
+			findUncovered(1, 0, numLeaves, lats, gaps);
+		}
+
+		private void findUncovered(int node, int l, int r, int[] lats, IntArrayList gaps) {
+			if (full[node])
+				return;
+			if (empty[node]) {
+				int size = gaps.size();
+				if (size > 0 && gaps.getInt(size - 1) == lats[l])
+					gaps.set(size - 1, lats[r]);
+				else {
+					gaps.add(lats[l]);
+					gaps.add(lats[r]);
+				}
+				return;
+			}
+			int mid = (l + r) >>> 1;
+			findUncovered(2 * node, l, mid, lats, gaps);
+			findUncovered(2 * node + 1, mid, r, lats, gaps);
+		}
+	}
+}
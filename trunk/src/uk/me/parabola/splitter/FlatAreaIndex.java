@@ -0,0 +1,337 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntRBTreeSet;
+
+/**
+ * An {@link AreaIndex} that stores the grid in one flat int array.
+ * Each grid cell is described by one int, the upper bits contain the type of the cell,
+ * the lower bits the payload:
+ * <ul>
+ * <li>EMPTY: no area intersects the cell</li>
+ * <li>SINGLE: the cell lies completely within one area, the payload is the area index</li>
+ * <li>SET: the cell lies completely within all areas of a dictionary entry</li>
+ * <li>RASTER: the edges of the areas divide the cell into a few rectangles, each of them lies
+ * completely within a set of areas. The payload is the position of the raster in the same array:
+ * number of latitude and longitude breaks, the breaks, and one descriptor for each rectangle.</li>
+ * <li>TEST: the areas of a dictionary entry intersect the cell, they have to be tested</li>
+ * <li>SUB: the cell is divided into {@code SUB_DIM * SUB_DIM} sub cells,
+ * the payload is the position of their descriptors in the same array</li>
+ * </ul>
+ * Like {@link AreaGrid} the extended bounds of the areas are used. Cells of type TEST
+ * are only used when neither a raster nor sub cells are possible, so for nearly all nodes the
+ * result doesn't require a test with {@link Area#contains(Node)}.
+ * <p>
+ * The returned results are shared and never modified, so the index can be used by concurrent threads.
+ */
+public class FlatAreaIndex implements AreaIndex {
+	private static final int GRID_DIM = 512;
+	private static final int SUB_DIM = 16;
+	/** max. number of rectangles in a raster */
+	private static final int MAX_RASTER_SIZE = 64;
+	/** cells must be larger than this to be divided */
+	private static final int MIN_CELL_SIZE = 2048;
+
+	private static final int TYPE_SHIFT = 29;
+	private static final int PAYLOAD_MASK = (1 << TYPE_SHIFT) - 1;
+	private static final int EMPTY = 0;
+	private static final int SINGLE = 1;
+	private static final int SET = 2;
+	private static final int TEST = 3;
+	private static final int SUB = 4;
+	private static final int RASTER = 5;
+
+	private final AreaDictionary areaDictionary;
+	/** the shared results, index is the payload of the descriptor */
+	private final AreaGridResult[] singleResults;
+	private final AreaGridResult[] setResults;
+	private final AreaGridResult[] testResults;
+	private final Area[] extAreas;
+	private final Area bounds;
+	private final int minLat, minLon;
+	private final int divLat, divLon;
+	private final int subDivLat, subDivLon;
+	private final int[] cells;
+	private int numSubCells;
+	private int numRasters;
+	private int maxTests;
+
+	/**
+	 * Create the index for all areas in the dictionary.
+	 * @param areaDictionary the dictionary
+	 */
+	FlatAreaIndex(AreaDictionary areaDictionary) {
+		this.areaDictionary = areaDictionary;
+		int numAreas = areaDictionary.getNumOfAreas();
+		extAreas = new Area[numAreas];
+		Area tmpBounds = null;
+		for (int i = 0; i < numAreas; i++) {
+			extAreas[i] = areaDictionary.getExtendedArea(i);
+			tmpBounds = (tmpBounds == null) ? extAreas[i] : tmpBounds.add(extAreas[i]);
+		}
+		if (tmpBounds == null) {
+			bounds = null;
+			minLat = minLon = 0;
+			divLat = divLon = subDivLat = subDivLon = 1;
+			cells = new int[0];
+			singleResults = setResults = testResults = new AreaGridResult[0];
+			return;
+		}
+		// create new Area to make sure that we don't update the existing area
+		bounds = new Area(tmpBounds.getMinLat(), tmpBounds.getMinLong(), tmpBounds.getMaxLat(), tmpBounds.getMaxLong());
+		minLat = bounds.getMinLat();
+		minLon = bounds.getMinLong();
+		divLat = bounds.getHeight() / GRID_DIM + 1;
+		divLon = bounds.getWidth() / GRID_DIM + 1;
+		subDivLat = divLat / SUB_DIM + 1;
+		subDivLon = divLon / SUB_DIM + 1;
+		cells = fillGrid();
+		singleResults = createResults(numAreas, false);
+		int numSets = areaDictionary.size();
+		setResults = createResults(numSets, false);
+		testResults = createResults(numSets, true);
+		System.out.println("FlatAreaIndex [" + (GRID_DIM + 1) + "][" + (GRID_DIM + 1) + "] for grid area " + bounds
+				+ " requires max. " + maxTests + " checks for each node (" + numSubCells + " cell(s) with sub cells, "
+				+ Utils.format(numRasters) + " raster(s), " + Utils.format(cells.length) + " ints)");
+	}
+
+	/**
+	 * The results are never modified, so that the index can be used by concurrent threads.
+	 * @param num the number of results
+	 * @param testNeeded the value for all results
+	 * @return array with one result for each set of the dictionary up to num
+	 */
+	private AreaGridResult[] createResults(int num, boolean testNeeded) {
+		AreaGridResult[] results = new AreaGridResult[num];
+		for (int i = 0; i < num; i++) {
+			results[i] = new AreaGridResult();
+			results[i].set = areaDictionary.getSet(i + AreaDictionary.translate(0));
+			results[i].testNeeded = testNeeded;
+		}
+		return results;
+	}
+
+	/**
+	 * Calculate the candidates of each cell and the cell descriptors.
+	 * @return the array with the descriptors
+	 */
+	private int[] fillGrid() {
+		final int dim = GRID_DIM + 1;
+		AreaSet[] candidates = new AreaSet[dim * dim];
+		for (int j = 0; j < extAreas.length; j++) {
+			Area a = extAreas[j];
+			int startLon = (a.getMinLong() - minLon) / divLon;
+			int endLon = (a.getMaxLong() - minLon) / divLon;
+			int startLat = (a.getMinLat() - minLat) / divLat;
+			int endLat = (a.getMaxLat() - minLat) / divLat;
+			for (int lon = startLon; lon <= endLon; lon++) {
+				for (int lat = startLat; lat <= endLat; lat++) {
+					int pos = lon * dim + lat;
+					if (candidates[pos] == null)
+						candidates[pos] = new AreaSet();
+					candidates[pos].set(j);
+				}
+			}
+		}
+		IntArrayList data = new IntArrayList(dim * dim);
+		data.size(dim * dim);
+		for (int lon = 0; lon < dim; lon++) {
+			for (int lat = 0; lat < dim; lat++) {
+				int pos = lon * dim + lat;
+				if (candidates[pos] == null)
+					continue;
+				int cellMinLat = minLat + lat * divLat;
+				int cellMinLon = minLon + lon * divLon;
+				data.set(pos, describeCell(cellMinLat, cellMinLon, divLat, divLon, candidates[pos], data));
+				candidates[pos] = null;
+			}
+		}
+		return data.toIntArray();
+	}
+
+	/**
+	 * Calculate the descriptor for a cell.
+	 * @param cellMinLat lowest latitude of the cell
+	 * @param cellMinLon lowest longitude of the cell
+	 * @param height the height of the cell
+	 * @param width the width of the cell
+	 * @param candidates the areas which may intersect the cell, or null if sub cells are calculated
+	 * @param data the array of descriptors, sub cells are appended
+	 * @return the descriptor
+	 */
+	private int describeCell(int cellMinLat, int cellMinLon, int height, int width, AreaSet candidates, IntArrayList data) {
+		int cellMaxLat = cellMinLat + height - 1;
+		int cellMaxLon = cellMinLon + width - 1;
+		AreaSet used = new AreaSet();
+		boolean testNeeded = false;
+		for (int j : candidates) {
+			Area a = extAreas[j];
+			if (a.getMinLat() > cellMaxLat || a.getMaxLat() < cellMinLat || a.getMinLong() > cellMaxLon
+					|| a.getMaxLong() < cellMinLon)
+				continue;
+			used.set(j);
+			if (a.getMinLat() > cellMinLat || a.getMaxLat() < cellMaxLat || a.getMinLong() > cellMinLon
+					|| a.getMaxLong() < cellMaxLon) {
+				// cell is not completely within area
+				testNeeded = true;
+			}
+		}
+		if (used.isEmpty())
+			return EMPTY;
+		if (!testNeeded)
+			return describeSet(used);
+		int raster = createRaster(cellMinLat, cellMinLon, cellMaxLat, cellMaxLon, used, data);
+		if (raster >= 0) {
+			numRasters++;
+			return RASTER << TYPE_SHIFT | raster;
+		}
+		if (height == divLat && height > MIN_CELL_SIZE && width > MIN_CELL_SIZE) {
+			int start = data.size();
+			data.size(start + SUB_DIM * SUB_DIM);
+			for (int lon = 0; lon < SUB_DIM; lon++) {
+				for (int lat = 0; lat < SUB_DIM; lat++) {
+					int desc = describeCell(cellMinLat + lat * subDivLat, cellMinLon + lon * subDivLon, subDivLat,
+							subDivLon, used, data);
+					data.set(start + lon * SUB_DIM + lat, desc);
+				}
+			}
+			numSubCells++;
+			return SUB << TYPE_SHIFT | start;
+		}
+		maxTests = Math.max(maxTests, used.cardinality());
+		return TEST << TYPE_SHIFT | toPayload(areaDictionary.translate(used));
+	}
+
+	/**
+	 * @return the descriptor for a rectangle that lies completely within the given areas
+	 */
+	private int describeSet(AreaSet set) {
+		if (set.isEmpty())
+			return EMPTY;
+		if (set.cardinality() == 1)
+			return SINGLE << TYPE_SHIFT | set.iterator().nextInt();
+		return SET << TYPE_SHIFT | toPayload(areaDictionary.translate(set));
+	}
+
+	/**
+	 * Try to divide the cell at the edges of the areas into rectangles which don't
+	 * require a test.
+	 * @return the position of the raster in data, or -1 if the raster would be too large
+	 */
+	private int createRaster(int cellMinLat, int cellMinLon, int cellMaxLat, int cellMaxLon, AreaSet used,
+			IntArrayList data) {
+		IntRBTreeSet latBreaks = new IntRBTreeSet();
+		IntRBTreeSet lonBreaks = new IntRBTreeSet();
+		for (int j : used) {
+			Area a = extAreas[j];
+			if (a.getMinLat() > cellMinLat)
+				latBreaks.add(a.getMinLat());
+			if (a.getMaxLat() < cellMaxLat)
+				latBreaks.add(a.getMaxLat() + 1);
+			if (a.getMinLong() > cellMinLon)
+				lonBreaks.add(a.getMinLong());
+			if (a.getMaxLong() < cellMaxLon)
+				lonBreaks.add(a.getMaxLong() + 1);
+		}
+		int nLat = latBreaks.size();
+		int nLon = lonBreaks.size();
+		if ((nLat + 1) * (nLon + 1) > MAX_RASTER_SIZE)
+			return -1;
+		int start = data.size();
+		data.add(nLat);
+		data.add(nLon);
+		data.addAll(latBreaks);
+		data.addAll(lonBreaks);
+		int[] lats = new int[nLat + 1];
+		int[] lons = new int[nLon + 1];
+		lats[0] = cellMinLat;
+		lons[0] = cellMinLon;
+		System.arraycopy(latBreaks.toIntArray(), 0, lats, 1, nLat);
+		System.arraycopy(lonBreaks.toIntArray(), 0, lons, 1, nLon);
+		int descPos = data.size();
+		data.size(descPos + lats.length * lons.length);
+		AreaSet set = new AreaSet();
+		for (int lon = 0; lon < lons.length; lon++) {
+			for (int lat = 0; lat < lats.length; lat++) {
+				// the lowest corner is representative for the whole rectangle
+				set.clear();
+				for (int j : used) {
+					if (extAreas[j].contains(lats[lat], lons[lon]))
+						set.set(j);
+				}
+				data.set(descPos + lon * lats.length + lat, describeSet(set));
+			}
+		}
+		return start;
+	}
+
+	/** dictionary values are negative for the single areas */
+	private static int toPayload(int dictIdx) {
+		return dictIdx - AreaDictionary.translate(0);
+	}
+
+	@Override
+	public Area getBounds() {
+		return bounds;
+	}
+
+	@Override
+	public AreaGridResult get(final Node n) {
+		return get(n.getMapLat(), n.getMapLon());
+	}
+
+	@Override
+	public AreaGridResult get(int lat, int lon) {
+		if (bounds == null || !bounds.contains(lat, lon))
+			return null;
+		int dLat = lat - minLat;
+		int dLon = lon - minLon;
+		int lonIdx = dLon / divLon;
+		int latIdx = dLat / divLat;
+		int desc = cells[lonIdx * (GRID_DIM + 1) + latIdx];
+		int type = desc >>> TYPE_SHIFT;
+		if (type == SUB) {
+			int subLon = (dLon - lonIdx * divLon) / subDivLon;
+			int subLat = (dLat - latIdx * divLat) / subDivLat;
+			desc = cells[(desc & PAYLOAD_MASK) + subLon * SUB_DIM + subLat];
+			type = desc >>> TYPE_SHIFT;
+		}
+		if (type == RASTER) {
+			int pos = desc & PAYLOAD_MASK;
+			int nLat = cells[pos];
+			int nLon = cells[pos + 1];
+			int latBreaks = pos + 2;
+			int lonBreaks = latBreaks + nLat;
+			int rasterLat = 0;
+			while (rasterLat < nLat && cells[latBreaks + rasterLat] <= lat)
+				rasterLat++;
+			int rasterLon = 0;
+			while (rasterLon < nLon && cells[lonBreaks + rasterLon] <= lon)
+				rasterLon++;
+			desc = cells[lonBreaks + nLon + rasterLon * (nLat + 1) + rasterLat];
+			type = desc >>> TYPE_SHIFT;
+		}
+		switch (type) {
+		case SINGLE:
+			return singleResults[desc & PAYLOAD_MASK];
+		case SET:
+			return setResults[desc & PAYLOAD_MASK];
+		case TEST:
+			return testResults[desc & PAYLOAD_MASK];
+		default:
+			return null;
+		}
+	}
+}
@@ -277,7 +277,7 @@ public class Main {
 	}
 
 	private DataStorer calcProblemLists(List<Area> areas) {
-		DataStorer dataStorer = problemList.calcProblemLists(osmFileHandler, areas, overlapAmount, mainOptions);
+		DataStorer dataStorer = problemList.calcProblemLists(osmFileHandler, areas, overlapAmount, mainOptions, fileOutputDir);
 		String problemReport = mainOptions.getProblemReport();
 		if (problemReport != null) {
 			problemList.writeProblemList(fileOutputDir, problemReport);
@@ -430,6 +430,27 @@ public class Main {
 		if (searchLimit < 1000) {
 			throw new IllegalArgumentException("The --search-limit parameter must be 1000 or higher.");
 		}
+		if (params.getSolverCacheSize() < 1000) {
+			throw new IllegalArgumentException("The --solver-cache-size parameter must be 1000 or higher.");
+		}
+		if (params.getSolverTimeBudget() < 0) {
+			throw new IllegalArgumentException("The --solver-time-budget parameter must be 0 or higher.");
+		}
+		final List<String> validMapStorage = Arrays.asList("heap", "direct", "mapped");
+		if (!validMapStorage.contains(params.getMapStorage())) {
+			throw new IllegalArgumentException(
+					"the --map-storage parameter must be one of " + validMapStorage + ".");
+		}
+		final List<String> validMapEncoding = Arrays.asList("compact", "fast");
+		if (!validMapEncoding.contains(params.getMapEncoding())) {
+			throw new IllegalArgumentException(
+					"the --map-encoding parameter must be one of " + validMapEncoding + ".");
+		}
+		final List<String> validProblemListPasses = Arrays.asList("max-areas", "single");
+		if (!validProblemListPasses.contains(params.getProblemListPasses())) {
+			throw new IllegalArgumentException(
+					"the --problem-list-passes parameter must be one of " + validProblemListPasses + ".");
+		}
 
 
 		// plausibility checks and default handling
@@ -500,7 +521,7 @@ public class Main {
 	}
 
 	private void useProblemLists(DataStorer dataStorer) {
-		problemList.calcMultiTileElements(dataStorer, osmFileHandler);
+		problemList.calcMultiTileElements(dataStorer, osmFileHandler, fileOutputDir);
 		if ("handle-problem-list".equals(mainOptions.getStopAfter())) {
 			try {
 				Thread.sleep(1000);
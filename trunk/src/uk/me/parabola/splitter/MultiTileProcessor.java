@@ -12,18 +12,18 @@
  */ 
 package uk.me.parabola.splitter;
 
-import uk.me.parabola.splitter.Relation.Member;
-import uk.me.parabola.splitter.tools.Long2IntClosedMap;
+import uk.me.parabola.splitter.tools.Long2IntEliasFanoMap;
 import uk.me.parabola.splitter.tools.Long2IntClosedMapFunction;
 import uk.me.parabola.splitter.tools.OSMId2ObjectMap;
-import uk.me.parabola.splitter.tools.SparseBitSet;
-import it.unimi.dsi.fastutil.longs.Long2ObjectLinkedOpenHashMap;
-import it.unimi.dsi.fastutil.longs.Long2ObjectMap.Entry;
+import uk.me.parabola.splitter.tools.RoaringBitSet;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
 import java.awt.Point;
 import java.awt.Rectangle;
-import java.util.ArrayList;
-import java.util.Iterator;
+import java.io.File;
+import java.util.BitSet;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -37,11 +37,11 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	private final static int PHASE3_NODES_AND_WAYS = 3;
 	private final static int PHASE4_WAYS_ONLY = 4;
 	
-	private final boolean addParentRels = false;
-	private final static byte MEM_NODE_TYPE = 1;
-	private final static byte MEM_WAY_TYPE  = 2;
-	private final static byte MEM_REL_TYPE  = 3;
-	private final static byte MEM_INVALID_TYPE = -1;
+	private final static int MEM_NODE_TYPE = RelationGraph.MEM_NODE_TYPE;
+	private final static int MEM_WAY_TYPE  = RelationGraph.MEM_WAY_TYPE;
+	private final static int MEM_REL_TYPE  = RelationGraph.MEM_REL_TYPE;
+	/** max. nesting depth of sub relations */
+	private final static int MAX_DEPTH = 15;
 	private final static int PROBLEM_WIDTH = Utils.toMapUnit(180.0);
 	protected final static String[] NAME_TAGS = {"name","name:en","int_name","note"};
 	private final static String NOT_SORTED_MSG = "Maybe the IDs are not sorted. This is not supported with keep-complete=true or --problem-list";
@@ -49,17 +49,18 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	private int phase = PHASE1_RELS_ONLY;
 	private final DataStorer dataStorer;
 	private final AreaDictionary areaDictionary;
-	private Long2ObjectLinkedOpenHashMap<MTRelation> relMap = new Long2ObjectLinkedOpenHashMap<>();
+	private RelationStore relStore;
+	private RelationGraph relGraph;
 	private Long2IntClosedMapFunction nodeWriterMap;
 	private Long2IntClosedMapFunction wayWriterMap;
 	private Long2IntClosedMapFunction relWriterMap;
 	private int [] nodeLons;
 	private int [] nodeLats;
-	private SparseBitSet problemRels = new SparseBitSet();
-	private SparseBitSet neededWays = new SparseBitSet();
-	private SparseBitSet neededNodes = new SparseBitSet();
+	private RoaringBitSet problemRels = new RoaringBitSet();
+	private RoaringBitSet neededWays = new RoaringBitSet();
+	private RoaringBitSet neededNodes = new RoaringBitSet();
 	private OSMId2ObjectMap<Rectangle> wayBboxMap = new OSMId2ObjectMap<>();
-	private SparseBitSet mpWays = new SparseBitSet();
+	private RoaringBitSet mpWays = new RoaringBitSet();
 	private OSMId2ObjectMap<JoinedWay> mpWayEndNodesMap = new OSMId2ObjectMap<>();
 	/** each bit represents one area/tile */
 	private final AreaSet workWriterSet = new AreaSet();
@@ -69,22 +70,48 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	private int neededNodesCount; 
 	private int neededWaysCount; 
 	private int neededMpWaysCount; 
-	private int visitId;
+	private long neededWayRefs;
+	/** the number of input reads that were avoided by fusing phases */
+	private int savedReads;
+	/** if not null, phase 3 keeps the refs of the needed ways so that phase 4 doesn't need to read the input */
+	private LongArrayList keptWayIds;
+	private IntArrayList keptRefStarts;
+	private LongArrayList keptRefs;
 	
 
-	MultiTileProcessor(DataStorer dataStorer, LongArrayList problemWayList, LongArrayList problemRelList) {
+	/**
+	 * @param dataStorer the data storer which receives the results 
+	 * @param problemWayList the sorted ids of the problem ways
+	 * @param problemRelList the sorted ids of the problem relations
+	 * @param tmpDir the directory for temporary files
+	 * @param filledRelStore a relation store that already contains all relations or null 
+	 */
+	MultiTileProcessor(DataStorer dataStorer, LongArrayList problemWayList, LongArrayList problemRelList, File tmpDir,
+			RelationStore filledRelStore) {
 		this.dataStorer = dataStorer;
 		this.areaDictionary = dataStorer.getAreaDictionary();
-		for (long id: problemWayList){
-			neededWays.set(id);
+		for (int i = 0; i < problemWayList.size(); i++){
+			neededWays.set(problemWayList.getLong(i));
 		}
-		for (long id: problemRelList){
-			problemRels.set(id);
+		for (int i = 0; i < problemRelList.size(); i++){
+			problemRels.set(problemRelList.getLong(i));
 		}
 		// we allocate this once to avoid massive resizing with large number of tiles
 		neededMpWaysCount = mpWays.cardinality();
 		if (problemRelList.isEmpty()) {
 			phase = PHASE2_WAYS_ONLY;
+			relGraph = new RelationGraph();
+			relGraph.finish();
+			if (filledRelStore != null)
+				filledRelStore.finish();
+		} else if (filledRelStore != null) {
+			// the relations were collected while the input was read for another purpose
+			System.out.println("Using relations collected by problem-list-generator, phase " + PHASE1_RELS_ONLY + " needs no read");
+			relStore = filledRelStore;
+			savedReads++;
+			finishPhase1();
+		} else {
+			relStore = new RelationStore(tmpDir);
 		}
 		return;
 	}
@@ -148,6 +175,7 @@ class MultiTileProcessor extends AbstractMapProcessor {
 				}
 			}
 			foundWays++;
+			neededWayRefs += way.getRefs().size();
 		}
 		else if (phase == PHASE3_NODES_AND_WAYS){
 			if (!neededWays.get(way.getId()))
@@ -178,65 +206,97 @@ class MultiTileProcessor extends AbstractMapProcessor {
 				System.err.println(e.getMessage());
 				throw new SplitFailedException(NOT_SORTED_MSG);
 			}
-
+			if (keptWayIds != null){
+				keptWayIds.add(way.getId());
+				keptRefStarts.add(keptRefs.size());
+				keptRefs.addAll(way.getRefs());
+			}
 		}
 		else if (phase == PHASE4_WAYS_ONLY){
 			// propagate the ways writers to all nodes 
 			if (!neededWays.get(way.getId()))
 				return;
-			int wayWriterIdx = wayWriterMap.getRandom(way.getId());
-			if (wayWriterIdx !=  UNASSIGNED){
-				AreaSet wayWriterSet = areaDictionary.getSet(wayWriterIdx);
-				for (long id : way.getRefs()) {
-					addOrMergeWriters(nodeWriterMap, wayWriterSet, wayWriterIdx, id);
-				}
+			propagateWayWriters(way.getId(), way.getRefs(), 0, way.getRefs().size());
+		}
+	}
+
+	/**
+	 * Propagate the writers of a way to its nodes.
+	 * @param wayId the way id
+	 * @param refs list containing the node ids
+	 * @param start position of the first node id
+	 * @param end position after the last node id
+	 */
+	private void propagateWayWriters(long wayId, LongArrayList refs, int start, int end) {
+		int wayWriterIdx = wayWriterMap.getRandom(wayId);
+		if (wayWriterIdx !=  UNASSIGNED){
+			AreaSet wayWriterSet = areaDictionary.getSet(wayWriterIdx);
+			for (int i = start; i < end; i++) {
+				addOrMergeWriters(nodeWriterMap, wayWriterSet, wayWriterIdx, refs.getLong(i));
 			}
 		}
 	}
 
+	/**
+	 * Decide if phase 3 can keep the node refs of the needed ways in memory,
+	 * so that the work of phase 4 can be done without reading the input again.
+	 */
+	private void planPhase4() {
+		long required = neededWayRefs * 8 + foundWays * 12L;
+		Runtime rt = Runtime.getRuntime();
+		long available = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+		if (required < available / 4) {
+			System.out.println("Keeping " + Utils.format(neededWayRefs) + " node refs of needed ways in memory, phase "
+					+ PHASE4_WAYS_ONLY + " needs no read");
+			keptWayIds = new LongArrayList(foundWays);
+			keptRefStarts = new IntArrayList(foundWays + 1);
+			keptRefs = new LongArrayList((int) Math.min(Integer.MAX_VALUE - 8, neededWayRefs));
+		} else {
+			System.out.println("Not enough memory to keep " + Utils.format(neededWayRefs)
+					+ " node refs of needed ways, phase " + PHASE4_WAYS_ONLY + " has to read the input");
+		}
+	}
+
+	/**
+	 * Do the work of phase 4 with the way refs that were kept in phase 3.
+	 */
+	private void propagateKeptWayWriters() {
+		keptRefStarts.add(keptRefs.size());
+		for (int i = 0; i < keptWayIds.size(); i++) {
+			propagateWayWriters(keptWayIds.getLong(i), keptRefs, keptRefStarts.getInt(i), keptRefStarts.getInt(i + 1));
+		}
+		keptWayIds = null;
+		keptRefStarts = null;
+		keptRefs = null;
+		savedReads++;
+	}
+
 	@Override
 	public void processRelation(Relation rel) {
-		// TODO: we store all relations here, no matter how many are needed. Another approach would be to store 
-		// the rels in the problem list and read again until all sub rels of these problem rels are found or
-		// known as missing. This can require many more read passes for relations, but can help if this phase
-		// starts to be a memory bottleneck.
+		// all relations are written to a temp file, only the problem relations 
+		// and their sub relations are read back into memory
 		if (phase == PHASE1_RELS_ONLY){
-			MTRelation myRel = new MTRelation(rel);
-			relMap.put(myRel.getId(), myRel);
+			try{
+				relStore.add(rel);
+			}catch (IllegalArgumentException e){
+				System.err.println(e.getMessage());
+				throw new SplitFailedException(NOT_SORTED_MSG);
+			}
 		}
 	}
 
 	@Override
 	public boolean endMap() {
 		if (phase == PHASE1_RELS_ONLY){
-			stats("Finished collecting relations.");
-			Utils.printMem();
-			System.out.println("starting to resolve relations containing problem relations ...");
-			// add all ways and nodes of problem rels so that we collect the coordinates
-			markProblemMembers();
-			if (addParentRels){
-				// we want to see the parent rels, but not all children of all parents
-				markParentRels();
-			}
-			// free memory for rels that are not causing any trouble
-			relMap.long2ObjectEntrySet().removeIf(e -> !problemRels.get(e.getLongKey()));
-			problemRels = null;
-			// reallocate to the needed size
-			relMap = new Long2ObjectLinkedOpenHashMap<>(relMap);
-			
-			//System.out.println("Finished adding parents and members of problem relations to problem lists.");
-			System.out.println("Finished adding members of problem relations to problem lists.");
-			stats("starting to collect ids of needed way nodes ...");
-			neededMpWaysCount = mpWays.cardinality();
-			neededWaysCount = neededWays.cardinality();
-			++phase;
+			finishPhase1();
 		}
 		else if (phase == PHASE2_WAYS_ONLY){
+			neededNodes.runOptimize();
 			stats("Finished collecting problem ways.");
 			neededNodesCount = neededNodes.cardinality();
 			// critical part: we have to allocate possibly large arrays here
-			nodeWriterMap = new Long2IntClosedMap("node", neededNodesCount, UNASSIGNED);
-			wayWriterMap = new Long2IntClosedMap("way", foundWays, UNASSIGNED);
+			nodeWriterMap = new Long2IntEliasFanoMap("node", neededNodesCount, UNASSIGNED);
+			wayWriterMap = new Long2IntEliasFanoMap("way", foundWays, UNASSIGNED);
 			dataStorer.setWriterMap(DataStorer.NODE_TYPE, nodeWriterMap);
 			dataStorer.setWriterMap(DataStorer.WAY_TYPE, wayWriterMap);
 			nodeLons = new int[neededNodesCount];
@@ -246,6 +306,7 @@ class MultiTileProcessor extends AbstractMapProcessor {
 			System.out.println("Found " + Utils.format(mpWayEndNodesMap.size()) + " of " + Utils.format(neededMpWaysCount) + " needed multipolygon ways.");
 			stats("Starting to collect coordinates for " + Utils.format(neededNodesCount) + " needed nodes.");
 			Utils.printMem();
+			planPhase4();
 			++phase;
 		}
 		else if (phase == PHASE3_NODES_AND_WAYS){
@@ -265,134 +326,194 @@ class MultiTileProcessor extends AbstractMapProcessor {
 
 			mpWayEndNodesMap.clear();
 			wayBboxMap = null;
-			relWriterMap = new Long2IntClosedMap("rel", relMap.size(), UNASSIGNED);
+			relWriterMap = new Long2IntEliasFanoMap("rel", relGraph.size(), UNASSIGNED);
 			
-			for (Entry<MTRelation> entry : relMap.long2ObjectEntrySet()){
-				int val = entry.getValue().getMultiTileWriterIndex();
+			for (int rel = 0; rel < relGraph.size(); rel++){
+				int val = relGraph.getWriterIndex(rel);
 				if (val != UNASSIGNED){
 					try{
-						relWriterMap.add(entry.getLongKey(), val);
+						relWriterMap.add(relGraph.getId(rel), val);
 					}catch (IllegalArgumentException e){
 						System.err.println(e);
 						throw new SplitFailedException(NOT_SORTED_MSG); 
 					}
 				}
 			}
-			relMap = null;
+			relGraph = null;
 			dataStorer.setWriterMap(DataStorer.REL_TYPE, relWriterMap);
 			stats("Making sure that needed way nodes of relations are written to the correct tiles...");
 			++phase;
+			if (keptWayIds != null){
+				propagateKeptWayWriters();
+				return finishPhase4();
+			}
 		}
 		else if (phase == PHASE4_WAYS_ONLY){
-			stats("Finished processing problem lists.");
-			return true; 
+			return finishPhase4();
 		}
 		return false; // not done yet
 	}
 
+	/**
+	 * Resolve the problem relations after all relations were collected.
+	 */
+	private void finishPhase1() {
+		stats("Finished collecting relations.");
+		Utils.printMem();
+		relStore.finishWrite();
+		System.out.println("starting to resolve relations containing problem relations ...");
+		relGraph = readNeededRels();
+		relStore.finish();
+		relStore = null;
+		// add all ways and nodes of problem rels so that we collect the coordinates
+		markProblemMembers();
+		// free memory for rels that were only reached beyond the max. depth
+		relGraph = relGraph.retain(problemRels);
+		problemRels = null;
+		
+		System.out.println("Finished adding members of problem relations to problem lists.");
+		stats("starting to collect ids of needed way nodes ...");
+		neededMpWaysCount = mpWays.cardinality();
+		neededWaysCount = neededWays.cardinality();
+		neededWays.runOptimize();
+		++phase;
+	}
+
+	private boolean finishPhase4() {
+		stats("Finished processing problem lists.");
+		if (savedReads > 0)
+			System.out.println("Fusing phases saved " + savedReads + " read(s) of the input");
+		return true; 
+	}
+
+	/**
+	 * Read the problem relations and all their sub relations from the relation store.
+	 * @return a finished graph with the relations in ascending id order 
+	 */
+	private RelationGraph readNeededRels() {
+		RoaringBitSet needed = new RoaringBitSet();
+		LongArrayList queue = new LongArrayList();
+		RelationStore.Entry e = new RelationStore.Entry();
+		for (LongIterator iter = problemRels.iterator(); iter.hasNext();) {
+			queue.add(iter.nextLong());
+		}
+		while (!queue.isEmpty()) {
+			long id = queue.removeLong(queue.size() - 1);
+			if (needed.get(id) || !relStore.get(id, e))
+				continue;
+			needed.set(id);
+			for (int i = 0; i < e.numMembers; i++) {
+				if (e.types[i] == MEM_REL_TYPE && !needed.get(e.refs[i]))
+					queue.add(e.refs[i]);
+			}
+		}
+		RelationGraph graph = new RelationGraph();
+		for (LongIterator iter = needed.iterator(); iter.hasNext();) {
+			relStore.get(iter.nextLong(), e);
+			graph.add(e);
+		}
+		graph.finish();
+		System.out.println("Read " + Utils.format(graph.size()) + " of " + Utils.format(relStore.size())
+				+ " relations from temp file");
+		return graph;
+	}
+
 	/**
 	 * Mark all members of given problem relations as problem cases. 
+	 * Sub relations are visited with an iterative depth first search,
+	 * loops and duplicate sub relations are reported.
 	 */
 	private void markProblemMembers() {
-		ArrayList<MTRelation> visited = new ArrayList<>();
-		for (MTRelation rel: relMap.values()){
-			if (!problemRels.get(rel.getId()))
+		BitSet visited = new BitSet(relGraph.size());
+		BitSet onPath = new BitSet(relGraph.size());
+		IntArrayList touched = new IntArrayList();
+		IntArrayList path = new IntArrayList();
+		IntArrayList edgePos = new IntArrayList();
+		for (int root = 0; root < relGraph.size(); root++){
+			if (!problemRels.get(relGraph.getId(root)))
 				continue;
-			incVisitID();
-			visited.clear();
-			MarkNeededMembers(rel, 0, visited);
-			assert visited.size() == 0;
+			visited.set(root);
+			touched.add(root);
+			markNeededMembers(root);
+			path.add(root);
+			edgePos.add(relGraph.getSubRelStart(root));
+			onPath.set(root);
+			while (!path.isEmpty()){
+				int top = path.size() - 1;
+				int rel = path.getInt(top);
+				int edge = edgePos.getInt(top);
+				if (edge >= relGraph.getSubRelEnd(rel)){
+					onPath.clear(rel);
+					path.removeInt(top);
+					edgePos.removeInt(top);
+					continue;
+				}
+				edgePos.set(top, edge + 1);
+				int subRel = relGraph.getSubRel(edge);
+				if (visited.get(subRel)){
+					loopAction(rel, subRel, edge, onPath.get(subRel), path);
+					continue;
+				}
+				visited.set(subRel);
+				touched.add(subRel);
+				problemRels.set(relGraph.getId(subRel));
+				if (path.size() > MAX_DEPTH){
+					System.out.println("MarkNeededMembers reached max. depth: " + relGraph.getId(subRel) + " " + path.size());
+					continue;
+				}
+				markNeededMembers(subRel);
+				path.add(subRel);
+				edgePos.add(relGraph.getSubRelStart(subRel));
+				onPath.set(subRel);
+			}
+			// clear only the bits that were set
+			for (int i = 0; i < touched.size(); i++)
+				visited.clear(touched.getInt(i));
+			touched.clear();
 		}
 	}
 
 	/**
-	 * Mark the ways and nodes of a relation as problem cases. If the relation 
-	 * contains sub relations, the routine calls itself recursively. 
-	 * @param rel the relation 
-	 * @param depth used to detect loops 
-	 * @param visited 
-	 * @return
+	 * Mark the ways and nodes of a relation as problem cases. 
+	 * @param rel the index of the relation 
 	 */
-	private void MarkNeededMembers(MTRelation rel, int depth, ArrayList<MTRelation> visited){
-		if (rel.getLastVisitId() == visitId)
-			return;
-		rel.setLastVisitId(visitId);
-		if (depth > 15){
-			System.out.println("MarkNeededMembers reached max. depth: " + rel.getId() + " " +  depth);
-			return ;
-		}
-		for (int i = 0; i < rel.numMembers; i++){
-			long memId = rel.memRefs[i];
-			byte memType = rel.memTypes[i];
+	private void markNeededMembers(int rel){
+		boolean isMP = relGraph.isMultiPolygon(rel);
+		for (int i = relGraph.getMemberStart(rel); i < relGraph.getMemberEnd(rel); i++){
+			long memId = relGraph.getMemberRef(i);
+			int memType = relGraph.getMemberType(i);
 			if (memType == MEM_WAY_TYPE){
 				neededWays.set(memId);
-				if (rel.isMultiPolygon())
+				if (isMP)
 					mpWays.set(memId);
 			}
 			else if (memType == MEM_NODE_TYPE)
 				neededNodes.set(memId);
-			else if (memType == MEM_REL_TYPE){
-				MTRelation subRel = relMap.get(memId);
-				if (subRel == null)
-					continue;
-				if (subRel.getLastVisitId() == visitId)
-					loopAction(rel, subRel, visited);
-				else {
-					problemRels.set(memId);
-					visited.add(subRel);
-					MarkNeededMembers(subRel, depth+1, visited);
-					visited.remove(visited.size()-1);
-				}
-			} 
 		}
 	}
 
-	/**
-	 * Mark the parents of problem relations as problem relations.
-	 */
-	private void markParentRels(){
-		while (true){
-			boolean changed = false;
-			for (MTRelation rel: relMap.values()){
-				if (rel.hasRelMembers() == false || problemRels.get(rel.getId()))
-					continue;
-				for (int i = 0; i < rel.numMembers; i++){
-					long memId = rel.memRefs[i];
-					if (rel.memTypes[i] == MEM_REL_TYPE && problemRels.get(memId)) {
-						problemRels.set(rel.getId());
-						rel.setAddedAsParent();
-						System.out.println("Adding parent of problem rel " + memId + " to problem list: " + rel.getId());
-						changed = true;
-						break;
-					}
-				}
-			}
-			if (!changed)
-				return;
-		}
-	}
-	
 	/**
 	 * Calculate the writers for each relation based on the 
 	 * nodes and ways. 
 	 */
 	private void calcWritersOfRelWaysAndNodes() {
-		for (MTRelation rel: relMap.values()){
-			if (false == (rel.hasWayMembers() ||  rel.hasNodeMembers()) )
+		for (int rel = 0; rel < relGraph.size(); rel++){
+			if (false == (relGraph.hasWayMembers(rel) ||  relGraph.hasNodeMembers(rel)) )
 				continue;
 			
 			AreaSet writerSet = new AreaSet();
-			for (int i = 0; i < rel.numMembers; i++){
-				long memId = rel.memRefs[i];
+			for (int i = relGraph.getMemberStart(rel); i < relGraph.getMemberEnd(rel); i++){
+				long memId = relGraph.getMemberRef(i);
+				int memType = relGraph.getMemberType(i);
 				boolean memFound = false;
-				if (rel.memTypes[i] == MEM_NODE_TYPE){
+				if (memType == MEM_NODE_TYPE){
 					int pos = nodeWriterMap.getKeyPos(memId);
 					if (pos >= 0){
 						addWritersOfPoint(writerSet, nodeLats[pos], nodeLons[pos]);
 						memFound = true;
 					}
 				}
-				else if (rel.memTypes[i] == MEM_WAY_TYPE){
+				else if (memType == MEM_WAY_TYPE){
 					int idx = wayWriterMap.getRandom(memId);
 					if (idx != UNASSIGNED){
 						writerSet.or(areaDictionary.getSet(idx));
@@ -401,16 +522,16 @@ class MultiTileProcessor extends AbstractMapProcessor {
 					if (wayBboxMap.get(memId) != null)
 						memFound = true;
 				}
-				else if (rel.memTypes[i] == MEM_REL_TYPE)
+				else if (memType == MEM_REL_TYPE)
 					continue; // handled later
 				if (!memFound) {
-					rel.setNotComplete();
+					relGraph.setNotComplete(rel);
 					continue;
 				}
 			}	
 			if (!writerSet.isEmpty()){
 				int idx = areaDictionary.translate(writerSet);
-				rel.setMultiTileWriterIndex(idx);
+				relGraph.setWriterIndex(rel, idx);
 			}
 		}
 	
@@ -420,24 +541,17 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	 * We calculate the writers for each of the polygons. 
 	 */
 	private void calcWritersOfMultiPolygonRels() {
-		// recurse thru sub relations
-		ArrayList<MTRelation> visited = new ArrayList<>();
-		
-		for (MTRelation rel: relMap.values()){
+		// the writers of sub relations are added later in mergeRelMemWriters()
+		for (int rel = 0; rel < relGraph.size(); rel++){
 			AreaSet relWriters = new AreaSet();
-			if (rel.isMultiPolygon()){
-				if (rel.hasRelMembers()){
-					incVisitID();
-					visited.clear();
-					orSubRelWriters(rel, 0, visited);
-				}
+			if (relGraph.isMultiPolygon(rel)){
 				checkSpecialMP(relWriters, rel);
 				if (!relWriters.isEmpty()){
 					int writerIdx = areaDictionary.translate(relWriters);
-					rel.setMultiTileWriterIndex(writerIdx);
+					relGraph.setWriterIndex(rel, writerIdx);
 					int touchedTiles = relWriters.cardinality();
 					if (touchedTiles > dataStorer.getNumOfAreas() / 2 && dataStorer.getNumOfAreas() > 10){
-						System.out.println("Warning: rel " + rel.getId() + " touches " + touchedTiles + " tiles.");
+						System.out.println("Warning: rel " + relGraph.getId(rel) + " touches " + touchedTiles + " tiles.");
 					}
 				}
 			}
@@ -445,15 +559,53 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	}
 
 	/**
-	 * Or-combine all writers of the members of a relation 
+	 * Or-combine the writers of each relation with the writers of all its sub relations.
+	 * The components of the relation graph are processed in topological order, so the writers
+	 * of the sub relations are final when the parent is calculated. All relations in a loop
+	 * get the same writers.
 	 */
 	private void mergeRelMemWriters() {
-		// or combine the writers of sub-relations with the parent relation 
-		ArrayList<MTRelation> visited = new ArrayList<>();
-		for (MTRelation rel: relMap.values()){
-			incVisitID();
-			visited.clear();
-			orSubRelWriters(rel, 0, visited);
+		int numRels = relGraph.size();
+		int[] comp = new int[numRels];
+		int numComps = relGraph.findComponents(comp);
+		// sort the relations by component
+		int[] compStart = new int[numComps + 1];
+		for (int rel = 0; rel < numRels; rel++)
+			compStart[comp[rel] + 1]++;
+		for (int c = 0; c < numComps; c++)
+			compStart[c + 1] += compStart[c];
+		int[] fillPos = compStart.clone();
+		int[] sortedRels = new int[numRels];
+		for (int rel = 0; rel < numRels; rel++)
+			sortedRels[fillPos[comp[rel]]++] = rel;
+		
+		AreaSet relWriters = new AreaSet();
+		for (int c = 0; c < numComps; c++){
+			relWriters.clear();
+			int commonIdx = UNASSIGNED;
+			boolean differs = false;
+			for (int i = compStart[c]; i < compStart[c + 1]; i++){
+				int rel = sortedRels[i];
+				int idx = relGraph.getWriterIndex(rel);
+				if (idx != UNASSIGNED){
+					relWriters.or(areaDictionary.getSet(idx));
+					differs |= commonIdx != UNASSIGNED && commonIdx != idx;
+					commonIdx = idx;
+				}
+				for (int e = relGraph.getSubRelStart(rel); e < relGraph.getSubRelEnd(rel); e++){
+					int subRel = relGraph.getSubRel(e);
+					int subIdx = relGraph.getWriterIndex(subRel);
+					if (comp[subRel] != c && subIdx != UNASSIGNED && subIdx != commonIdx){
+						relWriters.or(areaDictionary.getSet(subIdx));
+						differs = true;
+					}
+				}
+			}
+			if (relWriters.isEmpty())
+				continue;
+			int idx = differs ? areaDictionary.translate(relWriters) : commonIdx;
+			for (int i = compStart[c]; i < compStart[c + 1]; i++)
+				relGraph.setWriterIndex(sortedRels[i], idx);
 		}
 	}
 
@@ -462,16 +614,14 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	 */
 	private void propagateWritersOfRelsToMembers() {
 		// make sure that the ways and nodes of the problem relations are written to all needed tiles
-		for (MTRelation rel: relMap.values()){
-			if (rel.wasAddedAsParent())
-				continue;
-			int relWriterIdx = rel.getMultiTileWriterIndex();
+		for (int rel = 0; rel < relGraph.size(); rel++){
+			int relWriterIdx = relGraph.getWriterIndex(rel);
 			if (relWriterIdx == UNASSIGNED)
 				continue;
 			AreaSet relWriters =  areaDictionary.getSet(relWriterIdx);
-			for (int i = 0; i < rel.numMembers; i++){
-				long memId = rel.memRefs[i];
-				switch (rel.memTypes[i]){
+			for (int i = relGraph.getMemberStart(rel); i < relGraph.getMemberEnd(rel); i++){
+				long memId = relGraph.getMemberRef(i);
+				switch (relGraph.getMemberType(i)){
 				case MEM_WAY_TYPE:
 					addOrMergeWriters(wayWriterMap, relWriters, relWriterIdx, memId);
 					break;
@@ -509,57 +659,6 @@ class MultiTileProcessor extends AbstractMapProcessor {
 		lastCoordId = id;
 	}
 
-	/**
-	 * If a relation contains relations, or-combine the writers of the sub-
-	 * relation with the writes of the parent relation . The routine calls 
-	 * itself recursively when the sub relation contains sub relations. 
-	 * @param rel the relation 
-	 * @param depth used to detect loops 
-	 * @return
-	 */
-	private void orSubRelWriters(MTRelation rel, int depth, ArrayList<MTRelation> visited ){
-		if (rel.getLastVisitId() == visitId)
-			return;
-		rel.setLastVisitId(visitId);
-		if (depth > 15){
-			System.out.println("orSubRelWriters reached max. depth: " + rel.getId() + " " +  depth);
-			return ;
-		}
-		AreaSet relWriters = new AreaSet();
-		int relWriterIdx = rel.getMultiTileWriterIndex();
-		if (relWriterIdx != UNASSIGNED)
-			relWriters.or(areaDictionary.getSet(relWriterIdx));
-
-		boolean changed = false;
-		for (int i = 0; i < rel.numMembers; i++){
-			long memId = rel.memRefs[i];
-			if (rel.memTypes[i] == MEM_REL_TYPE){
-				MTRelation subRel = relMap.get(memId);
-				if (subRel == null)
-					continue;
-				if (subRel.getLastVisitId() == visitId)
-					loopAction(rel, subRel, visited);
-				else {
-					visited.add(rel);
-					orSubRelWriters(subRel, depth+1, visited);
-					visited.remove(visited.size()-1);
-					int memWriterIdx = subRel.getMultiTileWriterIndex();
-					if (memWriterIdx == UNASSIGNED || memWriterIdx == relWriterIdx){
-						continue;
-					}
-					AreaSet memWriters = areaDictionary.getSet(memWriterIdx);
-					int oldSize = relWriters.cardinality();
-					relWriters.or(memWriters);
-					if (oldSize != relWriters.cardinality())
-						changed = true;
-				}
-			}
-		}
-		if (changed){
-			rel.setMultiTileWriterIndex(areaDictionary.translate(relWriters));
-		}
-	}
-
 	/**
 	 * Report some numbers regarding memory usage 
 	 * @param msg
@@ -574,8 +673,12 @@ class MultiTileProcessor extends AbstractMapProcessor {
 			System.out.println("  " + mpWays.getClass().getSimpleName() + " mpWays contains now " + Utils.format(mpWays.cardinality())+ " Ids.");
 		if (neededNodes != null)
 			System.out.println("  " + neededNodes.getClass().getSimpleName() + " neededNodes contains now " + Utils.format(neededNodes.cardinality())+ " Ids.");
-		if (relMap != null)
-			System.out.println("  Number of stored relations: " + Utils.format(relMap.size()));
+		if (relStore != null)
+			System.out.println("  Number of relations in temp file: " + Utils.format(relStore.size()) + " ("
+					+ Utils.format(relStore.getFileLength()) + " bytes)");
+		if (relGraph != null)
+			System.out.println("  Number of stored relations: " + Utils.format(relGraph.size()) + " with "
+					+ Utils.format(relGraph.getNumMembers()) + " members");
 		System.out.println("  Number of stored tile combinations in multiTileDictionary: " + Utils.format(areaDictionary.size()));
 		if (phase == PHASE4_WAYS_ONLY)
 			dataStorer.stats("  ");
@@ -645,7 +748,8 @@ class MultiTileProcessor extends AbstractMapProcessor {
 			return false;
 
 		boolean foundWriter = false;
-		for (int n : writerCandidates.set) {
+		for (IntIterator iter = writerCandidates.set.iterator(); iter.hasNext();) {
+			int n = iter.nextInt();
 			Area extbbox = dataStorer.getExtendedArea(n);
 			boolean found = (writerCandidates.testNeeded) ? extbbox.contains(mapLat, mapLon) : true;
 			foundWriter |= found;
@@ -663,7 +767,8 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	 * @param p2 second point of line
 	 */
 	private void addWritersOfCrossedTiles(AreaSet writerSet, final AreaSet possibleWriters, final Point p1,final Point p2){
-		for (int i : possibleWriters) {
+		for (IntIterator iter = possibleWriters.iterator(); iter.hasNext();) {
+			int i = iter.nextInt();
 			Rectangle writerBbox = Utils.area2Rectangle(dataStorer.getArea(i), 1);
 			if (writerBbox.intersectsLine(p1.x,p1.y,p2.x,p2.y))
 				writerSet.set(i);
@@ -757,42 +862,37 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	}
 
 	/**
-	 * Increment the loop detection ID. If the maximum value is reached, 
-	 * reset all IDs and start again.
-	 */
-	private void incVisitID() {
-		if (visitId == Integer.MAX_VALUE){
-			// unlikely
-			visitId = 0;
-			for (Entry<MTRelation> entry : relMap.long2ObjectEntrySet()){
-				entry.getValue().setLastVisitId(visitId);
-			}
-		}
-		visitId++;
-	}
-
-	/*
-	 * Report a loop in a relation 
+	 * Report a loop or a duplicate sub relation in a relation.
+	 * @param rel the relation
+	 * @param subRel the sub relation that was already visited
+	 * @param edge the position of the sub relation in the edges of rel
+	 * @param isOnPath true if subRel is a parent of rel
+	 * @param path the relations from the problem relation to rel
 	 */
-	static void loopAction(MTRelation rel, MTRelation subRel, ArrayList<MTRelation> visited){
-		if (subRel.isOnLoop())
+	private void loopAction(int rel, int subRel, int edge, boolean isOnPath, IntArrayList path){
+		if (relGraph.isOnLoop(subRel))
 			return; // don't complain again
-		if (rel.getId() == subRel.getId()){
-			System.out.println("Loop in relation " + rel.getId() +  ": Contains itself as sub relation.");
-			rel.markOnLoop();
-		}
-		else if (visited.contains(rel)){
-			subRel.markOnLoop();
-			StringBuilder sb = new StringBuilder("Loop in relation " + subRel.getId() + ". Loop contains relation(s): "); 
-			for (MTRelation r: visited){
-				sb.append(r.getId());
+		if (rel == subRel){
+			System.out.println("Loop in relation " + relGraph.getId(rel) +  ": Contains itself as sub relation.");
+			relGraph.markOnLoop(rel);
+		}
+		else if (isOnPath){
+			StringBuilder sb = new StringBuilder("Loop in relation " + relGraph.getId(subRel) + ". Loop contains relation(s): "); 
+			for (int i = path.indexOf(subRel); i < path.size(); i++){
+				int r = path.getInt(i);
+				sb.append(relGraph.getId(r));
 				sb.append(' ');
-				r.markOnLoop();
+				relGraph.markOnLoop(r);
 			}
 			System.out.println(sb);
 		} 
 		else {
-			System.out.println("Duplicate sub relation in relation " + rel.getId() +  ". Already looked at member " + subRel.getId() + "." );
+			for (int e = relGraph.getSubRelStart(rel); e < edge; e++){
+				if (relGraph.getSubRel(e) == subRel){
+					System.out.println("Duplicate sub relation in relation " + relGraph.getId(rel) +  ". Already looked at member " + relGraph.getId(subRel) + "." );
+					break;
+				}
+			}
 		}
 	}
 
@@ -800,15 +900,15 @@ class MultiTileProcessor extends AbstractMapProcessor {
 	 * Handle multipolygon relations that have too large bboxes.  
 	 * TODO: handle polygons that cross the 180/-180 border
 	 * @param relWriters
-	 * @param rel
+	 * @param rel the index of the relation
 	 */
-	private void checkSpecialMP(AreaSet relWriters, MTRelation rel) {
+	private void checkSpecialMP(AreaSet relWriters, int rel) {
 		long[] joinedWays = null;
 		List<Long> wayMembers = new LinkedList<>();
 		LongArrayList polygonWays = new LongArrayList();
-		for (int i = 0; i < rel.numMembers; i++){
-			long memId = rel.memRefs[i];
-			if (rel.memTypes[i] == MEM_WAY_TYPE && "inner".equals(rel.memRoles[i]) == false){
+		for (int i = relGraph.getMemberStart(rel); i < relGraph.getMemberEnd(rel); i++){
+			long memId = relGraph.getMemberRef(i);
+			if (relGraph.getMemberType(i) == MEM_WAY_TYPE && "inner".equals(relGraph.getMemberRole(i)) == false){
 				wayMembers.add(memId);
 			}
 		}
@@ -871,7 +971,7 @@ class MultiTileProcessor extends AbstractMapProcessor {
 							mpBbox.add(wayBbox);
 						
 						if (!complainedAboutSize  && mpBbox.x < 0 && mpBbox.getMaxX() > 0 && mpBbox.width >= PROBLEM_WIDTH){
-							System.out.println("rel crosses -180/180: " + rel.getId());
+							System.out.println("rel crosses -180/180: " + relGraph.getId(rel));
 							complainedAboutSize = true;
 						}
 
@@ -890,7 +990,7 @@ class MultiTileProcessor extends AbstractMapProcessor {
 				// found closed polygon or nothing more to add
 				boolean isRelevant = checkBoundingBox(relWriters, mpBbox);
 				if (isRelevant & hasMissingWays)
-					System.out.println("Warning: Incomplete multipolygon relation " + rel.getId() + " (" + rel.getName() + "): using bbox of " + 
+					System.out.println("Warning: Incomplete multipolygon relation " + relGraph.getId(rel) + " (" + relGraph.getName(rel) + "): using bbox of " + 
 							(closed ? "closed":"unclosed") + " polygon to calc tiles, ways: " + polygonWays);
 				mpBbox = null;
 			} 
@@ -912,163 +1012,6 @@ class MultiTileProcessor extends AbstractMapProcessor {
 		}
 
 	}
-	
-	/**
-	 * A helper class that just contains all information about relation that we need  
-	 * in the MultiTileProcessor.
-	 * @author GerdP
-	 *
-	 */
-	private class MTRelation {
-
-		private final static short IS_MP     = 0x01; 
-		private final static short ON_LOOP   = 0x02; 
-		private final static short HAS_NODES = 0x04; 
-		private final static short HAS_WAYS  = 0x08; 
-		private final static short HAS_RELS  = 0x10; 
-		private final static short IS_JUST_PARENT = 0x20; 
-		private final static short IS_NOT_COMPLETE = 0x40; 
-
-		private final long id;
-		protected final byte[] memTypes;
-		protected final String[] memRoles;
-		protected final long[] memRefs;
-		protected final int numMembers;
-		private final String name;
-		
-		private int multiTileWriterIndex = UNASSIGNED;
-		private int lastVisitId;
-		private short flags; 	// flags for the MultiTileProcessor
-		
-		public MTRelation(Relation rel){
-			numMembers  = rel.getMembers().size();
-			memTypes = new byte[numMembers];
-			memRoles = new String[numMembers];
-			memRefs = new long[numMembers];
-			id = rel.getId();
-			for (int i = 0; i<numMembers; i++){
-				Member mem = rel.getMembers().get(i);
-				memRefs[i] = mem.getRef(); 
-				memRoles[i] = mem.getRole().intern();
-				if ("node".equals(mem.getType())){
-					memTypes[i] = MEM_NODE_TYPE;
-					flags |= HAS_NODES;
-				}
-				else if ("way".equals(mem.getType())){
-					memTypes[i] = MEM_WAY_TYPE;
-					flags |= HAS_WAYS;
-				} 
-				else if ("relation".equals(mem.getType())){
-					memTypes[i] = MEM_REL_TYPE;
-					flags |= HAS_RELS;
-				}
-				else
-					memTypes[i] = MEM_INVALID_TYPE;
-				
-			}
-
-			String type = rel.getTag("type");
-			if ("multipolygon".equals(type) || "boundary".equals(type))
-				markAsMultiPolygon();
-			
-			String goodNameCandidate = null;
-			String nameCandidate = null;
-			String zipCode = null;
-			Iterator<Element.Tag> tags = rel.tagsIterator();
-			while(tags.hasNext()) {
-				Element.Tag t = tags.next();
-				for (String nameTag: NAME_TAGS){
-					if (nameTag.equals(t.key)){
-						goodNameCandidate = t.value;
-						break;
-					}
-				}
-				if (goodNameCandidate != null)
-					break;
-				if (t.key.contains("name"))
-					nameCandidate = t.value;
-				else if ("postal_code".equals(t.key))
-					zipCode = t.value;
-			}
-			if (goodNameCandidate != null)
-				name = goodNameCandidate;
-			else if (nameCandidate != null) 
-				name = nameCandidate;
-			else if (zipCode != null) 
-				name = "postal_code=" + zipCode;
-			else 
-				name = "?";
-		}
-		
-		public long getId() {
-			return id;
-		}
-		public boolean isOnLoop() {
-			return (flags & ON_LOOP) != 0; 
-		}
-
-		public void markOnLoop() {
-			this.flags |= ON_LOOP;
-		}
-
-		public int getMultiTileWriterIndex() {
-			return multiTileWriterIndex;
-		}
-
-		public void setMultiTileWriterIndex(int multiTileWriterIndex) {
-			this.multiTileWriterIndex = multiTileWriterIndex;
-		}
-
-		public boolean hasNodeMembers() {
-			return (flags & HAS_NODES) != 0;
-		}
-		public boolean hasWayMembers() {
-			return (flags & HAS_WAYS) != 0;
-		}
-		public boolean hasRelMembers() {
-			return (flags & HAS_RELS) != 0;
-		}
-
-		public boolean wasAddedAsParent() {
-			return (flags & IS_JUST_PARENT) != 0;
-		}
-
-		public void setAddedAsParent() {
-			this.flags |= IS_JUST_PARENT;
-		}
-
-		public boolean isNotComplete() {
-			return (flags & IS_NOT_COMPLETE) != 0;
-		}
-
-		public void setNotComplete() {
-			this.flags |= IS_NOT_COMPLETE;
-		}
-		public boolean isMultiPolygon() {
-			return (flags & IS_MP) != 0; 
-		}
-
-		public void markAsMultiPolygon() {
-			this.flags |= IS_MP;
-		}
-
-		public int getLastVisitId() {
-			return lastVisitId;
-		}
-
-		public void setLastVisitId(int visitId) {
-			this.lastVisitId = visitId;
-		}
-		
-		public String getName(){
-			return name;
-		}
-
-		@Override
-		public String toString(){
-			return "r" + id + " " + name + " subrels:" + hasRelMembers() + " incomplete:" + isNotComplete();
-		}
-	}
 }
 
 
@@ -14,11 +14,17 @@ package uk.me.parabola.splitter;
 
 import uk.me.parabola.splitter.Relation.Member;
 import uk.me.parabola.splitter.args.SplitterParams;
-import uk.me.parabola.splitter.tools.SparseLong2IntMap;
+import uk.me.parabola.splitter.tools.ConcurrentSparseLong2IntMap;
+import uk.me.parabola.splitter.tools.Long2IntMapFunction;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 import it.unimi.dsi.fastutil.longs.LongArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
@@ -29,13 +35,19 @@ import java.util.regex.Pattern;
  * - a way is a problem way if its nodes are found in different combinations of areas
  * - a relation is a problem relation if its members are found in different combinations of areas
  * 
+ * With more than two threads the nodes and ways are collected in batches which are processed
+ * by worker threads. A batch contains only nodes or only ways, when the type changes all pending
+ * batches are finished first, so the result is the same as with a single thread. The relations
+ * are always processed by the calling thread.
  */
 class ProblemListProcessor extends AbstractMapProcessor {
 	private static final int PHASE1_NODES_AND_WAYS = 1;
 	private static final int PHASE2_RELS_ONLY = 2;
+	/** number of nodes or ways in one batch for the worker threads */
+	private static final int BATCH_SIZE = 4096;
 
-	private final SparseLong2IntMap coords;
-	private final SparseLong2IntMap ways;
+	private final Long2IntMapFunction coords;
+	private final Long2IntMapFunction ways;
 	
 	private final AreaDictionary areaDictionary;
 	private final DataStorer dataStorer;
@@ -46,9 +58,12 @@ class ProblemListProcessor extends AbstractMapProcessor {
 	private final AreaSet areaSet = new AreaSet();
 	
 	private int phase = PHASE1_NODES_AND_WAYS;
-	private long countCoords = 0;
+	private final AtomicLong countCoords = new AtomicLong();
 	private final int areaOffset;
 	private final int lastAreaOffset;
+	private final boolean testRealAreas;
+	/** if not null, all relations are written to this store for the MultiTileProcessor */
+	private RelationStore relStore;
 	private boolean isFirstPass;
 	private boolean isLastPass;
 	private AreaIndex areaIndex;
@@ -56,22 +71,38 @@ class ProblemListProcessor extends AbstractMapProcessor {
 	
 	private final HashSet<String> wantedBoundaryTagValues;
 	private final HashSet<String> wantedRouteTagValues;
+
+	/** number of worker threads for nodes and ways, 0 means that they are processed by the calling thread */
+	private final int numWorkers;
+	private ExecutorService workers;
+	/** limits the number of batches that wait for a worker */
+	private Semaphore freeBatches;
+	private Element[] batch;
+	private int batchPos;
+	private Class<?> batchType;
+	private volatile Throwable workerException;
 	
 	ProblemListProcessor(DataStorer dataStorer, int areaOffset,
 			int numAreasThisPass, SplitterParams mainOptions) {
 		this.dataStorer = dataStorer;
 		this.areaDictionary = dataStorer.getAreaDictionary();
+		// one thread is needed to read the input
+		int maxThreads = mainOptions.getMaxThreads().getCount();
+		this.numWorkers = maxThreads > 2 ? maxThreads - 1 : 0;
 		if (dataStorer.getUsedWays() == null){
-			ways = new SparseLong2IntMap("way");
-			ways.defaultReturnValue(UNASSIGNED);
+			ways = numWorkers > 0 ? createConcurrentSparseMap("way", numWorkers, mainOptions)
+					: createSparseMap("way", mainOptions);
 			dataStorer.setUsedWays(ways);
 		}
 		else 
 			ways = dataStorer.getUsedWays(); 
 		
+		// the index must be thread-safe, see FlatAreaIndex 
 		this.areaIndex = dataStorer.getGrid();
-		this.coords = new SparseLong2IntMap("coord");
-		this.coords.defaultReturnValue(UNASSIGNED);
+		// the index uses the extended areas, with overlap each candidate has to be tested
+		this.testRealAreas = areaDictionary.getOverlapAmount() > 0;
+		this.coords = numWorkers > 0 ? createConcurrentSparseMap("coord", numWorkers, mainOptions)
+				: createSparseMap("coord", mainOptions);
 		this.isFirstPass = (areaOffset == 0);
 		this.areaOffset = areaOffset;
 		this.lastAreaOffset = areaOffset + numAreasThisPass - 1;
@@ -130,17 +161,31 @@ class ProblemListProcessor extends AbstractMapProcessor {
 	public void processNode(Node node) {
 		if (phase == PHASE2_RELS_ONLY)
 			return;
+		if (numWorkers > 0)
+			addToBatch(node);
+		else if (calcNodeAreas(node, areaSet))
+			addCoords(1);
+	}
+
+	/**
+	 * Calculate the areas of the node and store the combination in the coords map.
+	 * @param node the node
+	 * @param areaSet the set used for the calculation
+	 * @return true if the node was stored
+	 */
+	private boolean calcNodeAreas(Node node, AreaSet areaSet) {
 		int countAreas = 0;
 		int lastUsedArea = UNASSIGNED;
 		AreaGridResult areaCandidates = areaIndex.get(node);
 		if (areaCandidates == null) 
-			return;
+			return false;
 		
 		areaSet.clear();
 		
-		for (int n : areaCandidates.set) {
+		for (IntIterator iter = areaCandidates.set.iterator(); iter.hasNext();) {
+			int n = iter.nextInt();
 			if (n >= areaOffset && n <= lastAreaOffset
-					&& (!areaCandidates.testNeeded || areaDictionary.getArea(n).contains(node))) {
+					&& (!(areaCandidates.testNeeded || testRealAreas) || areaDictionary.getArea(n).contains(node))) {
 				areaSet.set(n);
 				++countAreas;
 				lastUsedArea = n;
@@ -153,11 +198,16 @@ class ProblemListProcessor extends AbstractMapProcessor {
 			else  
 				areaIdx = AreaDictionary.translate(lastUsedArea); // no need to do lookup in the dictionary 
 			coords.put(node.getId(), areaIdx);
-			++countCoords;
-			if (countCoords % 10_000_000 == 0) {
-				System.out.println("coord MAP occupancy: " + Utils.format(countCoords)
-						+ ", number of area dictionary entries: " + areaDictionary.size());
-			}
+			return true;
+		}
+		return false;
+	}
+
+	private void addCoords(int num) {
+		long count = countCoords.addAndGet(num);
+		if (count / 10_000_000 != (count - num) / 10_000_000) {
+			System.out.println("coord MAP occupancy: " + Utils.format(count)
+					+ ", number of area dictionary entries: " + areaDictionary.size());
 		}
 	}
 	
@@ -165,6 +215,19 @@ class ProblemListProcessor extends AbstractMapProcessor {
 	public void processWay(Way way) {
 		if (phase == PHASE2_RELS_ONLY)
 			return;
+		if (numWorkers > 0)
+			addToBatch(way);
+		else 
+			calcWayAreas(way, areaSet, problemWays);
+	}
+
+	/**
+	 * Calculate the areas of the way and store the combination in the ways map.
+	 * @param way the way
+	 * @param areaSet the set used for the calculation
+	 * @param problems the list that receives the id of a problem way
+	 */
+	private void calcWayAreas(Way way, AreaSet areaSet, LongArrayList problems) {
 		boolean maybeChanged = false;
 		int oldclIndex = UNASSIGNED;
 		areaSet.clear();
@@ -184,12 +247,95 @@ class ProblemListProcessor extends AbstractMapProcessor {
 		}
 		
 		if (isLastPass && checkIfMultipleAreas(areaSet)){
-			problemWays.add(way.getId());
+			problems.add(way.getId());
 		}
 		if (maybeChanged && !areaSet.isEmpty()){
 			ways.put(way.getId(), areaDictionary.translate(areaSet));
 		}
 	}
+
+	/**
+	 * Add a node or way to the current batch. 
+	 * @param el the node or way
+	 */
+	private void addToBatch(Element el) {
+		if (batchType != el.getClass()) {
+			// ways need the areas of all previous nodes and vice versa
+			submitBatch();
+			waitForBatches();
+			batchType = el.getClass();
+		}
+		if (batch == null)
+			batch = new Element[BATCH_SIZE];
+		batch[batchPos++] = el;
+		if (batchPos == BATCH_SIZE)
+			submitBatch();
+	}
+
+	private void submitBatch() {
+		if (batchPos == 0)
+			return;
+		if (workers == null) {
+			workers = Executors.newFixedThreadPool(numWorkers, r -> {
+				Thread t = new Thread(r, "problem-list worker");
+				t.setDaemon(true);
+				return t;
+			});
+			freeBatches = new Semaphore(2 * numWorkers);
+		}
+		final Element[] elements = batch;
+		final int num = batchPos;
+		batch = null;
+		batchPos = 0;
+		freeBatches.acquireUninterruptibly();
+		workers.execute(() -> {
+			try {
+				processBatch(elements, num);
+			} catch (Throwable e) {
+				if (workerException == null)
+					workerException = e;
+			} finally {
+				freeBatches.release();
+			}
+		});
+	}
+
+	private void processBatch(Element[] elements, int num) {
+		AreaSet set = new AreaSet();
+		LongArrayList problems = new LongArrayList();
+		int stored = 0;
+		for (int i = 0; i < num; i++) {
+			Element el = elements[i];
+			if (el instanceof Node) {
+				if (calcNodeAreas((Node) el, set))
+					stored++;
+			} else {
+				calcWayAreas((Way) el, set, problems);
+			}
+		}
+		if (stored > 0)
+			addCoords(stored);
+		if (!problems.isEmpty()) {
+			synchronized (problemWays) {
+				problemWays.addAll(problems);
+			}
+		}
+	}
+
+	/**
+	 * Wait until all submitted batches are processed. 
+	 */
+	private void waitForBatches() {
+		if (workers == null)
+			return;
+		freeBatches.acquireUninterruptibly(2 * numWorkers);
+		freeBatches.release(2 * numWorkers);
+		if (workerException != null)
+			throw new SplitFailedException("Problem-list worker failed", workerException);
+		// allow lock free reads
+		if (coords instanceof ConcurrentSparseLong2IntMap)
+			((ConcurrentSparseLong2IntMap) coords).seal();
+	}
 	
 	// default exclude list for boundary tag
 	private static final HashSet<String> unwantedBoundaryTagValues = new HashSet<>(
@@ -199,6 +345,15 @@ class ProblemListProcessor extends AbstractMapProcessor {
 	public void processRelation(Relation rel) {
 		if (phase == PHASE1_NODES_AND_WAYS)
 			return;
+		if (relStore != null) {
+			try {
+				relStore.add(rel);
+			} catch (IllegalArgumentException e) {
+				System.out.println(e.getMessage() + ", relations will be read again by the multi-tile analyser");
+				relStore.finish();
+				relStore = null;
+			}
+		}
 		boolean useThis = false;
 		boolean isMPRelType = false;
 		boolean hasBoundaryTag = false;
@@ -248,10 +403,10 @@ class ProblemListProcessor extends AbstractMapProcessor {
 			return;
 		}
 		areaSet.clear();
-		Integer relAreaIdx;
+		int relAreaIdx;
 		if (!isFirstPass) {
 			relAreaIdx = dataStorer.getUsedRels().get(rel.getId());
-			if (relAreaIdx != null)
+			if (relAreaIdx != DataStorer.NOT_STORED)
 				areaSet.or(areaDictionary.getSet(relAreaIdx));
 		}
 		int oldclIndex = UNASSIGNED;
@@ -299,9 +454,31 @@ class ProblemListProcessor extends AbstractMapProcessor {
 		dataStorer.getUsedRels().put(rel.getId(), relAreaIdx);
 	}
 	
+	/**
+	 * Let the processor write all relations to the given store.
+	 * @param relStore the store 
+	 */
+	void setRelationStore(RelationStore relStore) {
+		this.relStore = relStore;
+	}
+
+	/**
+	 * @return the store with all relations or null if it could not be filled
+	 */
+	RelationStore getRelationStore() {
+		return relStore;
+	}
+
 	@Override
 	public boolean endMap() {
 		if (phase == PHASE1_NODES_AND_WAYS){
+			submitBatch();
+			waitForBatches();
+			if (workers != null) {
+				workers.shutdown();
+				workers = null;
+			}
+			batchType = null;
 			phase++;
 			return false;
 		}
@@ -311,7 +488,7 @@ class ProblemListProcessor extends AbstractMapProcessor {
 			System.out.println("");
 			System.out.println("  Number of stored area combis for nodes: " + Utils.format(coords.size()));
 			System.out.println("  Number of stored area combis for ways: " + Utils.format(dataStorer.getUsedWays().size()));
-			System.out.println("  Number of stored Integers for rels: " + Utils.format(dataStorer.getUsedRels().size()));
+			System.out.println("  Number of stored area combis for rels: " + Utils.format(dataStorer.getUsedRels().size()));
 			System.out.println("  Number of stored combis in dictionary: " + Utils.format(areaDictionary.size()));
 			System.out.println("  Number of detected problem ways: " + Utils.format(problemWays.size()));
 			System.out.println("  Number of detected problem rels: " + Utils.format(problemRels.size()));
@@ -0,0 +1,343 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.bytes.ByteArrayList;
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import uk.me.parabola.splitter.tools.RoaringBitSet;
+
+/**
+ * Stores the relations needed by the {@link MultiTileProcessor} in a few primitive arrays.
+ * The relations are addressed by a dense index which follows the order in which they were added.
+ * The members of all relations are stored in one array, the members of relation i are
+ * found at the positions {@code getMemberStart(i)} to {@code getMemberEnd(i) - 1}
+ * (compressed sparse row format). Member roles are interned in a table that is shared with
+ * graphs created by {@link #retain(RoaringBitSet)}.
+ * <p>
+ * After {@link #finish()} the sub relations are also available as edges between
+ * the dense indexes, missing sub relations are not stored.
+ */
+class RelationGraph {
+	static final int MEM_INVALID_TYPE = 0;
+	static final int MEM_NODE_TYPE = 1;
+	static final int MEM_WAY_TYPE = 2;
+	static final int MEM_REL_TYPE = 3;
+	private static final int TYPE_BITS = 2;
+	private static final int TYPE_MASK = (1 << TYPE_BITS) - 1;
+
+	static final byte IS_MP = 0x01;
+	static final byte HAS_NODES = 0x04;
+	static final byte HAS_WAYS = 0x08;
+	static final byte HAS_RELS = 0x10;
+	private static final byte ON_LOOP = 0x02;
+	private static final byte IS_NOT_COMPLETE = 0x40;
+
+	private final LongArrayList ids = new LongArrayList();
+	private final Long2IntOpenHashMap idToIndex = new Long2IntOpenHashMap();
+	private final ByteArrayList flags = new ByteArrayList();
+	private final IntArrayList writerIndexes = new IntArrayList();
+	private final List<String> names = new ArrayList<>();
+	/** position of the first member of each relation, one additional entry for the end */
+	private final IntArrayList memStart = new IntArrayList();
+	private final LongArrayList memRefs = new LongArrayList();
+	/** role index and member type */
+	private final IntArrayList memInfo = new IntArrayList();
+
+	private final Object2IntOpenHashMap<String> roleIndexes;
+	private final List<String> roles;
+
+	private int[] subRelStart;
+	private int[] subRels;
+
+	RelationGraph() {
+		this(new Object2IntOpenHashMap<String>(), new ArrayList<String>());
+	}
+
+	private RelationGraph(Object2IntOpenHashMap<String> roleIndexes, List<String> roles) {
+		this.roleIndexes = roleIndexes;
+		this.roles = roles;
+		roleIndexes.defaultReturnValue(-1);
+		idToIndex.defaultReturnValue(-1);
+		memStart.add(0);
+	}
+
+	/**
+	 * Add a relation.
+	 * @param rel the relation
+	 * @return the index of the relation
+	 */
+	int add(Relation rel) {
+		RelationStore.Entry e = new RelationStore.Entry();
+		e.set(rel);
+		return add(e);
+	}
+
+	/**
+	 * Add a relation that was read from a {@link RelationStore}.
+	 * @param e the relation data
+	 * @return the index of the relation
+	 */
+	int add(RelationStore.Entry e) {
+		int idx = ids.size();
+		for (int i = 0; i < e.numMembers; i++) {
+			memRefs.add(e.refs[i]);
+			memInfo.add(getRoleIndex(e.roles[i]) << TYPE_BITS | e.types[i]);
+		}
+		addRelation(e.id, e.flags, e.name);
+		return idx;
+	}
+
+	private void addRelation(long id, byte relFlags, String name) {
+		idToIndex.put(id, ids.size());
+		ids.add(id);
+		flags.add(relFlags);
+		writerIndexes.add(AbstractMapProcessor.UNASSIGNED);
+		names.add(name);
+		memStart.add(memRefs.size());
+	}
+
+	private int getRoleIndex(String role) {
+		int roleIdx = roleIndexes.getInt(role);
+		if (roleIdx < 0) {
+			roleIdx = roles.size();
+			roles.add(role);
+			roleIndexes.put(role, roleIdx);
+		}
+		return roleIdx;
+	}
+
+	/**
+	 * Resolve the sub relations. Must be called after the last relation was added.
+	 */
+	void finish() {
+		int n = ids.size();
+		subRelStart = new int[n + 1];
+		IntArrayList edges = new IntArrayList();
+		for (int i = 0; i < n; i++) {
+			subRelStart[i] = edges.size();
+			if ((flags.getByte(i) & HAS_RELS) == 0)
+				continue;
+			for (int m = getMemberStart(i); m < getMemberEnd(i); m++) {
+				if (getMemberType(m) == MEM_REL_TYPE) {
+					int subIdx = idToIndex.get(memRefs.getLong(m));
+					if (subIdx >= 0)
+						edges.add(subIdx);
+				}
+			}
+		}
+		subRelStart[n] = edges.size();
+		subRels = edges.toIntArray();
+		ids.trim();
+		flags.trim();
+		writerIndexes.trim();
+		memStart.trim();
+		memRefs.trim();
+		memInfo.trim();
+	}
+
+	/**
+	 * Create a new finished graph that contains only the given relations.
+	 * @param keep the ids of the relations that should be kept
+	 * @return the new graph
+	 */
+	RelationGraph retain(RoaringBitSet keep) {
+		RelationGraph graph = new RelationGraph(roleIndexes, roles);
+		for (int i = 0; i < ids.size(); i++) {
+			if (!keep.get(ids.getLong(i)))
+				continue;
+			for (int m = getMemberStart(i); m < getMemberEnd(i); m++) {
+				graph.memRefs.add(memRefs.getLong(m));
+				graph.memInfo.add(memInfo.getInt(m));
+			}
+			graph.addRelation(ids.getLong(i), flags.getByte(i), names.get(i));
+			graph.writerIndexes.set(graph.size() - 1, writerIndexes.getInt(i));
+		}
+		graph.finish();
+		return graph;
+	}
+
+	int size() {
+		return ids.size();
+	}
+
+	int getNumMembers() {
+		return memRefs.size();
+	}
+
+	long getId(int idx) {
+		return ids.getLong(idx);
+	}
+
+	/**
+	 * @return the index of the relation or -1 if the relation is not known
+	 */
+	int getIndex(long id) {
+		return idToIndex.get(id);
+	}
+
+	int getMemberStart(int idx) {
+		return memStart.getInt(idx);
+	}
+
+	int getMemberEnd(int idx) {
+		return memStart.getInt(idx + 1);
+	}
+
+	long getMemberRef(int mem) {
+		return memRefs.getLong(mem);
+	}
+
+	int getMemberType(int mem) {
+		return memInfo.getInt(mem) & TYPE_MASK;
+	}
+
+	String getMemberRole(int mem) {
+		return roles.get(memInfo.getInt(mem) >>> TYPE_BITS);
+	}
+
+	int getSubRelStart(int idx) {
+		return subRelStart[idx];
+	}
+
+	int getSubRelEnd(int idx) {
+		return subRelStart[idx + 1];
+	}
+
+	/**
+	 * @param edge position between {@link #getSubRelStart(int)} and {@link #getSubRelEnd(int)}
+	 * @return the index of the sub relation
+	 */
+	int getSubRel(int edge) {
+		return subRels[edge];
+	}
+
+	String getName(int idx) {
+		return names.get(idx);
+	}
+
+	int getWriterIndex(int idx) {
+		return writerIndexes.getInt(idx);
+	}
+
+	void setWriterIndex(int idx, int writerIndex) {
+		writerIndexes.set(idx, writerIndex);
+	}
+
+	private boolean hasFlag(int idx, byte flag) {
+		return (flags.getByte(idx) & flag) != 0;
+	}
+
+	private void setFlag(int idx, byte flag) {
+		flags.set(idx, (byte) (flags.getByte(idx) | flag));
+	}
+
+	boolean isMultiPolygon(int idx) {
+		return hasFlag(idx, IS_MP);
+	}
+
+	boolean hasNodeMembers(int idx) {
+		return hasFlag(idx, HAS_NODES);
+	}
+
+	boolean hasWayMembers(int idx) {
+		return hasFlag(idx, HAS_WAYS);
+	}
+
+	boolean hasRelMembers(int idx) {
+		return hasFlag(idx, HAS_RELS);
+	}
+
+	boolean isOnLoop(int idx) {
+		return hasFlag(idx, ON_LOOP);
+	}
+
+	void markOnLoop(int idx) {
+		setFlag(idx, ON_LOOP);
+	}
+
+	boolean isNotComplete(int idx) {
+		return hasFlag(idx, IS_NOT_COMPLETE);
+	}
+
+	void setNotComplete(int idx) {
+		setFlag(idx, IS_NOT_COMPLETE);
+	}
+
+	/**
+	 * Calculate the strongly connected components of the graph formed by the relations
+	 * and their sub relations (iterative version of Tarjan's algorithm). Relations that
+	 * are part of a loop end up in the same component. The components are numbered in
+	 * topological order with the sub relations first: the component of a sub relation
+	 * never has a higher number than the component of its parent.
+	 * @param comp filled with the component number of each relation
+	 * @return the number of components
+	 */
+	int findComponents(int[] comp) {
+		int n = size();
+		int[] order = new int[n];
+		int[] low = new int[n];
+		int[] edgePos = new int[n];
+		BitSet onStack = new BitSet(n);
+		IntArrayList callStack = new IntArrayList();
+		IntArrayList compStack = new IntArrayList();
+		int counter = 0;
+		int numComps = 0;
+		for (int start = 0; start < n; start++) {
+			if (order[start] != 0)
+				continue;
+			order[start] = low[start] = ++counter;
+			edgePos[start] = subRelStart[start];
+			callStack.add(start);
+			compStack.add(start);
+			onStack.set(start);
+			while (!callStack.isEmpty()) {
+				int v = callStack.getInt(callStack.size() - 1);
+				if (edgePos[v] < subRelStart[v + 1]) {
+					int w = subRels[edgePos[v]++];
+					if (order[w] == 0) {
+						order[w] = low[w] = ++counter;
+						edgePos[w] = subRelStart[w];
+						callStack.add(w);
+						compStack.add(w);
+						onStack.set(w);
+					} else if (onStack.get(w)) {
+						low[v] = Math.min(low[v], order[w]);
+					}
+					continue;
+				}
+				callStack.removeInt(callStack.size() - 1);
+				if (!callStack.isEmpty()) {
+					int u = callStack.getInt(callStack.size() - 1);
+					low[u] = Math.min(low[u], low[v]);
+				}
+				if (low[v] == order[v]) {
+					int w;
+					do {
+						w = compStack.removeInt(compStack.size() - 1);
+						onStack.clear(w);
+						comp[w] = numComps;
+					} while (w != v);
+					numComps++;
+				}
+			}
+		}
+		return numComps;
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.objects.Object2IntOpenHashMap;
+import uk.me.parabola.splitter.Relation.Member;
+
+/**
+ * Stores relations in a temporary file so that only the relations which are
+ * really needed have to be kept in memory. The relations must be added with
+ * ascending ids. The file is divided into blocks of {@link #BLOCK_RELS} relations,
+ * each block starts with the full id, the following ids and all member refs
+ * are stored as varint coded deltas. Only the first id and the position of
+ * each block are kept in memory, a relation is found with a binary search
+ * and a sequential scan of one block.
+ */
+class RelationStore {
+	private static final int BLOCK_RELS = 64;
+
+	private final File tmpDir;
+	private File tmpFile;
+	private DataOutputStream dos;
+	private FileChannel channel;
+	private long fileLen;
+	private long size;
+	private long lastId = Long.MIN_VALUE;
+	private final LongArrayList blockIds = new LongArrayList();
+	private final LongArrayList blockOffsets = new LongArrayList();
+	private final Object2IntOpenHashMap<String> roleIndexes = new Object2IntOpenHashMap<>();
+	private final List<String> roles = new ArrayList<>();
+	private final Entry writeEntry = new Entry();
+
+	private int cachedBlock = -1;
+	private ByteBuffer blockBuf;
+
+	/**
+	 * The information about one relation that is needed by the {@link MultiTileProcessor}.
+	 * The object is reused, the arrays are only valid up to {@code numMembers}.
+	 */
+	static class Entry {
+		long id;
+		byte flags;
+		String name;
+		int numMembers;
+		long[] refs = new long[16];
+		int[] types = new int[16];
+		String[] roles = new String[16];
+
+		/**
+		 * Extract the needed information from a relation.
+		 * @param rel the relation
+		 */
+		void set(Relation rel) {
+			id = rel.getId();
+			flags = 0;
+			numMembers = 0;
+			for (Member mem : rel.getMembers()) {
+				int type;
+				if ("node".equals(mem.getType())) {
+					type = RelationGraph.MEM_NODE_TYPE;
+					flags |= RelationGraph.HAS_NODES;
+				} else if ("way".equals(mem.getType())) {
+					type = RelationGraph.MEM_WAY_TYPE;
+					flags |= RelationGraph.HAS_WAYS;
+				} else if ("relation".equals(mem.getType())) {
+					type = RelationGraph.MEM_REL_TYPE;
+					flags |= RelationGraph.HAS_RELS;
+				} else
+					type = RelationGraph.MEM_INVALID_TYPE;
+				addMember(mem.getRef(), type, mem.getRole());
+			}
+			String type = rel.getTag("type");
+			if ("multipolygon".equals(type) || "boundary".equals(type))
+				flags |= RelationGraph.IS_MP;
+			name = calcName(rel);
+		}
+
+		private void addMember(long ref, int type, String role) {
+			if (numMembers == refs.length) {
+				int newLen = numMembers * 2;
+				refs = Arrays.copyOf(refs, newLen);
+				types = Arrays.copyOf(types, newLen);
+				roles = Arrays.copyOf(roles, newLen);
+			}
+			refs[numMembers] = ref;
+			types[numMembers] = type;
+			roles[numMembers] = role;
+			numMembers++;
+		}
+
+		private static String calcName(Relation rel) {
+			String goodNameCandidate = null;
+			String nameCandidate = null;
+			String zipCode = null;
+			Iterator<Element.Tag> tags = rel.tagsIterator();
+			while (tags.hasNext()) {
+				Element.Tag t = tags.next();
+				for (String nameTag : MultiTileProcessor.NAME_TAGS) {
+					if (nameTag.equals(t.key)) {
+						goodNameCandidate = t.value;
+						break;
+					}
+				}
+				if (goodNameCandidate != null)
+					break;
+				if (t.key.contains("name"))
+					nameCandidate = t.value;
+				else if ("postal_code".equals(t.key))
+					zipCode = t.value;
+			}
+			if (goodNameCandidate != null)
+				return goodNameCandidate;
+			if (nameCandidate != null)
+				return nameCandidate;
+			if (zipCode != null)
+				return "postal_code=" + zipCode;
+			return "?";
+		}
+	}
+
+	/**
+	 * @param tmpDir the directory for the temporary file
+	 */
+	RelationStore(File tmpDir) {
+		this.tmpDir = tmpDir;
+		roleIndexes.defaultReturnValue(-1);
+	}
+
+	/**
+	 * Write a relation to the store.
+	 * @param rel the relation
+	 * @throws IllegalArgumentException if the id is not higher than the last id
+	 */
+	void add(Relation rel) {
+		if (rel.getId() <= lastId)
+			throw new IllegalArgumentException("New relation id " + rel.getId() + " is not higher than last id " + lastId);
+		writeEntry.set(rel);
+		try {
+			if (dos == null) {
+				tmpFile = File.createTempFile("relations", null, tmpDir);
+				tmpFile.deleteOnExit();
+				dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmpFile)));
+			}
+			Entry e = writeEntry;
+			if (size % BLOCK_RELS == 0) {
+				blockIds.add(e.id);
+				blockOffsets.add(fileLen);
+				dos.writeLong(e.id);
+				fileLen += 8;
+			} else {
+				fileLen += writeVarLong(dos, e.id - lastId);
+			}
+			dos.writeByte(e.flags);
+			byte[] nameBytes = e.name.getBytes(StandardCharsets.UTF_8);
+			fileLen += 1 + writeVarLong(dos, nameBytes.length) + nameBytes.length;
+			dos.write(nameBytes);
+			fileLen += writeVarLong(dos, e.numMembers);
+			long lastRef = 0;
+			for (int i = 0; i < e.numMembers; i++) {
+				fileLen += writeVarLong(dos, (long) getRoleIndex(e.roles[i]) << 2 | e.types[i]);
+				long delta = e.refs[i] - lastRef;
+				fileLen += writeVarLong(dos, (delta << 1) ^ (delta >> 63));
+				lastRef = e.refs[i];
+			}
+		} catch (IOException exp) {
+			throw new SplitFailedException("Failed to write relation to temp file " + tmpFile, exp);
+		}
+		lastId = rel.getId();
+		size++;
+	}
+
+	private int getRoleIndex(String role) {
+		int roleIdx = roleIndexes.getInt(role);
+		if (roleIdx < 0) {
+			roleIdx = roles.size();
+			roles.add(role);
+			roleIndexes.put(role, roleIdx);
+		}
+		return roleIdx;
+	}
+
+	/**
+	 * Close the output, must be called before the first {@link #get(long, Entry)}.
+	 */
+	void finishWrite() {
+		if (dos == null)
+			return;
+		try {
+			dos.close();
+			dos = null;
+			channel = new RandomAccessFile(tmpFile, "r").getChannel();
+		} catch (IOException e) {
+			throw new SplitFailedException("Failed to close temp file " + tmpFile, e);
+		}
+		System.out.println("Wrote " + Utils.format(size) + " relations in " + Utils.format(fileLen) + " bytes to "
+				+ tmpFile.getAbsolutePath());
+	}
+
+	/**
+	 * Read a relation.
+	 * @param id the relation id
+	 * @param e the entry that receives the data
+	 * @return true if the relation was found
+	 */
+	boolean get(long id, Entry e) {
+		int block = findBlock(id);
+		if (block < 0)
+			return false;
+		loadBlock(block);
+		blockBuf.rewind();
+		long relId = 0;
+		for (int i = 0; blockBuf.hasRemaining(); i++) {
+			relId = (i == 0) ? blockBuf.getLong() : relId + readVarLong(blockBuf);
+			if (relId > id)
+				return false;
+			if (relId == id) {
+				readEntry(relId, e);
+				return true;
+			}
+			skipEntry();
+		}
+		return false;
+	}
+
+	/**
+	 * @return the last block whose first id is not higher than the given id, or -1
+	 */
+	private int findBlock(long id) {
+		int low = 0;
+		int high = blockIds.size() - 1;
+		int found = -1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (blockIds.getLong(mid) <= id) {
+				found = mid;
+				low = mid + 1;
+			} else
+				high = mid - 1;
+		}
+		return found;
+	}
+
+	private void loadBlock(int block) {
+		if (block == cachedBlock)
+			return;
+		long start = blockOffsets.getLong(block);
+		long end = (block + 1 < blockOffsets.size()) ? blockOffsets.getLong(block + 1) : fileLen;
+		int len = (int) (end - start);
+		if (blockBuf == null || blockBuf.capacity() < len)
+			blockBuf = ByteBuffer.allocate(Math.max(len, 1 << 16));
+		blockBuf.clear();
+		blockBuf.limit(len);
+		try {
+			while (blockBuf.hasRemaining()) {
+				if (channel.read(blockBuf, start + blockBuf.position()) < 0)
+					throw new IOException("unexpected end of file");
+			}
+		} catch (IOException exp) {
+			throw new SplitFailedException("Failed to read relations from temp file " + tmpFile, exp);
+		}
+		blockBuf.flip();
+		cachedBlock = block;
+	}
+
+	private void readEntry(long relId, Entry e) {
+		e.id = relId;
+		e.flags = blockBuf.get();
+		byte[] nameBytes = new byte[(int) readVarLong(blockBuf)];
+		blockBuf.get(nameBytes);
+		e.name = new String(nameBytes, StandardCharsets.UTF_8);
+		int numMembers = (int) readVarLong(blockBuf);
+		e.numMembers = 0;
+		long ref = 0;
+		for (int i = 0; i < numMembers; i++) {
+			int info = (int) readVarLong(blockBuf);
+			long v = readVarLong(blockBuf);
+			ref += (v >>> 1) ^ -(v & 1);
+			e.addMember(ref, info & 3, roles.get(info >>> 2));
+		}
+	}
+
+	private void skipEntry() {
+		blockBuf.get(); // flags
+		int nameLen = (int) readVarLong(blockBuf);
+		blockBuf.position(blockBuf.position() + nameLen);
+		int numMembers = (int) readVarLong(blockBuf);
+		for (int i = 0; i < 2 * numMembers; i++)
+			readVarLong(blockBuf);
+	}
+
+	/**
+	 * Close and delete the temporary file.
+	 */
+	void finish() {
+		try {
+			if (dos != null)
+				dos.close();
+			if (channel != null)
+				channel.close();
+		} catch (IOException e) {
+			throw new SplitFailedException("Failed to close temp file " + tmpFile, e);
+		}
+		dos = null;
+		channel = null;
+		blockBuf = null;
+		if (tmpFile != null && tmpFile.exists()) {
+			tmpFile.delete();
+			System.out.println("temporary file " + tmpFile.getAbsolutePath() + " was deleted");
+		}
+	}
+
+	long size() {
+		return size;
+	}
+
+	long getFileLength() {
+		return fileLen;
+	}
+
+	/** write an unsigned varint, returns the number of written bytes */
+	private static int writeVarLong(DataOutputStream dos, long v) throws IOException {
+		int len = 1;
+		while ((v & ~0x7fL) != 0) {
+			dos.writeByte((int) ((v & 0x7f) | 0x80));
+			v >>>= 7;
+			len++;
+		}
+		dos.writeByte((int) v);
+		return len;
+	}
+
+	private static long readVarLong(ByteBuffer buf) {
+		long v = 0;
+		int shift = 0;
+		while (true) {
+			byte b = buf.get();
+			v |= (long) (b & 0x7f) << shift;
+			if (b >= 0)
+				return v;
+			shift += 7;
+		}
+	}
+}
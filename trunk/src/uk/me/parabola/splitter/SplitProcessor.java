@@ -17,6 +17,7 @@ import uk.me.parabola.splitter.args.SplitterParams;
 import uk.me.parabola.splitter.tools.Long2IntClosedMapFunction;
 import uk.me.parabola.splitter.tools.SparseLong2IntMap;
 import uk.me.parabola.splitter.writer.OSMWriter;
+import it.unimi.dsi.fastutil.ints.IntIterator;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -66,10 +67,8 @@ class SplitProcessor extends AbstractMapProcessor {
 		this.dataStorer = dataStorer;
 		this.writerDictionary = dataStorer.getAreaDictionary();
 		this.writers = dataStorer.getWriters();
-		this.coords = new SparseLong2IntMap("coord");
-		this.ways   = new SparseLong2IntMap("way");
-		this.coords.defaultReturnValue(UNASSIGNED);
-		this.ways.defaultReturnValue(UNASSIGNED); 		
+		this.coords = createSparseMap("coord", mainOptions);
+		this.ways   = createSparseMap("way", mainOptions);
 		this.writerIndex = dataStorer.getGrid();
 		this.countWays = ways.size();
 		this.writerOffset = writerOffset;
@@ -105,7 +104,8 @@ class SplitProcessor extends AbstractMapProcessor {
 		if (multiTileWriterIdx != UNASSIGNED) {
 			AreaSet cl = writerDictionary.getSet(multiTileWriterIdx);
 			// set only active writer bits
-			for (int i : cl) {
+			for (IntIterator iter = cl.iterator(); iter.hasNext();) {
+				int i = iter.nextInt();
 				if (i >= writerOffset && i <= lastWriter)
 					usedWriters.set(i);
 			}
@@ -162,8 +162,8 @@ class SplitProcessor extends AbstractMapProcessor {
 	@Override
 	public void processRelation(Relation rel) {
 		usedWriters.clear();
-		Integer singleTileWriterIdx = dataStorer.getOneTileOnlyRels(rel.getId());
-		if (singleTileWriterIdx != null){
+		int singleTileWriterIdx = dataStorer.getOneTileOnlyRels(rel.getId());
+		if (singleTileWriterIdx != DataStorer.NOT_STORED){
 			if (singleTileWriterIdx == UNASSIGNED) {
 			    // we know that the relation is outside of all real areas 
 				return;
@@ -258,7 +258,8 @@ class SplitProcessor extends AbstractMapProcessor {
 		}
 		usedWriters.clear();
 		if (writerCandidates != null){
-			for (int n : writerCandidates.set) {
+			for (IntIterator iter = writerCandidates.set.iterator(); iter.hasNext();) {
+				int n = iter.nextInt();
 				if (n < writerOffset || n > lastWriter)
 					continue;
 				OSMWriter writer = writers[n];
@@ -286,7 +287,8 @@ class SplitProcessor extends AbstractMapProcessor {
 		if (isSpecialNode){
 			// this node is part of a multi-tile-polygon, add it to all tiles covered by the parent 
 			AreaSet nodeWriters = writerDictionary.getSet(multiTileWriterIdx);
-			for (int i : nodeWriters) {
+			for (IntIterator iter = nodeWriters.iterator(); iter.hasNext();) {
+				int i = iter.nextInt();
 				if (i < writerOffset || i > lastWriter || usedWriters.get(i))
 					continue;
 
@@ -334,7 +336,8 @@ class SplitProcessor extends AbstractMapProcessor {
 
 	private void writeElement (Element el, AreaSet writersToUse) throws IOException {
 		if (!writersToUse.isEmpty()) {
-			for (int n : writersToUse) {
+			for (IntIterator iter = writersToUse.iterator(); iter.hasNext();) {
+				int n = iter.nextInt();
 				if (n < writerOffset || n > lastWriter)
 					continue;
 				if (maxThreads > 1) {
@@ -116,6 +116,18 @@ public interface SplitterParams {
 	@Option(defaultValue = "200000", description = "Search limit in split algo. Higher values may find better splits, but will take longer.")
 	int getSearchLimit();
 
+	@Option(defaultValue = "1000000", description = "Maximum number of tiles in the cache of tiles without a valid split that each solver of the split algo keeps. "
+			+ "The hit rate of the cache is reported at the end of each solver run.")
+	int getSolverCacheSize();
+
+	@Option(defaultValue = "false", description = "Search the split positions of large tiles in parallel when max-threads is higher than 2. "
+			+ "When the search limit is reached, the result can differ from the sequential search.")
+	boolean isSolverParallelSearch();
+
+	@Option(defaultValue = "0", description = "Maximum time in seconds for the split algo. When it expires, the best solution found so far is used. "
+			+ "A solver without any solution continues until it finds one. 0 means no limit.")
+	int getSolverTimeBudget();
+
 	@Option(defaultValue = "remove", description = "Define how splitter treats version info in the osm data. Can be remove, fake, or keep")
 	String getHandleElementVersion();
 
@@ -125,5 +137,18 @@ public interface SplitterParams {
 	@Option(defaultValue="", description = "A comma separated list of tag values for route relations. " 
 			+ "Can be used to keep route relations of the given type complete. Only route values listed are kept complete. Default is empty.")
 	String getRouteRelValues();
+
+	@Option(defaultValue = "heap", description = "Where the node and way maps store their data, either heap, direct, or mapped. " 
+			+ "direct and mapped keep the data outside of the Java heap, mapped uses a temporary file in the output directory.")
+	String getMapStorage();
+
+	@Option(defaultValue = "compact", description = "How the node and way maps encode their data, either compact or fast. " 
+			+ "fast requires more memory but less CPU time.")
+	String getMapEncoding();
+
+	@Option(defaultValue = "max-areas", description = "How many passes the problem list generator uses, either max-areas or single. "
+			+ "max-areas processes --max-areas areas in each pass, single reads the input once for all areas "
+			+ "but stores all nodes of the input in one map.")
+	String getProblemListPasses();
 	
 }
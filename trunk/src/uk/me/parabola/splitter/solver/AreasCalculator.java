@@ -215,6 +215,10 @@ public class AreasCalculator {
 		System.out.println("Rounded map coverage is " + splittableArea.getBounds());
 
 		splittableArea.setMapId(mainOptions.getMapid());
+		splittableArea.setMaxThreads(mainOptions.getMaxThreads().getCount());
+		splittableArea.setParallelSearch(mainOptions.isSolverParallelSearch());
+		splittableArea.setCacheSize(mainOptions.getSolverCacheSize());
+		splittableArea.setTimeBudget(mainOptions.getSolverTimeBudget());
 		long startSplit = System.currentTimeMillis();
 		List<Area> areas;
 		if (numTiles >= 2) {
@@ -16,20 +16,27 @@ import java.awt.Rectangle;
 import java.util.BitSet;
 
 import uk.me.parabola.splitter.Area;
+import uk.me.parabola.splitter.SplitFailedException;
 import uk.me.parabola.splitter.Utils;
 
 /**
  * Contains info that is needed by the {@link Tile} class. For a given
- * DensityMap we calculate some extra info to allow faster access to row sums
- * and column sums.
+ * DensityMap we calculate tables of prefix sums (summed-area tables) so that
+ * the number of nodes in any rectangle of grid elements is found in constant time.
+ * If a polygon is given, the same is done for the grid elements outside of the 
+ * polygon and the nodes in them.
  * 
  * @author GerdP
  * 
  */
 public class EnhancedDensityMap {
 	private final DensityMap densityMap;
-	private int[][] xyMap;
-	private int[][] yxMap;
+	/** prefix sums of the node counts, see {@link #pos(int, int)} */
+	private long[] nodeSums;
+	/** prefix sums of the grid elements outside of the polygon, null if there are none */
+	private int[] outsideSums;
+	/** prefix sums of the node counts in grid elements outside of the polygon, null if there are none */
+	private long[] outsideNodeSums;
 	private BitSet xyOutsidePolygon = new BitSet();
 	private double[] aspectRatioFactor;
 	private int minAspectRatioFactorPos;
@@ -68,16 +75,23 @@ public class EnhancedDensityMap {
 		minAspectRatioFactorPos = minPos;
 		assert lat == maxLat;
 
-		// filter the density map and populate xyMap
+		// calculate the prefix sums and check which grid elements are outside of the polygon 
 		int width = densityMap.getWidth();
 		int height = densityMap.getHeight();
-		xyMap = new int[width][];
+		long size = (long) (width + 1) * (height + 1);
+		if (size > Integer.MAX_VALUE - 8)
+			throw new SplitFailedException("Density map is too large, try to use a lower resolution.");
+		nodeSums = new long[(int) size];
+		if (polygonArea != null) {
+			outsideSums = new int[(int) size];
+			outsideNodeSums = new long[(int) size];
+		}
 		int shift = densityMap.getShift();
 		for (int x = 0; x < width; x++) {
 			int polyXPos = densityMap.getBounds().getMinLong() + (x << shift);
-			int[] xCol = null;
-			xCol = new int[height];
-			boolean colNeeded = false;
+			long colSum = 0;
+			int colOutside = 0;
+			long colOutsideNodes = 0;
 			for (int y = 0; y < height; y++) {
 				int count = densityMap.getNodeCount(x, y);
 				if (polygonArea != null) {
@@ -86,37 +100,79 @@ public class EnhancedDensityMap {
 						maxNodesInDensityMapGridElementInPoly = Math.max(count, maxNodesInDensityMapGridElementInPoly);
 					} else {
 						xyOutsidePolygon.set(x * height + y);
+						colOutside++;
+						colOutsideNodes += count;
 					}
+					outsideSums[pos(x + 1, y + 1)] = outsideSums[pos(x, y + 1)] + colOutside;
+					outsideNodeSums[pos(x + 1, y + 1)] = outsideNodeSums[pos(x, y + 1)] + colOutsideNodes;
 				}
 				if (count > 0) {
 					maxNodesInDensityMapGridElement = Math.max(count, maxNodesInDensityMapGridElement);
-					xCol[y] = count;
-					colNeeded = true;
+					colSum += count;
 				}
+				nodeSums[pos(x + 1, y + 1)] = nodeSums[pos(x, y + 1)] + colSum;
 			}
-			if (colNeeded)
-				xyMap[x] = xCol;
 		}
-		
-		// create and populate yxMap, this helps to speed up row access
-		yxMap = new int[height][];
-		for (int y = 0; y < height; y++) {
-			boolean rowNeeded = false;
-			int[] yRow = new int[width];
-			for (int x = 0; x < width; x++) {
-				int count = 0;
-				if (xyMap[x] != null)
-					count = xyMap[x][y];
-				if (count > 0) {
-					rowNeeded = true;
-					yRow[x] = count;
-				}
-			}
-			if (rowNeeded)
-				yxMap[y] = yRow;
+		if (xyOutsidePolygon.isEmpty()) {
+			outsideSums = null;
+			outsideNodeSums = null;
 		}
 	}
 
+	/**
+	 * @return the position of the prefix sum for the grid elements left of x and below y 
+	 */
+	private int pos(int x, int y) {
+		return x * (densityMap.getHeight() + 1) + y;
+	}
+
+	private long rectSum(long[] sums, int x, int y, int width, int height) {
+		return sums[pos(x + width, y + height)] - sums[pos(x, y + height)] - sums[pos(x + width, y)] + sums[pos(x, y)];
+	}
+
+	/**
+	 * Calculate the number of nodes in a rectangle of grid elements.
+	 * @param x the first column
+	 * @param y the first row
+	 * @param width the number of columns
+	 * @param height the number of rows
+	 * @return the sum of the node counts
+	 */
+	public long getNodeCount(int x, int y, int width, int height) {
+		return rectSum(nodeSums, x, y, width, height);
+	}
+
+	/**
+	 * Calculate the number of nodes in those grid elements of a rectangle which 
+	 * are outside of the polygon.
+	 * @return the sum of the node counts, 0 if no polygon is used 
+	 */
+	public long getNodeCountOutsidePolygon(int x, int y, int width, int height) {
+		if (outsideNodeSums == null)
+			return 0;
+		return rectSum(outsideNodeSums, x, y, width, height);
+	}
+
+	/**
+	 * Calculate the number of grid elements in a rectangle which are outside of the polygon.
+	 * @return the number of grid elements, 0 if no polygon is used 
+	 */
+	public int countElemsOutsidePolygon(int x, int y, int width, int height) {
+		if (outsideSums == null)
+			return 0;
+		return outsideSums[pos(x + width, y + height)] - outsideSums[pos(x, y + height)]
+				- outsideSums[pos(x + width, y)] + outsideSums[pos(x, y)];
+	}
+
+	/**
+	 * Calculate a key that identifies a rectangle of grid elements. It is built from the
+	 * positions of the lower left and upper right corner in the prefix sums.
+	 * @return the unique key
+	 */
+	public long getKey(int x, int y, int width, int height) {
+		return (long) pos(x, y) << 32 | pos(x + width, y + height);
+	}
+
 	public boolean isGridElemInPolygon(int x, int y) {
 		if (polygonArea == null || xyOutsidePolygon.isEmpty())
 			return true;
@@ -150,14 +206,6 @@ public class EnhancedDensityMap {
 		return densityMap.getNodeCount();
 	}
 
-	public int[] getMapRow(int mapRow) {
-		return yxMap[mapRow];
-	}
-
-	public int[] getMapCol(int mapCol) {
-		return xyMap[mapCol];
-	}
-
 	public double[] getAspectRatioFactor() {
 		return aspectRatioFactor;
 	}
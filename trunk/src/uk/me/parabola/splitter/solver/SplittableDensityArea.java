@@ -20,21 +20,30 @@ import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.Long2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
 import uk.me.parabola.splitter.Area;
 import uk.me.parabola.splitter.RoundingUtils;
 import uk.me.parabola.splitter.SplitFailedException;
 import uk.me.parabola.splitter.Utils;
+import uk.me.parabola.splitter.tools.Long2LongClockCache;
 
 /**
  * Splits a density map into multiple areas, none of which exceed the desired
@@ -55,6 +64,12 @@ public class SplittableDensityArea {
 	private static final double MAX_OUTSIDE_RATIO = 0.5; 
 	private static final int MIN_TILE_AREA_BAD_CACHE = 100;
 	private static final int MAX_DEPTH_STATS = 10;
+	/** the default maximum number of entries in the cache of bad tiles of a solver */
+	private static final int DEFAULT_CACHE_SIZE = 1_000_000;
+	/** the split positions of tiles up to this recursion depth may be searched in parallel */
+	private static final int MAX_FORK_DEPTH = 4;
+	/** the split positions of tiles with more than this many times max-nodes may be searched in parallel */
+	private static final int FORK_MIN_PARTS = 4;
 	private boolean enableExtraOpt = true; // option ? 
 	
 	private final int startSearchLimit;
@@ -74,7 +89,23 @@ public class SplittableDensityArea {
 	private boolean allowEmptyPart;
 	private int currMapId;
 	private boolean hasEmptyPart;
-	private int solverId;
+	private AtomicInteger solverIds = new AtomicInteger();
+	private int maxThreads = 1;
+	private boolean parallelSearch;
+	private int cacheSize = DEFAULT_CACHE_SIZE;
+	/** true if the time for the split is limited */
+	private boolean hasDeadline;
+	/** the value of {@link System#nanoTime()} when the time budget expires */
+	private long deadline;
+	/** the pool for the parallel search in the solvers, null if the search is sequential */
+	private ForkJoinPool searchPool;
+	/** true if the finished solvers are kept for the warm start of other probes of the num-tiles search */
+	private boolean keepSolvers;
+	private final List<Solver> finishedSolvers = new ArrayList<>();
+	/** finished solvers of a probe with a higher max-nodes value, their caches of bad tiles are valid here */
+	private List<Solver> higherSolvers = Collections.emptyList();
+	/** finished solvers of a probe with a lower max-nodes value, their solutions are valid here */
+	private List<Solver> lowerSolvers = Collections.emptyList();
 
 	public SplittableDensityArea(DensityMap densities, int startSearchLimit, boolean trim) {
 		this.shift = densities.getShift();
@@ -95,6 +126,48 @@ public class SplittableDensityArea {
 		this.maxNodes = maxNodes;
 	}
 
+	/**
+	 * Set the number of threads that may be used. 
+	 * @param maxThreads the number of threads
+	 */
+	public void setMaxThreads(int maxThreads) {
+		this.maxThreads = maxThreads;
+	}
+
+	/**
+	 * Allow the solvers to search the split positions of large tiles in parallel when more than
+	 * two threads may be used. When the search limit is reached, the result can differ from the
+	 * sequential search.
+	 * @param parallelSearch true to allow the parallel search
+	 */
+	public void setParallelSearch(boolean parallelSearch) {
+		this.parallelSearch = parallelSearch;
+	}
+
+	/**
+	 * Set the maximum number of entries in the cache of bad tiles which is used by each solver. 
+	 * When the cache is full, entries which were not used recently are evicted.
+	 * @param cacheSize the number of entries
+	 */
+	public void setCacheSize(int cacheSize) {
+		this.cacheSize = cacheSize;
+	}
+
+	/**
+	 * Limit the time for the split. The budget starts with this call. When it expires, 
+	 * the solvers stop as soon as they have found a solution and the best solution found 
+	 * so far is used.
+	 * @param seconds the budget in seconds, 0 means no limit
+	 */
+	public void setTimeBudget(int seconds) {
+		hasDeadline = seconds > 0;
+		deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+	}
+
+	private boolean isBudgetExpired() {
+		return hasDeadline && System.nanoTime() - deadline >= 0;
+	}
+
 	public boolean hasData() {
 		return allDensities != null && allDensities.getNodeCount() > 0;
 	}
@@ -112,10 +185,19 @@ public class SplittableDensityArea {
 	 * @return solution (can be empty if none was found with the given criteria)
 	 */
 	private Solution split() {
-		Solution fullSolution = new Solution(maxNodes);
 		if (allDensities == null || allDensities.getNodeCount() == 0)
-			return fullSolution;
+			return new Solution(maxNodes);
 		prepare(null);
+		return splitPrepared();
+	}
+
+	/**
+	 * Calculate a solution with the density info that was already prepared without polygon.
+	 * 
+	 * @return solution (can be empty if none was found with the given criteria)
+	 */
+	private Solution splitPrepared() {
+		Solution fullSolution = new Solution(maxNodes);
 		Tile startTile = new Tile(extraDensityInfo);
 		List<Tile> startTiles = new ArrayList<>();
 		if (trimShape || allDensities.getBounds().getWidth() >= 0x1000000) {
@@ -279,60 +361,264 @@ public class SplittableDensityArea {
 	}
 
 	/**
-	 * Split into a given number of tiles.
+	 * Split into a given number of tiles. Several max-nodes values are tried in parallel
+	 * when enough threads are available, each one by a probe which works on a copy of this
+	 * area. The results of finished probes are used as warm start for the following probes.
 	 * 
 	 * @param wantedTiles
 	 * @return list of areas
 	 */
 	public List<Area> split(int wantedTiles) {
 		this.stopNumber = wantedTiles;
-		long currMaxNodes = (long) (this.allDensities.getNodeCount() / (wantedTiles * 0.95));
-		class Pair {
-			long myMaxNodes;
-			int numTiles;
-
-			Pair(long maxNodes, int numTiles) {
-				this.myMaxNodes = maxNodes;
-				this.numTiles = numTiles;
-			}
-		}
-		Pair bestBelow = null;
-		Pair bestAbove = null;
 		beQuiet = true;
-		while (true) {
-			this.setMaxNodes(currMaxNodes);
-			System.out.println("Trying a max-nodes value of " + currMaxNodes + " to split "
-					+ allDensities.getNodeCount() + " nodes into " + wantedTiles + " areas");
-			Solution sol = split();
-			
-			if (sol.isEmpty() || sol.size() == wantedTiles) {
+		if (!hasData()) {
+			beQuiet = false;
+			Solution sol = new Solution(maxNodes);
+			printFinalSplitMsg(sol);
+			return getAreas(sol, null);
+		}
+		prepare(null);
+		final int numProbes = Math.max(1, maxThreads / 2);
+		ExecutorService probePool = numProbes > 1 ? Executors.newFixedThreadPool(numProbes) : null;
+		try {
+			Probe chosen = searchNumTiles(wantedTiles, numProbes, probePool);
+			chosen.area.finishedSolvers.clear();
+			maxNodes = chosen.maxNodes;
+			if (chosen.sol.isEmpty() || chosen.sol.size() == wantedTiles)
 				beQuiet = false;
-				printFinalSplitMsg(sol);
-				return getAreas(sol, null);
+			printFinalSplitMsg(chosen.sol);
+			return getAreas(chosen.sol, null);
+		} finally {
+			if (probePool != null)
+				probePool.shutdown();
+		}
+	}
+
+	/**
+	 * A try to split into the wanted number of tiles with a given max-nodes value.
+	 */
+	private class Probe {
+		final long maxNodes;
+		final SplittableDensityArea area;
+		Solution sol;
+
+		Probe(long maxNodes, int threads) {
+			this.maxNodes = maxNodes;
+			area = new SplittableDensityArea(allDensities, startSearchLimit, trimShape);
+			area.extraDensityInfo = extraDensityInfo;
+			area.maxNodes = maxNodes;
+			area.stopNumber = stopNumber;
+			area.beQuiet = true;
+			area.trimTiles = trimTiles;
+			area.allowEmptyPart = allowEmptyPart;
+			area.solverIds = solverIds;
+			area.maxThreads = threads;
+			area.parallelSearch = parallelSearch;
+			area.cacheSize = cacheSize;
+			area.hasDeadline = hasDeadline;
+			area.deadline = deadline;
+			area.keepSolvers = true;
+		}
+
+		int numTiles() {
+			return sol.size();
+		}
+	}
+
+	/**
+	 * Search a max-nodes value that gives the wanted number of tiles. Without a bracket the next values 
+	 * are estimated from the closest result, else the bracket is divided into equal parts. The search
+	 * stops when a round doesn't make the bracket smaller or when a bisection would have found the value.
+	 * 
+	 * @param wantedTiles the wanted number of tiles
+	 * @param numProbes the number of max-nodes values that are tried at the same time
+	 * @param probePool the thread pool for the probes, null if only one probe is used 
+	 * @return the probe with the wanted number of tiles or the closest one 
+	 */
+	private Probe searchNumTiles(int wantedTiles, int numProbes, ExecutorService probePool) {
+		final long numNodes = allDensities.getNodeCount();
+		LongOpenHashSet tried = new LongOpenHashSet();
+		List<Probe> donors = new ArrayList<>();
+		Probe bestBelow = null;
+		Probe bestAbove = null;
+		Probe closest = null;
+		// the bracket of the previous round and the remaining number of rounds with a bracket 
+		long lastLo = -1;
+		long lastHi = -1;
+		int bracketRounds = -1;
+		LongArrayList values = new LongArrayList();
+		values.add((long) (numNodes / (wantedTiles * 0.95)));
+		while (true) {
+			List<Probe> probes = new ArrayList<>();
+			for (long value : values) {
+				System.out.println("Trying a max-nodes value of " + value + " to split " + numNodes + " nodes into "
+						+ wantedTiles + " areas");
+				tried.add(value);
+				Probe probe = new Probe(value, Math.max(1, maxThreads / numProbes));
+				// the caches of bad tiles are valid for lower max-nodes values, the solutions for higher values
+				Probe higher = findDonor(donors, value, true);
+				Probe lower = findDonor(donors, value, false);
+				if (higher != null)
+					probe.area.higherSolvers = higher.area.finishedSolvers;
+				if (lower != null)
+					probe.area.lowerSolvers = lower.area.finishedSolvers;
+				probes.add(probe);
+			}
+			runProbes(probes, probePool);
+
+			Probe exact = null;
+			Probe roundClosest = null;
+			for (Probe probe : probes) {
+				if (probe.area.allowEmptyPart)
+					allowEmptyPart = true;
+				if (probe.sol.isEmpty()) {
+					probe.area.finishedSolvers.clear();
+					continue;
+				}
+				if (probe.numTiles() == wantedTiles) {
+					if (exact == null || exact.sol.compareTo(probe.sol) > 0)
+						exact = probe;
+					continue;
+				}
+				donors.add(probe);
+				if (isCloser(probe, roundClosest, wantedTiles))
+					roundClosest = probe;
+				if (isCloser(probe, closest, wantedTiles))
+					closest = probe;
+				// with the same number of tiles the value that gives the smaller bracket is used 
+				if (probe.numTiles() > wantedTiles) {
+					if (bestAbove == null || bestAbove.numTiles() > probe.numTiles()
+							|| (bestAbove.numTiles() == probe.numTiles() && probe.maxNodes > bestAbove.maxNodes))
+						bestAbove = probe;
+				} else {
+					if (bestBelow == null || bestBelow.numTiles() < probe.numTiles()
+							|| (bestBelow.numTiles() == probe.numTiles() && probe.maxNodes < bestBelow.maxNodes))
+						bestBelow = probe;
+				}
 			}
+			if (exact != null)
+				return exact;
+			if (roundClosest == null) 
+				return probes.get(0); // no solution
 			
-			Pair pair = new Pair(currMaxNodes, sol.size());
-			if (sol.size() > wantedTiles) {
-				if (bestAbove == null || bestAbove.numTiles > pair.numTiles
-						|| (bestAbove.numTiles == pair.numTiles && pair.myMaxNodes < bestAbove.myMaxNodes))
-					bestAbove = pair;
+			values.clear();
+			// the first probe uses the value that a single probe would use, the others are placed around it 
+			if (bestBelow == null || bestAbove == null) {
+				// estimate from the closest result of the last round, the other probes differ by about one tile
+				long center = Math.min(Math.round((double) roundClosest.maxNodes * roundClosest.numTiles() / wantedTiles),
+						numNodes - 1);
+				long step = Math.max(1, center / wantedTiles);
+				for (int i = 0; i < numProbes; i++) {
+					long value = center + (i + 1) / 2 * (i % 2 == 0 ? step : -step);
+					if (value > 0 && value < numNodes)
+						addUntried(value, tried, values);
+				}
 			} else {
-				if (bestBelow == null || bestBelow.numTiles < pair.numTiles
-						|| (bestBelow.numTiles == pair.numTiles && pair.myMaxNodes > bestBelow.myMaxNodes))
-					bestBelow = pair;
+				long lo = Math.min(bestAbove.maxNodes, bestBelow.maxNodes);
+				long hi = Math.max(bestAbove.maxNodes, bestBelow.maxNodes);
+				if (bracketRounds < 0)
+					bracketRounds = Long.SIZE - Long.numberOfLeadingZeros(hi - lo); // enough for a bisection
+				// a result inside the bracket that is not closer than its ends doesn't help, stop then 
+				boolean shrunk = lo != lastLo || hi != lastHi;
+				lastLo = lo;
+				lastHi = hi;
+				if (shrunk && bracketRounds-- > 0) {
+					long center = (lo + hi) / 2;
+					long step = Math.max(1, (hi - lo) / (numProbes + 1));
+					for (int i = 0; i < numProbes; i++) {
+						long target = center + (i + 1) / 2 * (i % 2 == 0 ? step : -step);
+						// use the nearest value that was not yet tried
+						for (long d = 0; d < hi - lo; d++) {
+							if (target - d > lo && target - d < hi && addUntried(target - d, tried, values)
+									|| target + d > lo && target + d < hi && addUntried(target + d, tried, values))
+								break;
+						}
+					}
+				}
+			}
+			// keep only the results which are the nearest ones for the next values 
+			List<Probe> nextDonors = new ArrayList<>();
+			for (long value : values) {
+				for (boolean higher : new boolean[] { true, false }) {
+					Probe donor = findDonor(donors, value, higher);
+					if (donor != null && !nextDonors.contains(donor))
+						nextDonors.add(donor);
+				}
 			}
-			long testMaxNodes;
-			if (bestBelow == null || bestAbove == null)
-				testMaxNodes = Math.min(Math.round((double) currMaxNodes * sol.size() / wantedTiles),
-						this.allDensities.getNodeCount() - 1);
-			else
-				testMaxNodes = (bestBelow.myMaxNodes + bestAbove.myMaxNodes) / 2;
-			if (testMaxNodes == currMaxNodes) {
+			for (Probe donor : donors) {
+				if (!nextDonors.contains(donor))
+					donor.area.finishedSolvers.clear();
+			}
+			donors = nextDonors;
+			if (values.isEmpty()) {
 				System.err.println("Cannot find a good split with exactly " + wantedTiles + " areas");
-				printFinalSplitMsg(sol);
-				return getAreas(sol, null);
+				return closest;
+			}
+			if (isBudgetExpired()) {
+				System.err.println("Time budget expired, cannot find a split with exactly " + wantedTiles + " areas");
+				return closest;
+			}
+		}
+	}
+
+	/**
+	 * @param donors finished probes
+	 * @param value a max-nodes value
+	 * @param higher true: search the probe with the next higher max-nodes value, else the next lower one
+	 * @return the probe or null
+	 */
+	private static Probe findDonor(List<Probe> donors, long value, boolean higher) {
+		Probe res = null;
+		for (Probe donor : donors) {
+			if (higher ? donor.maxNodes > value && (res == null || donor.maxNodes < res.maxNodes)
+					: donor.maxNodes < value && (res == null || donor.maxNodes > res.maxNodes))
+				res = donor;
+		}
+		return res;
+	}
+
+	private static boolean addUntried(long value, LongOpenHashSet tried, LongArrayList values) {
+		if (tried.contains(value) || values.contains(value))
+			return false;
+		values.add(value);
+		return true;
+	}
+
+	/**
+	 * @return true if the number of tiles of the probe is closer to the wanted number than that of the other probe, 
+	 * with the same distance the probe with less tiles is preferred 
+	 */
+	private static boolean isCloser(Probe probe, Probe other, int wantedTiles) {
+		if (other == null)
+			return true;
+		int d = Integer.compare(Math.abs(probe.numTiles() - wantedTiles), Math.abs(other.numTiles() - wantedTiles));
+		return d < 0 || d == 0 && probe.numTiles() < other.numTiles();
+	}
+
+	/**
+	 * Run the probes, in parallel if a thread pool is given.
+	 * @param probes the probes
+	 * @param probePool the thread pool or null
+	 */
+	private static void runProbes(List<Probe> probes, ExecutorService probePool) {
+		if (probePool == null) {
+			for (Probe probe : probes) {
+				probe.sol = probe.area.splitPrepared();
+			}
+			return;
+		}
+		List<CompletableFuture<Solution>> futures = new ArrayList<>();
+		for (Probe probe : probes) {
+			futures.add(CompletableFuture.supplyAsync(probe.area::splitPrepared, probePool));
+		}
+		for (int i = 0; i < probes.size(); i++) {
+			try {
+				probes.get(i).sol = futures.get(i).join();
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException)
+					throw (RuntimeException) e.getCause();
+				throw new SplitFailedException("parallel split crashed", e.getCause());
 			}
-			currMaxNodes = testMaxNodes;
 		}
 	}
 
@@ -462,6 +748,11 @@ public class SplittableDensityArea {
 			SplittableDensityArea splittableArea = new SplittableDensityArea(allDensities.subset(shapeBounds),
 					startSearchLimit, trimShape);
 			splittableArea.setMaxNodes(maxNodes);
+			splittableArea.setMaxThreads(maxThreads);
+			splittableArea.setParallelSearch(parallelSearch);
+			splittableArea.setCacheSize(cacheSize);
+			splittableArea.hasDeadline = hasDeadline;
+			splittableArea.deadline = deadline;
 			if (!splittableArea.hasData()) {
 				System.out.println(
 						"Warning: a part of the bounding polygon would be empty and is ignored:" + shapeBounds);
@@ -553,7 +844,16 @@ public class SplittableDensityArea {
 	private Solution solveRectangularArea(Tile startTile) {
 		int bestPossible = stopNumber > 0 ? stopNumber : startTile.getMinParts(maxNodes);
 		System.out.println("Splitting tile " + startTile + ", goal is to get near " + bestPossible + " tiles");
-		return solveRectangularAreaParallel(startTile, 0);
+		if (!parallelSearch || maxThreads <= 2)
+			return solveRectangularAreaParallel(startTile, 0);
+		// two solvers are typically running, each one uses the pool for the parallel search 
+		searchPool = new ForkJoinPool(maxThreads);
+		try {
+			return solveRectangularAreaParallel(startTile, 0);
+		} finally {
+			searchPool.shutdown();
+			searchPool = null;
+		}
 	}
 	
 	/**
@@ -584,23 +884,23 @@ public class SplittableDensityArea {
 			int areaSize = t.width * t.height;
 			boolean useSearchAll = areaSize < 32_000 || t.getCount() < 16 * maxNodes;
 			boolean anyOutside = t.countElemsOutside() > 0;
-			Solver solver = new Solver(++solverId, useSearchAll, maxNodes, t, shift, 0, trimTiles, startSearchLimit, allowEmptyPart);
-			solver.maxAspectRatio = getStartRatio(startTile);
+			int id = solverIds.incrementAndGet();
+			Solver solver = new Solver(id, useSearchAll, maxNodes, t, shift, 0, trimTiles, startSearchLimit, allowEmptyPart);
+			initSolver(solver, startTile);
 			
 			System.out.println("Using " + solver.toString() + " on " + Utils.format(areaSize) + " grid elements"
 					+ (trimTiles && anyOutside ? ", trim needed" : ", trim not needed"));
 			
 			Rectangle r = t.getRealBBox();
 			Area area = new Area(r.y, r.x, (int) r.getMaxY(), (int) r.getMaxX());
-			area.setMapId(solverId);
+			area.setMapId(id);
 			initialAreas.add(area);
-//			if (depth > 0 ||solver.name.startsWith("S19 "))
 			solvers.add(solver);
 		}
 
 		solvers.parallelStream().forEach(Solver::solve);
 		List<Solver> solvers2 = new ArrayList<>();
-		if (enableExtraOpt) {
+		if (enableExtraOpt && !isBudgetExpired()) {
 			for (int i = 0; i < solvers.size(); i++) {
 				Solver solver = solvers.get(i);
 				Solution s = solver.bestSolution;
@@ -610,9 +910,9 @@ public class SplittableDensityArea {
 					continue;
 				if (s.size() > 1 && (!s.isNice() || s.size() >= goal + 3)) {
 					System.out.println("trying to improve poor solution from " + solver);
-					Solver sv2 = new Solver(++solverId, !solver.searchAll, maxNodes, solver.startTile, shift, stopNumber, solver.trimTiles, startSearchLimit, allowEmptyPart);
+					Solver sv2 = new Solver(solverIds.incrementAndGet(), !solver.searchAll, maxNodes, solver.startTile, shift, stopNumber, solver.trimTiles, startSearchLimit, allowEmptyPart);
 					System.out.println("Starting " + sv2.toString());
-					sv2.maxAspectRatio = getStartRatio(startTile);
+					initSolver(sv2, startTile);
 					solvers2.add(sv2);
 				}
 			}
@@ -650,77 +950,19 @@ public class SplittableDensityArea {
 			return new Solution(maxNodes);
 		
 		List<Solver> solvers = new ArrayList<>();
-		List<Future<?>> futures = new ArrayList<>();
 		int numAlgos = 2;
-		ExecutorService threadPool = Executors.newFixedThreadPool(numAlgos);
-		
 		for (int i = 0; i < numAlgos; i++) {
-			Solver solver = new Solver(++solverId, i == 1, maxNodes, startTile, shift, stopNumber, trimTiles, startSearchLimit, allowEmptyPart);
+			Solver solver = new Solver(solverIds.incrementAndGet(), i == 1, maxNodes, startTile, shift, stopNumber, trimTiles, startSearchLimit, allowEmptyPart);
 			if (solver.searchAll && startTile.getCount() > 300 * maxNodes)
 				continue; // too complex for FULL
 			if (!solver.searchAll && stopNumber == 0 && startTile.getCount() < 10 * maxNodes)
 				continue; // too simple for SOME
-			solver.maxAspectRatio = getStartRatio(startTile);
+			initSolver(solver, startTile);
 			solvers.add(solver);
-			futures.add(threadPool.submit(solver::solve));
-		}
-		
-		threadPool.shutdown();
-		
-		Instant t1 = null;
-		final double n75 = 0.75 * maxNodes;
-		final double n85 = 0.85 * maxNodes;
-		while (!threadPool.isTerminated()) {
-			for (int i = 0; i < solvers.size(); i++) {
-				Future<?> future = futures.get(i);
-				if (future.isDone()) {
-					try {
-						future.get();
-					} catch (InterruptedException | ExecutionException e) {
-						throw new SplitFailedException("parallel solver crashed", e.getCause());
-					}
-					Solution sol = solvers.get(i).bestSolution;
-					if (sol.isNice()) {
-						if (t1 == null)
-							t1 = Instant.now();
-						long dt = Duration.between(t1, Instant.now()).getSeconds();
-						boolean stop = false;
-						if (sol.getWorstMinNodes() >= n85 && dt > 10) {
-							stop = true; // all tiles have at least 85% of max-nodes
-						} else {
-							int num75 = 0;
-							for (Tile tile : sol.getTiles()) {
-								if (tile.getCount() < n75)
-									num75++;
-							}
-							double below75 = 100.0 * num75 / sol.size();
-							if (below75 > 5 && dt > 30) {
-								// +5 percent of tiles are less the 75 percent but we waited +30 seconds
-								stop = true;
-							}
-						}
-						if (stop) {
-							// stop the other solver
-							solvers.forEach(Solver::stop);
-						}
-					}
-				}
-			}
-			try {
-				Thread.sleep(500);
-			} catch (InterruptedException e) {
-				e.printStackTrace();
-			}
 		}
-		// call get() on each future to recognise possible exceptions 
-		futures.forEach(f -> {
-			try {
-				f.get();
-			} catch (InterruptedException | ExecutionException e) {
-				Thread.currentThread().interrupt();
-				throw new SplitFailedException("parallel solver crashed", e.getCause());
-			}
-		});
+		runSolvers(solvers);
+		if (keepSolvers)
+			finishedSolvers.addAll(solvers);
 		// sort by number of tiles so that the smaller number comes first
 		// can't use compareTo here as it prefers the higher worstMinNodes value
 		solvers.sort((o1, o2) -> {
@@ -758,6 +1000,107 @@ public class SplittableDensityArea {
 		return best.bestSolution;
 	}
 
+	/**
+	 * Run the solvers in parallel and wait until they have finished or were stopped.
+	 * @param solvers the solvers
+	 * @throws SplitFailedException if a solver crashed or the thread was interrupted
+	 */
+	void runSolvers(List<Solver> solvers) {
+		List<CompletableFuture<Void>> futures = new ArrayList<>();
+		BlockingQueue<Integer> finished = new LinkedBlockingQueue<>();
+		ExecutorService threadPool = Executors.newFixedThreadPool(solvers.size());
+		for (int i = 0; i < solvers.size(); i++) {
+			final int pos = i;
+			futures.add(CompletableFuture.runAsync(solvers.get(i)::solve, threadPool).whenComplete((r, e) -> finished.add(pos)));
+		}
+		threadPool.shutdown();
+		try {
+			superviseSolvers(solvers, futures, finished);
+		} catch (InterruptedException e) {
+			solvers.forEach(Solver::stop);
+			Thread.currentThread().interrupt();
+			throw new SplitFailedException("split was interrupted", e);
+		}
+	}
+
+	/**
+	 * Wait until all solvers have finished. When a solver finishes with a nice solution, the other
+	 * solvers are stopped after a while if the solution is good enough.
+	 * @param solvers the running solvers
+	 * @param futures the futures of the solvers
+	 * @param finished receives the index of each solver when it finishes
+	 * @throws InterruptedException if the thread was interrupted while waiting
+	 */
+	private void superviseSolvers(List<Solver> solvers, List<CompletableFuture<Void>> futures,
+			BlockingQueue<Integer> finished) throws InterruptedException {
+		final double n75 = 0.75 * maxNodes;
+		final double n85 = 0.85 * maxNodes;
+		Instant t1 = null; // when the first nice solution was found 
+		Instant stopTime = null; // when the other solvers should be stopped
+		boolean stopped = false;
+		for (int running = solvers.size(); running > 0;) {
+			Integer pos;
+			if (stopTime == null || stopped) {
+				pos = finished.take();
+			} else {
+				pos = finished.poll(Math.max(0, Duration.between(Instant.now(), stopTime).toMillis()), TimeUnit.MILLISECONDS);
+				if (pos == null) {
+					// stop the other solver
+					solvers.forEach(Solver::stop);
+					stopped = true;
+					continue;
+				}
+			}
+			running--;
+			try {
+				futures.get(pos).join();
+			} catch (CompletionException | CancellationException e) {
+				solvers.forEach(Solver::stop);
+				throw new SplitFailedException("parallel solver crashed", e.getCause());
+			}
+			Solution sol = solvers.get(pos).bestSolution;
+			if (!sol.isNice())
+				continue;
+			if (t1 == null)
+				t1 = Instant.now();
+			Instant t = null;
+			if (sol.getWorstMinNodes() >= n85) {
+				t = t1.plusSeconds(10); // all tiles have at least 85% of max-nodes
+			} else {
+				int num75 = 0;
+				for (Tile tile : sol.getTiles()) {
+					if (tile.getCount() < n75)
+						num75++;
+				}
+				double below75 = 100.0 * num75 / sol.size();
+				if (below75 > 5) {
+					// +5 percent of tiles are less the 75 percent, wait +30 seconds
+					t = t1.plusSeconds(30);
+				}
+			}
+			if (t != null && (stopTime == null || t.isBefore(stopTime)))
+				stopTime = t;
+		}
+	}
+
+	private void initSolver(Solver solver, Tile startTile) {
+		solver.maxAspectRatio = getStartRatio(startTile);
+		solver.searchPool = searchPool;
+		solver.cacheSize = cacheSize;
+		solver.hasDeadline = hasDeadline;
+		solver.deadline = deadline;
+		solver.keepCache = keepSolvers;
+		for (Solver done : higherSolvers) {
+			// only the full search doesn't depend on max-nodes, a stopped solver may have missed solutions 
+			if (solver.searchAll && done.searchAll && !done.isStopped() && done.startTile.equals(solver.startTile))
+				solver.warmBad = done.knownBad;
+		}
+		for (Solver done : lowerSolvers) {
+			if (done.startTile.equals(solver.startTile) && done.bestSolution.isSmallerOrBetter(solver.warmSolution))
+				solver.warmSolution = done.bestSolution;
+		}
+	}
+
 	private double getStartRatio(Tile startTile) {
 		if (extraDensityInfo.getNodeCount() / maxNodes < 4) {
 			return 32;
@@ -849,21 +1192,25 @@ public class SplittableDensityArea {
 
 	}
 
-	private static class Solver {
+	static class Solver {
 		private final long myMaxNodes;
 		private boolean hasEmptyPart;
-		private double maxAspectRatio;
+		double maxAspectRatio;
 		private int countBad;
-		private Long minNodes; 
+		private long minNodes; 
 		private int searchLimit;
-		private LinkedHashMap<Tile, Integer> incomplete;
-		private Map<Tile, Long> knownBad = new HashMap<>(50_000);
+		/** key of tile and number of tested split positions for the tiles where the search limit was reached */
+		private Long2IntOpenHashMap incomplete;
+		/** key of tile and the lowest min-nodes value for which no split was found */ 
+		private Long2LongClockCache knownBad;
+		/** the caches of bad tiles of the solvers that forked this copy, they don't change while the copy runs */
+		private Long2LongClockCache[] inheritedBad = {};
 		static final  int MAX_SEARCH_LIMIT = 5_000_000;
 		final String name;
 		private boolean searchAll;
-		private Solution bestSolution;
+		Solution bestSolution;
 		private Solution smallestSolution;
-		private boolean stopped;
+		private volatile boolean stopped;
 		private long localOptMinNodes;
 		private final Tile startTile;
 		private int bestPossible;
@@ -877,7 +1224,24 @@ public class SplittableDensityArea {
 		private final boolean trimTiles;
 		private final int startSearchLimit;
 		private final boolean allowEmptyPart;
-		
+		/** the pool for the parallel search or null */
+		ForkJoinPool searchPool;
+		/** the maximum number of entries in the cache of bad tiles */
+		private int cacheSize = DEFAULT_CACHE_SIZE;
+		/** true if the solver should stop at the deadline */
+		boolean hasDeadline;
+		/** the value of {@link System#nanoTime()} when the time budget expires */
+		long deadline;
+		/** true if a solution was found, the solver doesn't stop at the deadline before that */
+		private volatile boolean hasSolution;
+		/** true if the cache of bad tiles is kept when the solver has finished */
+		private boolean keepCache;
+		/** the cache of bad tiles of a full search with a higher max-nodes value or null */
+		private Long2LongClockCache warmBad;
+		/** a solution for the start tile that was found with a lower max-nodes value, used when no other solution is found */
+		private Solution warmSolution;
+		/** the solver that created this copy or null */
+		private final Solver forkedFrom;
 
 		public Solver(int id, boolean searchAll, long maxNodes, Tile startTile, int shift, int stopNumber,
 				boolean trimTiles, int startSearchLimit, boolean allowEmptyPart) {
@@ -888,11 +1252,53 @@ public class SplittableDensityArea {
 			this.trimTiles = trimTiles;
 			this.startSearchLimit = startSearchLimit;
 			this.allowEmptyPart = allowEmptyPart;
-			incomplete = new LinkedHashMap<>();
+			incomplete = createIncompleteMap();
 			bestSolution = new Solution(myMaxNodes);
 			name = "S" + id + " " + (searchAll ? "FULL" : "SOME");
 			maxTileHeight = Utils.toMapUnit(MAX_LAT_DEGREES) / (1 << shift);
 			maxTileWidth = Utils.toMapUnit(MAX_LON_DEGREES) / (1 << shift);
+			forkedFrom = null;
+		}
+
+		/**
+		 * Create a copy of a solver that searches a part of the tile in another thread.
+		 * The state of the search is copied. The copy reads the caches of bad tiles of the
+		 * solver and writes to its own cache, so the result doesn't depend on the timing
+		 * of the other copies.
+		 * @param solver the solver to copy
+		 */
+		private Solver(Solver solver) {
+			forkedFrom = solver;
+			searchAll = solver.searchAll;
+			myMaxNodes = solver.myMaxNodes;
+			startTile = solver.startTile;
+			stopNumber = solver.stopNumber;
+			trimTiles = solver.trimTiles;
+			startSearchLimit = solver.startSearchLimit;
+			allowEmptyPart = solver.allowEmptyPart;
+			name = solver.name;
+			maxTileHeight = solver.maxTileHeight;
+			maxTileWidth = solver.maxTileWidth;
+			searchPool = solver.searchPool;
+			cacheSize = solver.cacheSize;
+			knownBad = new Long2LongClockCache(cacheSize, 1);
+			knownBad.defaultReturnValue(Long.MAX_VALUE);
+			inheritedBad = Arrays.copyOf(solver.inheritedBad, solver.inheritedBad.length + 1);
+			inheritedBad[solver.inheritedBad.length] = solver.knownBad;
+			warmBad = solver.warmBad;
+			maxAspectRatio = solver.maxAspectRatio;
+			minNodes = solver.minNodes;
+			searchLimit = solver.searchLimit;
+			countBad = solver.countBad;
+			localOptMinNodes = solver.localOptMinNodes;
+			incomplete = createIncompleteMap();
+			lastGoodCounts = new int[MAX_DEPTH_STATS];
+		}
+
+		private static Long2IntOpenHashMap createIncompleteMap() {
+			Long2IntOpenHashMap map = new Long2IntOpenHashMap();
+			map.defaultReturnValue(-1);
+			return map;
 		}
 
 		/**
@@ -904,7 +1310,7 @@ public class SplittableDensityArea {
 		 * @return a solution instance or null
 		 */
 		private Solution findSolution(int depth, final Tile tile, Tile parent, TileMetaInfo smiParent) {
-			if (stopped)
+			if (isStopped())
 				return null;
 			boolean addAndReturn = false;
 			if (tile.getCount() == 0) {
@@ -951,18 +1357,15 @@ public class SplittableDensityArea {
 			}
 			
 			// we have to split the tile
-			Integer alreadyDone = null;
+			int alreadyDone = -1;
 			if (countBad == 0 && !incomplete.isEmpty()) {
-				alreadyDone = incomplete.remove(tile);
-				if (alreadyDone == null)
+				alreadyDone = incomplete.remove(tile.getKey());
+				if (alreadyDone < 0)
 					incomplete.clear(); // rest is not useful
 			}
 			final boolean isCacheCandidate = depth > 0 && tile.width * tile.height > MIN_TILE_AREA_BAD_CACHE;
-			if (alreadyDone == null && isCacheCandidate) {
-				Long x = knownBad.get(tile);
-				if (x != null && x <= minNodes) {
-					return null;
-				}
+			if (alreadyDone < 0 && isCacheCandidate && isKnownBad(tile.getKey())) {
+				return null;
 			}
 
 			// copy the existing density info from parent
@@ -974,11 +1377,15 @@ public class SplittableDensityArea {
 			TestGenerator generator = new TestGenerator(searchAll, tile, smi);
 			int countDone = 0;
 			Solution bestSol = null;
+			final boolean fork = searchPool != null && depth < MAX_FORK_DEPTH && alreadyDone < 0
+					&& incomplete.isEmpty() && tile.getCount() > FORK_MIN_PARTS * myMaxNodes;
+			if (fork)
+				bestSol = findSolutionParallel(depth, tile, generator, smi);
 
-			while (generator.hasNext()) {
+			while (!fork && generator.hasNext()) {
 				int splitPos = generator.next();
 				countDone++;
-				if (alreadyDone != null && countDone <= alreadyDone.intValue()) {
+				if (countDone <= alreadyDone) {
 					continue;
 				}
 				// create the two parts of the tile
@@ -987,56 +1394,27 @@ public class SplittableDensityArea {
 				if (!ok)
 					continue;
 
-				Tile[] parts = smi.getParts();
-				if (parts[0].getCount() > parts[1].getCount()) {
-					// first try the less populated part
-					Tile help = parts[0];
-					parts[0] = parts[1];
-					parts[1] = help;
-				}
-				Solution[] sols = new Solution[2];
-				int countOK = 0;
-				for (int i = 0; i < 2; i++) {
-					if (trimTiles && smi.getNumOutside() > 0) {
-						parts[i] = parts[i].trim();
-					}
-					// depth first recursive search
-					if (incomplete.isEmpty() || incomplete.containsKey(parts[i])) {
-						sols[i] = findSolution(depth + 1, parts[i], tile, smi);
-						if (sols[i] == null) {
-							countBad++;
-							break;
-						}
-						countOK++;
-					}
-				}
-				if (countOK == 2) {
-					Solution sol = sols[0];
-					sol.merge(sols[1]);
+				Solution sol = solveParts(depth, tile, smi);
+				if (sol != null) {
 					if (bestSol == null || bestSol.compareTo(sol) > 0)
 						bestSol = sol;
 					if (depth > 0 || tile.getCount() > 2 * myMaxNodes)
 						break; // we found a valid split
 				} else if (countBad >= searchLimit) {
-					if (DEBUG)
-						System.out.println(name + ": limit reached " + depth + " min-nodes " + minNodes);
-					if (depth < MAX_DEPTH_STATS)
-						lastGoodCounts[depth] = -1;
-					incomplete.put(tile, countDone - 1);
+					limitReached(depth, tile, countDone);
 					break;
 				}
 			}
 
-			if (depth < MAX_DEPTH_STATS && countBad < searchLimit) {
+			if (!fork && depth < MAX_DEPTH_STATS && countBad < searchLimit) {
 				lastGoodCounts[depth] = countDone;
 			}
 
 			smi.propagateToParent(smiParent, tile, parent);
 
-			if (bestSol == null && countBad < searchLimit && isCacheCandidate) {
-				Long x = knownBad.get(tile);
-				if (x == null || x > minNodes)
-					knownBad.put(tile, minNodes);
+			// a stopped search returns null for tiles which were not searched
+			if (bestSol == null && countBad < searchLimit && isCacheCandidate && !isStopped()) {
+				knownBad.putMin(tile.getKey(), minNodes);
 			}
 			
 			// check if we should perform a local optimisation
@@ -1074,6 +1452,180 @@ public class SplittableDensityArea {
 			return bestSol;
 		}
 
+		/**
+		 * @param key the key of a tile
+		 * @return true if one of the caches says that no split of the tile was found with the current min-nodes value
+		 */
+		private boolean isKnownBad(long key) {
+			if (knownBad.get(key) <= minNodes)
+				return true;
+			for (Long2LongClockCache cache : inheritedBad) {
+				if (cache.get(key) <= minNodes)
+					return true;
+			}
+			return warmBad != null && warmBad.get(key) <= minNodes;
+		}
+
+		/**
+		 * Search solutions for the two parts of a split tile. 
+		 * @param depth the recursion depth of the tile
+		 * @param tile the split tile 
+		 * @param smi meta info of the tile, contains the two parts
+		 * @return the merged solution or null if no solution was found for one of the parts
+		 */
+		private Solution solveParts(int depth, Tile tile, TileMetaInfo smi) {
+			Tile[] parts = smi.getParts();
+			if (parts[0].getCount() > parts[1].getCount()) {
+				// first try the less populated part
+				Tile help = parts[0];
+				parts[0] = parts[1];
+				parts[1] = help;
+			}
+			Solution[] sols = new Solution[2];
+			int countOK = 0;
+			for (int i = 0; i < 2; i++) {
+				if (trimTiles && smi.getNumOutside() > 0) {
+					parts[i] = parts[i].trim();
+				}
+				// depth first recursive search
+				if (incomplete.isEmpty() || incomplete.containsKey(parts[i].getKey())) {
+					sols[i] = findSolution(depth + 1, parts[i], tile, smi);
+					if (sols[i] == null) {
+						countBad++;
+						break;
+					}
+					countOK++;
+				}
+			}
+			if (countOK != 2)
+				return null;
+			Solution sol = sols[0];
+			sol.merge(sols[1]);
+			return sol;
+		}
+
+		private void limitReached(int depth, Tile tile, int countDone) {
+			if (DEBUG)
+				System.out.println(name + ": limit reached " + depth + " min-nodes " + minNodes);
+			if (depth < MAX_DEPTH_STATS)
+				lastGoodCounts[depth] = -1;
+			incomplete.put(tile.getKey(), countDone - 1);
+		}
+
+		/**
+		 * Try the split positions of a large tile in parallel. Each position is tried by a
+		 * {@link SplitTask} with its own copy of the solver. The results are used in the order
+		 * of the generator with the same rules as in the sequential search, tasks for the
+		 * following positions are started in advance and stopped when they are not needed.
+		 * The caches of bad tiles of the used tasks are added to the cache of this solver 
+		 * in the same order. A task doesn't see the tiles which were found by the tasks for the
+		 * previous positions, and each copy counts its bad tests separately, so the result may
+		 * differ from the sequential search when the search limit is reached, but it doesn't 
+		 * depend on the timing of the tasks.
+		 * @param depth the recursion depth of the tile
+		 * @param tile the tile to split
+		 * @param generator the generator for the split positions
+		 * @param smi meta info of the tile
+		 * @return the best solution or null
+		 */
+		private Solution findSolutionParallel(int depth, Tile tile, TestGenerator generator, TileMetaInfo smi) {
+			if (ForkJoinTask.getPool() != searchPool)
+				return searchPool.invoke(ForkJoinTask.adapt(() -> findSolutionParallel(depth, tile, generator, smi)));
+			// collect the usable split positions 
+			IntArrayList axes = new IntArrayList();
+			IntArrayList positions = new IntArrayList();
+			IntArrayList counts = new IntArrayList();
+			int countDone = 0;
+			while (generator.hasNext()) {
+				int splitPos = generator.next();
+				countDone++;
+				int axis = generator.getAxis();
+				if (axis == AXIS_HOR ? tile.splitHoriz(splitPos, smi) : tile.splitVert(splitPos, smi)) {
+					axes.add(axis);
+					positions.add(splitPos);
+					counts.add(countDone);
+				}
+			}
+			final int num = positions.size();
+			final int window = searchPool.getParallelism();
+			SplitTask[] tasks = new SplitTask[num];
+			int numForked = 0;
+			int numUsed = 0;
+			Solution bestSol = null;
+			for (int i = 0; i < num && !isStopped(); i++) {
+				while (numForked < num && numForked < i + window) {
+					tasks[numForked] = new SplitTask(depth, tile, smi, axes.getInt(numForked), positions.getInt(numForked));
+					tasks[numForked].fork();
+					numForked++;
+				}
+				SplitTask task = tasks[i];
+				Solution sol = task.join();
+				numUsed++;
+				countBad += task.worker.countBad - task.startCountBad;
+				if (task.worker.hasEmptyPart)
+					hasEmptyPart = true;
+				if (sol != null) {
+					if (bestSol == null || bestSol.compareTo(sol) > 0)
+						bestSol = sol;
+					if (depth > 0 || tile.getCount() > 2 * myMaxNodes) {
+						countDone = counts.getInt(i);
+						break; // we found a valid split
+					}
+				} else if (countBad >= searchLimit) {
+					countDone = counts.getInt(i);
+					incomplete.putAll(task.worker.incomplete);
+					limitReached(depth, tile, countDone);
+					break;
+				}
+			}
+			// stop the tasks which were started in advance
+			for (int i = 0; i < numForked; i++) {
+				if (!tasks[i].isDone())
+					tasks[i].worker.stop();
+			}
+			for (int i = 0; i < numForked; i++) {
+				tasks[i].quietlyJoin();
+			}
+			for (int i = 0; i < numUsed; i++) {
+				knownBad.putAllMin(tasks[i].worker.knownBad);
+			}
+			if (depth < MAX_DEPTH_STATS && countBad < searchLimit) {
+				lastGoodCounts[depth] = countDone;
+			}
+			return bestSol;
+		}
+
+		/**
+		 * Tries one split position with a copy of the solver. 
+		 */
+		private class SplitTask extends RecursiveTask<Solution> {
+			private static final long serialVersionUID = 1L;
+			final Solver worker;
+			final int startCountBad;
+			final int depth;
+			final Tile tile;
+			final TileMetaInfo smi;
+			final int axis;
+			final int splitPos;
+
+			SplitTask(int depth, Tile tile, TileMetaInfo smiTile, int axis, int splitPos) {
+				this.worker = new Solver(Solver.this);
+				this.startCountBad = worker.countBad;
+				this.depth = depth;
+				this.tile = tile;
+				this.smi = new TileMetaInfo(tile, tile, smiTile);
+				smi.setMinNodes(minNodes);
+				this.axis = axis;
+				this.splitPos = splitPos;
+			}
+
+			@Override
+			protected Solution compute() {
+				boolean ok = axis == AXIS_HOR ? tile.splitHoriz(splitPos, smi) : tile.splitVert(splitPos, smi);
+				return ok ? worker.solveParts(depth, tile, smi) : null;
+			}
+		}
+
 		private boolean checkSize(Tile tile) {
 			return tile.height <= maxTileHeight && tile.width <= maxTileWidth;
 		}
@@ -1088,17 +1640,33 @@ public class SplittableDensityArea {
 			solve0();
 			if (smallestSolution.isSmallerOrBetter(bestSolution))
 				bestSolution = smallestSolution;
+			if (bestSolution.isEmpty() && warmSolution != null) {
+				// the tiles are also valid with our higher max-nodes value
+				warmSolution.getTiles().forEach(bestSolution::add);
+			}
 			System.out.println(name + " goal was " + bestPossible + " tiles, solver "
-					+ (stopped ? "was stopped" : "finished") + " with : " + bestSolution.toString());
-			knownBad.clear();
+					+ (isStopped() ? "was stopped" : "finished") + " with : " + bestSolution.toString());
+			long lookups = knownBad.getHits() + knownBad.getMisses();
+			if (lookups > 0) {
+				System.out.println(name + " cache of bad tiles: " + Utils.format(lookups) + " lookups, hit rate "
+						+ String.format("%.1f%%", 100.0 * knownBad.getHits() / lookups) + ", "
+						+ Utils.format(knownBad.getEvictions()) + " evictions");
+			}
+			if (!keepCache)
+				knownBad = null;
+			warmBad = null;
+			warmSolution = null;
 			incomplete.clear();
 		}
 		
 		private void solve0() {
-			knownBad.clear();
+			knownBad = new Long2LongClockCache(cacheSize, searchPool == null ? 1 : searchPool.getParallelism());
+			knownBad.defaultReturnValue(Long.MAX_VALUE);
 			lastGoodCounts = new int[MAX_DEPTH_STATS];
 			bestSolution = new Solution(myMaxNodes);
 			smallestSolution = new Solution(myMaxNodes);
+			if (warmSolution != null)
+				hasSolution = true; // can be used when the time budget expires
 			minNodes = Math.max(Math.min((long) (0.05 * myMaxNodes), startTile.getLargestInfo()), 1);
 					
 			searchLimit = startSearchLimit; 
@@ -1106,7 +1674,7 @@ public class SplittableDensityArea {
 			final long veryNiceMinNodes = (long) (VERY_NICE_FILL_RATIO * myMaxNodes);
 			
 			boolean clearIncomplete = false;
-			for (int numLoops = 1; numLoops < MAX_LOOPS && !stopped; numLoops++) {
+			for (int numLoops = 1; numLoops < MAX_LOOPS && !isStopped(); numLoops++) {
 				if (clearIncomplete) {
 					incomplete.clear();
 				}
@@ -1120,11 +1688,11 @@ public class SplittableDensityArea {
 					System.out.println(dbgPrefix + " searching for split with min-nodes " + minNodes + ", cache size " + Utils.format(knownBad.size()));
 				}
 				smiStart.setMinNodes(minNodes);
-				int oldCacheSize = knownBad.size();
+				long oldCacheSize = knownBad.size();
 				largestOptTileCount = 0;
 				largestOptSize = 0;
 				Solution solution = findSolution(0, startTile, startTile, smiStart);
-				if (stopped)
+				if (solution == null && isStopped())
 					return;
 				if (DEBUG) {
 					System.out.println(dbgPrefix + " positions " + Arrays.toString(lastGoodCounts));
@@ -1139,6 +1707,8 @@ public class SplittableDensityArea {
 					if (solution.isSmallerOrBetter(smallestSolution)) {
 						smallestSolution = solution;
 					}
+					if (!solution.isEmpty())
+						hasSolution = true;
 					if (solution.size() < stopNumber) {
 						minNodes = (bestSolution.getWorstMinNodes() + solution.getWorstMinNodes()) / 2;
 						if(minNodes != saveMinNodes)
@@ -1199,6 +1769,7 @@ public class SplittableDensityArea {
 						if (countBad > searchLimit && searchLimit < MAX_SEARCH_LIMIT) {
 							searchLimit *= 2;
 							knownBad.clear();
+							warmBad = null;
 							clearIncomplete = false;
 							System.out.println(name + ": No good solution found, duplicated search-limit to " + searchLimit);
 							tryAgain = true;
@@ -1227,6 +1798,17 @@ public class SplittableDensityArea {
 		void stop() {
 			stopped = true;
 		}
+
+		/**
+		 * @return true if the solver was stopped or if the time budget expired after a solution was found 
+		 */
+		boolean isStopped() {
+			if (stopped)
+				return true;
+			if (forkedFrom != null)
+				return forkedFrom.isStopped();
+			return hasDeadline && hasSolution && System.nanoTime() - deadline >= 0;
+		}
 	
 		private class TestGenerator {
 			final boolean searchAll;
@@ -119,11 +119,7 @@ import uk.me.parabola.splitter.Utils;
 		 * @return
 		 */
 		private long calcCount() {
-			long sum = 0;
-			for (int i = 0; i < height; i++) {
-				sum += getRowSum(i);
-			}
-			return sum;
+			return densityInfo.getNodeCount(x, y, width, height);
 		}
 		
 		/**
@@ -134,21 +130,7 @@ import uk.me.parabola.splitter.Utils;
 		 */
 		public long getRowSum(int row) {
 			assert row >= 0 && row < height;
-			int mapRow = row + y;
-			long sum = 0;
-			int[] vector = densityInfo.getMapRow(mapRow);
-			if (vector != null) {
-				final int lastX = x + width;
-				for (int i = x; i < lastX; i++) 
-					sum += vector[i];
-			}
-			return sum;
-		}
-
-		private long getRowSum(int row, long[] rowSums) {
-			if (rowSums[row] < 0)
-				rowSums[row] = getRowSum(row);
-			return rowSums[row];
+			return densityInfo.getNodeCount(x, y + row, width, 1);
 		}
 
 		/**
@@ -159,21 +141,46 @@ import uk.me.parabola.splitter.Utils;
 		 */
 		public long getColSum(int col) {
 			assert col >= 0 && col < width;
-			int mapCol = col + x;
-			long sum = 0;
-			int[] vector = densityInfo.getMapCol(mapCol);
-			if (vector != null) {
-				final int lastY = y + height;
-				for (int i = y; i < lastY; i++)
-					sum += vector[i];
+			return densityInfo.getNodeCount(x + col, y, 1, height);
+		}
+
+		/**
+		 * @param axis {@link SplittableDensityArea#AXIS_HOR} for columns, else rows
+		 * @param n number of columns or rows
+		 * @return the sum of the first n columns or rows 
+		 */
+		private long getPrefixSum(int axis, int n) {
+			if (axis == SplittableDensityArea.AXIS_HOR)
+				return densityInfo.getNodeCount(x, y, n, height);
+			return densityInfo.getNodeCount(x, y, width, n);
+		}
+
+		/**
+		 * Binary search in the sums of the first n columns or rows, they never decrease with n.
+		 * @param axis {@link SplittableDensityArea#AXIS_HOR} for columns, else rows
+		 * @param lo lowest n to check
+		 * @param hi highest n to check
+		 * @param limit the limit
+		 * @return the lowest n in lo..hi with a sum higher than limit, or hi + 1 if there is none 
+		 */
+		private int findPrefixSumAbove(int axis, int lo, int hi, long limit) {
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (getPrefixSum(axis, mid) > limit)
+					hi = mid - 1;
+				else 
+					lo = mid + 1;
 			}
-			return sum;
+			return lo;
 		}
 
-		private long getColSum(int col, long[] colSums) {
-			if (colSums[col] < 0)
-				colSums[col] = getColSum(col);
-			return colSums[col];
+		/**
+		 * @return position of the first column or row with a non-zero sum, -1 if there is none
+		 */
+		private int findFirstNonZero(int axis) {
+			int size = axis == SplittableDensityArea.AXIS_HOR ? width : height;
+			int n = findPrefixSumAbove(axis, 1, size, 0);
+			return n > size ? -1 : n - 1;
 		}
 
 		/**
@@ -187,27 +194,18 @@ import uk.me.parabola.splitter.Utils;
 			if (getCount() == 0 || width < 2)
 				smi.setHorMidPos(0);
 			else if (smi.getHorMidPos() < 0) {
-				int start = (smi.getFirstNonZeroX() > 0) ? smi.getFirstNonZeroX() : 0;
-				long sum = 0;
-				long lastSum = 0;
-				long target = getCount()/2;
-
-				for (int pos = start; pos <= width; pos++) {
-					lastSum = sum;
-					sum += getColSum(pos, smi.getColSums());
-					if (sum == 0)
-						continue;
-					if (lastSum <= 0)
-						smi.setFirstNonZeroX(pos);
-					if (sum > target){
-						if (sum - target < target - lastSum && pos + 1 < width){
-							smi.setHorMidPos(pos+1); 
-							smi.setHorMidSum(sum);
-						} else {
-							smi.setHorMidPos(pos); 
-							smi.setHorMidSum(lastSum);
-						}
-						break;
+				smi.setFirstNonZeroX(findFirstNonZero(SplittableDensityArea.AXIS_HOR));
+				long target = getCount() / 2;
+				int pos = findPrefixSumAbove(SplittableDensityArea.AXIS_HOR, 1, width, target) - 1;
+				if (pos < width) {
+					long sum = getPrefixSum(SplittableDensityArea.AXIS_HOR, pos + 1);
+					long lastSum = getPrefixSum(SplittableDensityArea.AXIS_HOR, pos);
+					if (sum - target < target - lastSum && pos + 1 < width) {
+						smi.setHorMidPos(pos + 1);
+						smi.setHorMidSum(sum);
+					} else {
+						smi.setHorMidPos(pos);
+						smi.setHorMidSum(lastSum);
 					}
 				}
 			}
@@ -224,26 +222,18 @@ import uk.me.parabola.splitter.Utils;
 			if (getCount() == 0 || height < 2)
 				smi.setVertMidPos(0);
 			else if (smi.getVertMidPos() < 0) {
-				long sum = 0;
-				long lastSum;
-				long target = getCount()/2;
-				int start = (smi.getFirstNonZeroY() > 0) ? smi.getFirstNonZeroY() : 0;
-				for (int pos = start; pos <= height; pos++) {
-					lastSum = sum;
-					sum += getRowSum(pos, smi.getRowSums());
-					if (sum == 0)
-						continue;
-					if (lastSum <= 0)
-						smi.setFirstNonZeroY(pos);
-					if (sum > target) {
-						if (sum - target < target - lastSum && pos + 1 < height) {
-							smi.setVertMidPos(pos + 1);
-							smi.setVertMidSum(sum);
-						} else {
-							smi.setVertMidPos(pos);
-							smi.setVertMidSum(lastSum);
-						}
-						break;
+				smi.setFirstNonZeroY(findFirstNonZero(SplittableDensityArea.AXIS_VERT));
+				long target = getCount() / 2;
+				int pos = findPrefixSumAbove(SplittableDensityArea.AXIS_VERT, 1, height, target) - 1;
+				if (pos < height) {
+					long sum = getPrefixSum(SplittableDensityArea.AXIS_VERT, pos + 1);
+					long lastSum = getPrefixSum(SplittableDensityArea.AXIS_VERT, pos);
+					if (sum - target < target - lastSum && pos + 1 < height) {
+						smi.setVertMidPos(pos + 1);
+						smi.setVertMidSum(sum);
+					} else {
+						smi.setVertMidPos(pos);
+						smi.setVertMidSum(lastSum);
 					}
 				}
 			}
@@ -258,20 +248,7 @@ import uk.me.parabola.splitter.Utils;
 		public boolean splitHoriz(int splitX, TileMetaInfo smi) {
 			if (splitX <= 0 || splitX >= width)
 				return false;
-			long sum = 0;
-			
-			if (splitX <= width / 2){
-				int start = (smi.getFirstNonZeroX() > 0) ? smi.getFirstNonZeroX() : 0;
-				for (int pos = start; pos < splitX; pos++) {
-					sum += getColSum(pos, smi.getColSums());
-				}
-			} else {
-				int end = (smi.getLastNonZeroX() > 0) ? smi.getLastNonZeroX() + 1: width;
-				for (int pos = splitX; pos < end; pos++) {
-					sum += getColSum(pos, smi.getColSums());
-				}
-				sum = getCount() - sum;
-			}
+			long sum = getSplitSum(SplittableDensityArea.AXIS_HOR, splitX, width);
 			if (sum < smi.getMinNodes() || getCount() - sum < smi.getMinNodes())
 				return false;
 			assert splitX > 0 && splitX < width;
@@ -290,20 +267,7 @@ import uk.me.parabola.splitter.Utils;
 		public boolean splitVert(int splitY, TileMetaInfo smi) {
 			if (splitY <= 0 || splitY >= height)
 				return false;
-			long sum = 0;
-			
-			if (splitY <= height / 2){
-				int start = (smi.getFirstNonZeroY() > 0) ? smi.getFirstNonZeroY() : 0; 
-				for (int pos = start; pos < splitY; pos++) {
-					sum += getRowSum(pos, smi.getRowSums());
-				}
-			} else {
-				int end = (smi.getLastNonZeroY() > 0) ? smi.getLastNonZeroY()+1 : height; 
-				for (int pos = splitY; pos < end; pos++) {
-					sum += getRowSum(pos, smi.getRowSums());
-				}
-				sum = getCount() - sum;
-			}
+			long sum = getSplitSum(SplittableDensityArea.AXIS_VERT, splitY, height);
 
 			if (sum < smi.getMinNodes() || getCount() - sum < smi.getMinNodes())
 				return false;
@@ -316,6 +280,16 @@ import uk.me.parabola.splitter.Utils;
 			return true;
 		}
 
+		/**
+		 * Calculate the number of nodes in the first part of a split. A split in the upper half 
+		 * subtracts the second part from the count, so that both parts add up to the count.
+		 */
+		private long getSplitSum(int axis, int splitPos, int size) {
+			if (splitPos <= size / 2)
+				return getPrefixSum(axis, splitPos);
+			return getCount() - (getPrefixSum(axis, size) - getPrefixSum(axis, splitPos));
+		}
+
 		/**
 		 * 
 		 * @param smi
@@ -324,22 +298,12 @@ import uk.me.parabola.splitter.Utils;
 		public int findValidStartX(TileMetaInfo smi) {
 			if (smi.getValidStartX() >= 0)
 				return smi.getValidStartX();
-			long sum = 0;
-			int start = (smi.getFirstNonZeroX() > 0) ? smi.getFirstNonZeroX() : 0;
-			for (int i = start; i < width; i++) {
-				sum += getColSum(i, smi.getColSums());
-				if (sum == 0)
-					continue;
-				if (smi.getFirstNonZeroX() < 0)
-					smi.setFirstNonZeroX(i);
-				if (sum >= smi.getMinNodes()) {
-					int splitPos = i + 1;
-					smi.setValidStartX(splitPos);
-					return splitPos;
-				}
-			}
-			smi.setValidStartX(width);
-			return width;
+			if (smi.getFirstNonZeroX() < 0)
+				smi.setFirstNonZeroX(findFirstNonZero(SplittableDensityArea.AXIS_HOR));
+			long limit = Math.max(smi.getMinNodes(), 1) - 1;
+			int splitPos = Math.min(width, findPrefixSumAbove(SplittableDensityArea.AXIS_HOR, 1, width, limit));
+			smi.setValidStartX(splitPos);
+			return splitPos;
 		}
 
 		/**
@@ -349,17 +313,12 @@ import uk.me.parabola.splitter.Utils;
 		 */
 		public int findValidEndX(TileMetaInfo smi) {
 			if (smi.getValidEndX() < 0){
-				int end = smi.getLastNonZeroX() > 0 ? smi.getLastNonZeroX() : width - 1; 
-				long sum = 0;
-				for (int i = end; i >= 0; --i) {
-					sum += getColSum(i, smi.getColSums());
-					if (sum > 0 && smi.getLastNonZeroX() < 0)
-						smi.setLastNonZeroX(i);
-					if (sum >= smi.getMinNodes()){
-						smi.setValidEndX(i);
-						break;
-					}
-				}
+				int end = smi.getLastNonZeroX() > 0 ? smi.getLastNonZeroX() : width - 1;
+				int pos = findValidEnd(SplittableDensityArea.AXIS_HOR, end, smi.getMinNodes());
+				if (smi.getLastNonZeroX() < 0)
+					smi.setLastNonZeroX(findLastNonZero(SplittableDensityArea.AXIS_HOR, end, pos));
+				if (pos >= 0)
+					smi.setValidEndX(pos);
 			}
 			return smi.getValidEndX();
 		}
@@ -373,22 +332,12 @@ import uk.me.parabola.splitter.Utils;
 		public int findValidStartY(TileMetaInfo smi) {
 			if (smi.getValidStartY() > 0)
 				return smi.getValidStartY();
-			long sum = 0;
-			int start = (smi.getFirstNonZeroY() > 0) ? smi.getFirstNonZeroY() : 0;
-			for (int i = start; i < height; i++) {
-				sum += getRowSum(i, smi.getRowSums());
-				if (sum == 0)
-					continue;
-				if (smi.getFirstNonZeroY() < 0)
-					smi.setFirstNonZeroY(i);
-				if (sum >= smi.getMinNodes()){
-					int splitPos = i+1;
-					smi.setValidStartY(splitPos);
-					return splitPos;
-				}
-			}
-			smi.setValidStartY(height);
-			return height;
+			if (smi.getFirstNonZeroY() < 0)
+				smi.setFirstNonZeroY(findFirstNonZero(SplittableDensityArea.AXIS_VERT));
+			long limit = Math.max(smi.getMinNodes(), 1) - 1;
+			int splitPos = Math.min(height, findPrefixSumAbove(SplittableDensityArea.AXIS_VERT, 1, height, limit));
+			smi.setValidStartY(splitPos);
+			return splitPos;
 		}
 
 		/**
@@ -398,51 +347,49 @@ import uk.me.parabola.splitter.Utils;
 		 */
 		public int findValidEndY(TileMetaInfo smi) {
 			if (smi.getValidEndY() < 0){
-				int end = smi.getLastNonZeroY() > 0 ? smi.getLastNonZeroY() : height - 1; 
-				long sum = 0;
-				for (int i = end; i >= 0; --i) {
-					sum += getRowSum(i, smi.getRowSums());
-					if (sum > 0 && smi.getLastNonZeroY() < 0)
-						smi.setLastNonZeroY(i);
-					if (sum >= smi.getMinNodes()){
-						smi.setValidEndY(i);
-						break;
-					}
-				}
+				int end = smi.getLastNonZeroY() > 0 ? smi.getLastNonZeroY() : height - 1;
+				int pos = findValidEnd(SplittableDensityArea.AXIS_VERT, end, smi.getMinNodes());
+				if (smi.getLastNonZeroY() < 0)
+					smi.setLastNonZeroY(findLastNonZero(SplittableDensityArea.AXIS_VERT, end, pos));
+				if (pos >= 0)
+					smi.setValidEndY(pos);
 			}
 			return smi.getValidEndY();
 		}
+
+		/**
+		 * @param end the last column or row that may have a non-zero sum
+		 * @return highest position p up to end so that the sum from p to end is >= minNodes, -1 if there is none
+		 */
+		private int findValidEnd(int axis, int end, long minNodes) {
+			long total = getPrefixSum(axis, end + 1);
+			return findPrefixSumAbove(axis, 0, end, total - minNodes) - 1;
+		}
+
+		/**
+		 * @param end the last column or row that may have a non-zero sum
+		 * @param validEnd the result of {@link #findValidEnd(int, int, long)}
+		 * @return the last column or row with a non-zero sum, -1 if it is unknown
+		 */
+		private int findLastNonZero(int axis, int end, int validEnd) {
+			long total = getPrefixSum(axis, end + 1);
+			int pos = findPrefixSumAbove(axis, 0, end, total - 1) - 1;
+			// the sums of the columns or rows above validEnd are not enough to know anything about lower positions
+			return pos >= Math.max(validEnd, 0) ? pos : -1;
+		}
 		
 		public int findFirstXHigher(TileMetaInfo smi, long limit) {
-			long sum = 0;
-			int start = (smi.getFirstNonZeroX() > 0) ? smi.getFirstNonZeroX() : 0;
-			for (int i = start; i < width; i++) {
-				sum += getColSum(i, smi.getColSums());
-				if (sum == 0)
-					continue;
-				if (smi.getFirstNonZeroX() < 0)
-					smi.setFirstNonZeroX(i);
-				if (sum > limit) {
-					return i;
-				}
-			}
-			return height;
+			if (smi.getFirstNonZeroX() < 0)
+				smi.setFirstNonZeroX(findFirstNonZero(SplittableDensityArea.AXIS_HOR));
+			int n = findPrefixSumAbove(SplittableDensityArea.AXIS_HOR, 1, width, Math.max(limit, 0));
+			return n <= width ? n - 1 : height;
 		}
 
 		public int findFirstYHigher(TileMetaInfo smi, long limit) {
-			long sum = 0;
-			int start = (smi.getFirstNonZeroY() > 0) ? smi.getFirstNonZeroY() : 0;
-			for (int i = start; i < height; i++) {
-				sum += getRowSum(i, smi.getRowSums());
-				if (sum == 0)
-					continue;
-				if (smi.getFirstNonZeroY() < 0)
-					smi.setFirstNonZeroY(i);
-				if (sum > limit) {
-					return i;
-				}
-			}
-			return height;
+			if (smi.getFirstNonZeroY() < 0)
+				smi.setFirstNonZeroY(findFirstNonZero(SplittableDensityArea.AXIS_VERT));
+			int n = findPrefixSumAbove(SplittableDensityArea.AXIS_VERT, 1, height, Math.max(limit, 0));
+			return n <= height ? n - 1 : height;
 		}
 		
 		public int findFirstHigher(int axis, TileMetaInfo smi, long limit) {
@@ -530,29 +477,13 @@ import uk.me.parabola.splitter.Utils;
 		private boolean rowOutsidePolygon(int row) {
 			if (densityInfo.getPolygonArea() == null)
 				return false;
-			// performance critical part, check corners first
-			if (densityInfo.isGridElemInPolygon(x, y + row) || densityInfo.isGridElemInPolygon(x + width-1, y + row))
-				return false;
-			// check rest of row
-			for (int i = 1; i < width-1; i++) {
-				if (densityInfo.isGridElemInPolygon(x + i, y + row))
-					return false;
-			}
-			return true;
+			return densityInfo.countElemsOutsidePolygon(x, y + row, width, 1) == width;
 		}
 
 		private boolean colOutsidePolygon(int col) {
 			if (densityInfo.getPolygonArea() == null)
 				return false;
-			// performance critical part, check corners first
-			if (densityInfo.isGridElemInPolygon(x + col, y) || densityInfo.isGridElemInPolygon(x + col, y + height - 1))
-				return false;
-			// check rest of column
-			for (int i = 1; i < height - 1; i++) {
-				if (densityInfo.isGridElemInPolygon(x + col, y + i))
-					return false;
-			}
-			return true;
+			return densityInfo.countElemsOutsidePolygon(x + col, y, 1, height) == height;
 		}
 
 		public boolean outsidePolygon(){
@@ -577,20 +508,16 @@ import uk.me.parabola.splitter.Utils;
 			}
 			final long maxOutsde = (long) (maxOutsideRatio * (width * height));
 			final long neededInside = width * height - maxOutsde;
-			int countInside = 0;
-			int countOutside= 0;
-			for (int i = x; i < x + width; i++) {
-				for (int j = y; j < y + height; j++) {
-					if (densityInfo.isGridElemInPolygon(i, j)) {
-						if (++countInside >= neededInside)
-							return true;
-					} else {
-						if (++countOutside >= maxOutsde)
-							return false;
-					}
-				}
-			}
-			return false;
+			final int countOutside = countElemsOutside();
+			final int countInside = width * height - countOutside;
+			// same result as a scan of the grid elements column by column which stops 
+			// when one of the two limits is reached 
+			if (countInside < neededInside || countInside == 0)
+				return false;
+			if (countOutside < maxOutsde || countOutside == 0)
+				return true;
+			// both limits are reached, the last grid element was counted last 
+			return !densityInfo.isGridElemInPolygon(x + width - 1, y + height - 1);
 		}
 		
 		public Rectangle getRealBBox(){
@@ -600,6 +527,13 @@ import uk.me.parabola.splitter.Utils;
 			return new Rectangle(polyXPos, polyYPos, width<<shift, height<<shift);
 		}
 
+		/**
+		 * @return a key that identifies the position and size of the tile in the density map
+		 */
+		public long getKey() {
+			return densityInfo.getKey(x, y, width, height);
+		}
+
 		@Override
 		public int hashCode() {
 			return x << 24 | y << 16 | width << 8 | height;
@@ -640,32 +574,15 @@ import uk.me.parabola.splitter.Utils;
 		}
 		
 		public long countInside() {
-			long minCount = 0;
 			if (densityInfo.getPolygonArea() == null || densityInfo.allInsidePolygon())
 				return count;
-			for (int i = 0; i < width; i++) {
-				final int[] col = densityInfo.getMapCol(x + i);
-				if (col != null) {
-					for (int k = 0; k < height; k++) {
-						if (densityInfo.isGridElemInPolygon(x + i, y + k))
-							minCount += col[y + k];
-					}
-				}
-			}
-			return minCount;
+			return calcCount() - densityInfo.getNodeCountOutsidePolygon(x, y, width, height);
 		}
 
 		public int countElemsOutside() {
 			if (densityInfo.getPolygonArea() == null || densityInfo.allInsidePolygon())
 				return 0;
-			int num = 0;
-			for (int i = 0; i < width; i++) {
-				for (int k = 0; k < height; k++) {
-					if (!densityInfo.isGridElemInPolygon(x + i, y + k))
-						num++;
-				}
-			}
-			return num;
+			return densityInfo.countElemsOutsidePolygon(x, y, width, height);
 		}
 
 		public List<Tile> divide(long maxNodes) {
@@ -706,14 +623,12 @@ import uk.me.parabola.splitter.Utils;
 		 */
 		int getLargestInfo() {
 			int largest = 0;
+			DensityMap densityMap = densityInfo.getDensityMap();
 			for (int i = 0; i < width; i++) {
-				final int[] col = densityInfo.getMapCol(x + i);
-				if (col != null) {
-					for (int k = 0; k < height; k++) {
-						int n = col[y+k];
-						if (n > largest) {
-							largest = n;
-						}
+				for (int k = 0; k < height; k++) {
+					int n = densityMap.getNodeCount(x + i, y + k);
+					if (n > largest) {
+						largest = n;
 					}
 				}
 			}
@@ -12,9 +12,6 @@
  */ 
 package uk.me.parabola.splitter.solver;
 
-import java.util.Arrays;
-
-
 /**
  * A helper class to store all kind of
  * information which cannot be easily calculated
@@ -22,8 +19,6 @@ import java.util.Arrays;
  */
 class TileMetaInfo {
 	private long minNodes;
-	private final long[] rowSums;
-	private final long[] colSums;
 	private final Tile[] parts = new Tile[2];
 	private int validStartX = -1;
 	private int validStartY = -1;
@@ -47,23 +42,12 @@ class TileMetaInfo {
 	 * @param smiParent
 	 */
 	public TileMetaInfo(Tile tile, Tile parent, TileMetaInfo smiParent) {
-		rowSums = new long[tile.height];
-		colSums = new long[tile.width]; 
-		if (parent != null && parent.width == tile.width){
-			int srcPos = tile.y - parent.y;
-			System.arraycopy(smiParent.rowSums, srcPos, rowSums, 0, rowSums.length);
-			if (srcPos == 0)
-				firstNonZeroY = smiParent.firstNonZeroY;
-		} else 
-			Arrays.fill(rowSums, -1);
-		if (parent != null && parent.height == tile.height){
-			int srcPos = tile.x - parent.x;
-			System.arraycopy(smiParent.colSums, srcPos, colSums, 0, colSums.length);
-			if (srcPos == 0)
-				firstNonZeroX = smiParent.firstNonZeroX;
-				
-		} else 
-			Arrays.fill(colSums, -1);
+		if (parent != null && parent.width == tile.width && tile.y == parent.y) {
+			firstNonZeroY = smiParent.firstNonZeroY;
+		}
+		if (parent != null && parent.height == tile.height && tile.x == parent.x) {
+			firstNonZeroX = smiParent.firstNonZeroX;
+		}
 		if (smiParent != null) {
 			this.minNodes = smiParent.minNodes;
 			if (smiParent.getNumOutside() == 0)
@@ -173,14 +157,6 @@ class TileMetaInfo {
 		return minNodes;
 	}
 
-	public long[] getRowSums() {
-		return rowSums;
-	}
-
-	public long[] getColSums() {
-		return colSums;
-	}
-
 	public Tile[] getParts() {
 		return parts;
 	}
@@ -218,7 +194,6 @@ class TileMetaInfo {
 	void propagateToParent(TileMetaInfo smiParent, Tile tile, Tile parent){
 		if (parent.width == tile.width){
 			int destPos = tile.y - parent.y;
-			System.arraycopy(this.rowSums, 0, smiParent.rowSums, destPos, this.rowSums.length);
 			if (destPos == 0) {
 				if (smiParent.firstNonZeroY < 0 && this.firstNonZeroY >= 0)
 					smiParent.firstNonZeroY = this.firstNonZeroY;
@@ -237,7 +212,6 @@ class TileMetaInfo {
 		} 
 		if (parent.height == tile.height){
 			int destPos = tile.x - parent.x;
-			System.arraycopy(this.colSums, 0, smiParent.colSums, destPos, this.colSums.length);
 			if (destPos == 0) {
 				if (smiParent.firstNonZeroX < 0 && this.firstNonZeroX >= 0)
 					smiParent.firstNonZeroX = this.firstNonZeroX;
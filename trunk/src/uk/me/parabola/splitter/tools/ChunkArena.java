@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.me.parabola.splitter.SplitFailedException;
+
+/**
+ * Allocates memory outside of the Java heap for {@link SparseLong2IntMap}.
+ * The memory is taken from segments which are either direct buffers or
+ * regions of a temporary file that are mapped into memory. The first segment
+ * is small and each further segment doubles the size up to a limit, so that
+ * a map with few values doesn't reserve much memory. Mapped segments
+ * are backed by the file, so the OS can page them out instead of failing
+ * with an {@link OutOfMemoryError}.
+ * Memory is never returned to the arena, it is released when the arena is no
+ * longer referenced.
+ */
+final class ChunkArena {
+	/** size of the first segment */
+	private static final int MIN_SEGMENT_SIZE = 256 << 10;
+	/** limit for the size of a segment, larger buffers get a segment of their own */
+	private static final int MAX_SEGMENT_SIZE = 16 << 20;
+
+	private final List<ByteBuffer> segments = new ArrayList<>();
+	private final File tmpDir;
+	private final String dataDesc;
+	private RandomAccessFile raf;
+	private long fileSize;
+	private ByteBuffer current;
+	private int nextSegmentSize = MIN_SEGMENT_SIZE;
+	private long usedBytes;
+
+	/**
+	 * @param dataDesc the description used in messages
+	 * @param tmpDir directory for the temporary file or null if direct buffers should be used
+	 */
+	ChunkArena(String dataDesc, File tmpDir) {
+		this.dataDesc = dataDesc;
+		this.tmpDir = tmpDir;
+	}
+
+	boolean isMapped() {
+		return tmpDir != null;
+	}
+
+	/**
+	 * Allocate a buffer with the given size. The content is initialised with zeros.
+	 * @param bytes the wanted size
+	 * @return a buffer with position 0 and the given capacity
+	 */
+	ByteBuffer allocate(int bytes) {
+		if (current == null || current.remaining() < bytes) {
+			if (bytes >= nextSegmentSize) {
+				// e.g. a large vector, the rest of the current segment can still be used
+				usedBytes += bytes;
+				return newSegment(bytes).duplicate();
+			}
+			current = newSegment(nextSegmentSize);
+			nextSegmentSize = Math.min(MAX_SEGMENT_SIZE, nextSegmentSize * 2);
+		}
+		ByteBuffer dup = current.duplicate();
+		dup.limit(current.position() + bytes);
+		current.position(current.position() + bytes);
+		usedBytes += bytes;
+		return dup.slice();
+	}
+
+	private ByteBuffer newSegment(int size) {
+		ByteBuffer seg;
+		if (tmpDir == null) {
+			seg = ByteBuffer.allocateDirect(size);
+		} else {
+			try {
+				if (raf == null) {
+					File f = File.createTempFile("splitter-" + dataDesc + "-", ".tmp", tmpDir);
+					raf = new RandomAccessFile(f, "rw");
+					// the open file stays usable on systems which allow to delete it
+					if (!f.delete())
+						f.deleteOnExit();
+				}
+				seg = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, fileSize, size);
+				fileSize += size;
+			} catch (IOException e) {
+				throw new SplitFailedException("failed to map memory for " + dataDesc + " map in " + tmpDir, e);
+			}
+		}
+		segments.add(seg);
+		return seg;
+	}
+
+	/**
+	 * @return the number of bytes handed out by {@link #allocate(int)}
+	 */
+	long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * @return the number of bytes reserved in segments
+	 */
+	long getReservedBytes() {
+		long reserved = 0;
+		for (ByteBuffer seg : segments) {
+			reserved += seg.capacity();
+		}
+		return reserved;
+	}
+
+	/**
+	 * Estimate the number of bytes that are currently in physical memory. For
+	 * mapped segments only those which are completely loaded are counted.
+	 * @return the estimated number of resident bytes
+	 */
+	long getResidentBytes() {
+		if (tmpDir == null)
+			return getReservedBytes();
+		long resident = 0;
+		for (ByteBuffer seg : segments) {
+			if (((MappedByteBuffer) seg).isLoaded())
+				resident += seg.capacity();
+		}
+		return resident;
+	}
+
+	/**
+	 * Release the file handle. The memory is released when the segments are garbage collected.
+	 */
+	void close() {
+		segments.clear();
+		current = null;
+		nextSegmentSize = MIN_SEGMENT_SIZE;
+		if (raf != null) {
+			try {
+				raf.close();
+			} catch (IOException e) {
+				// ignore, the file is already deleted
+			}
+			raf = null;
+		}
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.tools;
+
+import java.util.Arrays;
+
+/**
+ * A small set-associative cache for decoded chunks of a {@link SparseLong2IntMap}.
+ * Each set holds {@code WAYS} chunks in LRU order. The arrays for the chunks are
+ * allocated when they are first used.
+ * This class is not thread-safe, threads which read concurrently need their own instance.
+ */
+final class ChunkCache {
+	private static final int WAYS = 4;
+	private static final int SETS = 1024;
+	/** must NOT be divisible by the chunk size */
+	private static final long INVALID_CHUNK_ID = 1L;
+
+	private final int chunkSize;
+	private final int chunkShift;
+	private final long[] ids = new long[SETS * WAYS];
+	private final int[][] chunks = new int[SETS * WAYS][];
+	private final int[] scratch;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param chunkSize the number of values in a chunk, a power of 2
+	 */
+	ChunkCache(int chunkSize) {
+		this.chunkSize = chunkSize;
+		this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+		this.scratch = new int[chunkSize];
+		clear();
+	}
+
+	private int getSetStart(long chunkId) {
+		return ((int) (chunkId >>> chunkShift) & (SETS - 1)) * WAYS;
+	}
+
+	/**
+	 * Find a decoded chunk in the cache without changing the LRU order.
+	 * @param chunkId the chunk id
+	 * @return the chunk or null if not found
+	 */
+	int[] find(long chunkId) {
+		int start = getSetStart(chunkId);
+		for (int i = start; i < start + WAYS; i++) {
+			if (ids[i] == chunkId)
+				return chunks[i];
+		}
+		return null;
+	}
+
+	/**
+	 * Get the chunk with the given id and make it the most recently used one of its set.
+	 * @param chunkId the chunk id
+	 * @return the cached chunk or null if not found
+	 */
+	int[] get(long chunkId) {
+		int start = getSetStart(chunkId);
+		for (int pos = start; pos < start + WAYS; pos++) {
+			if (ids[pos] == chunkId) {
+				hits++;
+				return moveToFront(start, pos, chunkId);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Add a chunk that was not found with {@link #get(long)}. It replaces the least
+	 * recently used chunk of the set.
+	 * @param chunkId the chunk id
+	 * @return the array that has to be filled by the caller
+	 */
+	int[] add(long chunkId) {
+		misses++;
+		int start = getSetStart(chunkId);
+		int pos = start + WAYS - 1;
+		if (chunks[pos] == null)
+			chunks[pos] = new int[chunkSize];
+		return moveToFront(start, pos, chunkId);
+	}
+
+	private int[] moveToFront(int start, int pos, long chunkId) {
+		int[] chunk = chunks[pos];
+		for (int i = pos; i > start; i--) {
+			ids[i] = ids[i - 1];
+			chunks[i] = chunks[i - 1];
+		}
+		ids[start] = chunkId;
+		chunks[start] = chunk;
+		return chunk;
+	}
+
+	/**
+	 * @return an array with the size of a chunk that can be used as a buffer while a chunk is decoded
+	 */
+	int[] getScratch() {
+		return scratch;
+	}
+
+	/**
+	 * Remove all chunks, the statistics are kept.
+	 */
+	void clear() {
+		Arrays.fill(ids, INVALID_CHUNK_ID);
+	}
+
+	void resetStats() {
+		hits = 0;
+		misses = 0;
+	}
+
+	long getHits() {
+		return hits;
+	}
+
+	long getMisses() {
+		return misses;
+	}
+}
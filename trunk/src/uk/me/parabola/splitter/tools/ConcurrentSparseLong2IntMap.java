@@ -0,0 +1,259 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.tools;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import uk.me.parabola.splitter.Utils;
+
+/**
+ * A thread-safe variant of {@link SparseLong2IntMap}. The key space is cut into
+ * blocks of {@code 1 << SHARD_BLOCK_BITS} consecutive ids, the blocks are
+ * distributed round robin to a number of shards. Each shard is a
+ * {@link SparseLong2IntMap} which sees a dense key space because the bits
+ * that select the shard are removed from the key.
+ * <p>
+ * Writers of the same shard are serialised by the monitor of the shard, so threads
+ * that work on independent id ranges (e.g. different blocks of a sorted input file)
+ * practically never wait for each other.
+ * After {@link #seal()} all values are kept in the encoded chunk store and
+ * {@link #get(long)} doesn't need any lock until the next {@link #put(long, int)}.
+ * Each reading thread then uses its own cache of decoded chunks.
+ * The intended usage is a write phase followed by a read phase, e.g. store the
+ * area information of nodes and read it while processing ways.
+ */
+public final class ConcurrentSparseLong2IntMap implements Long2IntMapFunction {
+	/** number of consecutive ids that are stored in the same shard, must be a multiple of the chunk size */
+	private static final int SHARD_BLOCK_BITS = 16;
+	private static final long SHARD_BLOCK_MASK = (1L << SHARD_BLOCK_BITS) - 1;
+	private static final int MAX_SHARDS = 64;
+
+	private final String dataDesc;
+	private final SparseLong2IntMap[] shards;
+	private final int shardBits;
+	private final int shardMask;
+	private int unassigned = Integer.MIN_VALUE;
+	private volatile boolean sealed;
+	/** changed whenever the cached chunks of the reading threads become invalid */
+	private volatile int version;
+
+	/** the chunk cache of a reading thread */
+	private static final class ReadCache {
+		final ChunkCache cache = new ChunkCache(SparseLong2IntMap.CHUNK_SIZE);
+		int version;
+	}
+	/** all caches, used for the statistics */
+	private final List<ReadCache> readCaches = new ArrayList<>();
+	private final ThreadLocal<ReadCache> readCache = ThreadLocal.withInitial(() -> {
+		ReadCache rc = new ReadCache();
+		synchronized (readCaches) {
+			readCaches.add(rc);
+		}
+		return rc;
+	});
+
+	/**
+	 * Create a map for the given number of writer threads.
+	 * @param dataDesc the description used in messages
+	 * @param numThreads the number of threads that are expected to write concurrently
+	 */
+	public ConcurrentSparseLong2IntMap(String dataDesc, int numThreads) {
+		this(dataDesc, numThreads, SparseLong2IntMap.Storage.HEAP, null);
+	}
+
+	/**
+	 * Create a map for the given number of writer threads.
+	 * @param dataDesc the description used in messages
+	 * @param numThreads the number of threads that are expected to write concurrently
+	 * @param storage where the chunks of the shards are stored
+	 * @param tmpDir the directory for the temporary files used with {@link SparseLong2IntMap.Storage#MAPPED}
+	 */
+	public ConcurrentSparseLong2IntMap(String dataDesc, int numThreads, SparseLong2IntMap.Storage storage, File tmpDir) {
+		this.dataDesc = dataDesc;
+		int numShards = Integer.highestOneBit(Math.max(1, Math.min(MAX_SHARDS, numThreads * 4) - 1)) << 1;
+		shardBits = Integer.numberOfTrailingZeros(numShards);
+		shardMask = numShards - 1;
+		shards = new SparseLong2IntMap[numShards];
+		for (int i = 0; i < numShards; i++) {
+			shards[i] = new SparseLong2IntMap(dataDesc, storage, tmpDir, false);
+		}
+		System.out.println(dataDesc + " Map: uses " + this.getClass().getSimpleName() + " with " + numShards + " shards"
+				+ (storage == SparseLong2IntMap.Storage.HEAP ? "" : " and " + storage.name().toLowerCase() + " storage"));
+	}
+
+	private SparseLong2IntMap getShard(long key) {
+		return shards[(int) (key >> SHARD_BLOCK_BITS) & shardMask];
+	}
+
+	/**
+	 * Remove the bits that select the shard from the key.
+	 * @param key the key
+	 * @return the key used within the shard
+	 */
+	private long toShardKey(long key) {
+		return ((key >> (SHARD_BLOCK_BITS + shardBits)) << SHARD_BLOCK_BITS) | (key & SHARD_BLOCK_MASK);
+	}
+
+	public int put(long key, int val) {
+		SparseLong2IntMap shard = getShard(key);
+		synchronized (shard) {
+			if (sealed)
+				sealed = false;
+			return shard.put(toShardKey(key), val);
+		}
+	}
+
+	/**
+	 * Returns the value to which the given key is mapped or the {@code unassigned} value.
+	 * @param key the key
+	 * @return the value to which the given key is mapped or the {@code unassigned} value
+	 */
+	public int get(long key) {
+		SparseLong2IntMap shard = getShard(key);
+		if (sealed)
+			return getSealed(shard, key);
+		synchronized (shard) {
+			return shard.get(toShardKey(key));
+		}
+	}
+
+	/**
+	 * Read a value from the chunk cache of the current thread. The cache is keyed by
+	 * the original key, so one cache serves all shards.
+	 * @param shard the shard that stores the key
+	 * @param key the key
+	 * @return the value to which the given key is mapped or the {@code unassigned} value
+	 */
+	private int getSealed(SparseLong2IntMap shard, long key) {
+		ReadCache rc = readCache.get();
+		int v = version;
+		if (rc.version != v) {
+			rc.cache.clear();
+			rc.version = v;
+		}
+		long chunkId = key & -SparseLong2IntMap.CHUNK_SIZE;
+		int[] chunk = rc.cache.get(chunkId);
+		if (chunk == null) {
+			chunk = rc.cache.add(chunkId);
+			shard.decodeStored(toShardKey(key), chunk, rc.cache.getScratch());
+		}
+		return chunk[(int) (key & (SparseLong2IntMap.CHUNK_SIZE - 1))];
+	}
+
+	public boolean containsKey(long key) {
+		return get(key) != unassigned;
+	}
+
+	/**
+	 * Store the pending values of all shards. Until the next call of
+	 * {@link #put(long, int)} the map can be read by any number of threads without locking.
+	 */
+	public void seal() {
+		for (SparseLong2IntMap shard : shards) {
+			synchronized (shard) {
+				shard.flush();
+			}
+		}
+		version++;
+		sealed = true;
+	}
+
+	public void clear() {
+		for (SparseLong2IntMap shard : shards) {
+			synchronized (shard) {
+				shard.clear();
+			}
+		}
+		sealed = false;
+	}
+
+	public long size() {
+		long size = 0;
+		for (SparseLong2IntMap shard : shards) {
+			synchronized (shard) {
+				size += shard.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Select the encoding for chunks that are saved from now on.
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(SparseLong2IntMap.Encoding encoding) {
+		for (SparseLong2IntMap shard : shards) {
+			synchronized (shard) {
+				shard.setEncoding(encoding);
+			}
+		}
+	}
+
+	public int defaultReturnValue() {
+		return unassigned;
+	}
+
+	public void defaultReturnValue(int arg0) {
+		for (SparseLong2IntMap shard : shards) {
+			synchronized (shard) {
+				shard.defaultReturnValue(arg0);
+			}
+		}
+		unassigned = arg0;
+		version++;
+	}
+
+	/**
+	 * calculate and print performance values regarding memory.
+	 */
+	public void stats(int msgLevel) {
+		long size = size();
+		if (size == 0) {
+			System.out.println(dataDesc + " Map is empty");
+			return;
+		}
+		long totalBytes = 0;
+		long totalChunks = 0;
+		int numVectors = 0;
+		for (SparseLong2IntMap shard : shards) {
+			synchronized (shard) {
+				totalBytes += shard.getEstimatedBytes();
+				totalChunks += shard.getChunkCount();
+				numVectors += shard.getNumLargeVectors();
+			}
+		}
+		long bytesPerKey = Math.round((double) totalBytes / size);
+		System.out.println(dataDesc + " Map: " + Utils.format(size) + " stored long/int pairs require ca. " +
+				bytesPerKey + " bytes per pair. " +
+				Utils.format(totalChunks) + " chunks are used in " + shards.length + " shards, the avg. number of values in one chunk is " +
+				(totalChunks == 0 ? 0 : (size / totalChunks)) + ".");
+		long hits = 0;
+		long misses = 0;
+		synchronized (readCaches) {
+			for (ReadCache rc : readCaches) {
+				hits += rc.cache.getHits();
+				misses += rc.cache.getMisses();
+			}
+		}
+		SparseLong2IntMap.printCacheStats(dataDesc, hits, misses);
+		if (msgLevel >= 0) {
+			String details = dataDesc + " Map details: ~" + SparseLong2IntMap.bytesToMB(totalBytes) + ", including " + numVectors
+					+ " array(s) with " + SparseLong2IntMap.bytesToMB(SparseLong2IntMap.getLargeVectorBytes());
+			System.out.println(details);
+		}
+		System.out.println();
+	}
+}
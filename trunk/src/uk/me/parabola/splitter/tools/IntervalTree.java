@@ -0,0 +1,178 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+
+/**
+ * A dynamic set of half open int intervals [lo, hi), each identified by an int id.
+ * The intervals are kept in a randomized balanced search tree (treap) ordered by lo and id,
+ * each node knows the highest hi value in its subtree. Adding and removing an interval needs
+ * O(log n) time, finding the k intervals that overlap a given interval needs O(k log n) time.
+ */
+public class IntervalTree {
+	private static final class Node {
+		final int lo;
+		final int hi;
+		final int id;
+		final int priority;
+		int maxHi;
+		Node left;
+		Node right;
+
+		Node(int lo, int hi, int id, int priority) {
+			this.lo = lo;
+			this.hi = hi;
+			this.id = id;
+			this.priority = priority;
+			this.maxHi = hi;
+		}
+	}
+
+	private Node root;
+	private int size;
+	/** state of the xorshift generator for the priorities, fixed seed to make runs repeatable */
+	private int seed = 0x2545F491;
+
+	/**
+	 * Add an interval.
+	 * @param lo the lower bound (inclusive)
+	 * @param hi the upper bound (exclusive)
+	 * @param id the id of the interval, lo and id must be unique
+	 */
+	public void add(int lo, int hi, int id) {
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		root = insert(root, new Node(lo, hi, id, seed));
+		size++;
+	}
+
+	/**
+	 * Remove an interval.
+	 * @param lo the lower bound that was used with {@link #add(int, int, int)}
+	 * @param id the id that was used with {@link #add(int, int, int)}
+	 * @return true if the interval was found
+	 */
+	public boolean remove(int lo, int id) {
+		int oldSize = size;
+		root = delete(root, lo, id);
+		return size != oldSize;
+	}
+
+	/**
+	 * Find all intervals that have at least one value in common with [lo, hi).
+	 * @param lo the lower bound (inclusive)
+	 * @param hi the upper bound (exclusive)
+	 * @param result receives the ids of the found intervals in ascending order of their lower bound
+	 */
+	public void findOverlapping(int lo, int hi, IntArrayList result) {
+		find(root, lo, hi, result);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private static int compare(Node n, int lo, int id) {
+		if (n.lo != lo)
+			return n.lo < lo ? -1 : 1;
+		return Integer.compare(n.id, id);
+	}
+
+	private static void update(Node n) {
+		int max = n.hi;
+		if (n.left != null && n.left.maxHi > max)
+			max = n.left.maxHi;
+		if (n.right != null && n.right.maxHi > max)
+			max = n.right.maxHi;
+		n.maxHi = max;
+	}
+
+	private static Node rotateRight(Node n) {
+		Node l = n.left;
+		n.left = l.right;
+		l.right = n;
+		update(n);
+		update(l);
+		return l;
+	}
+
+	private static Node rotateLeft(Node n) {
+		Node r = n.right;
+		n.right = r.left;
+		r.left = n;
+		update(n);
+		update(r);
+		return r;
+	}
+
+	private static Node insert(Node n, Node newNode) {
+		if (n == null)
+			return newNode;
+		if (compare(newNode, n.lo, n.id) < 0) {
+			n.left = insert(n.left, newNode);
+			if (n.left.priority > n.priority)
+				return rotateRight(n);
+		} else {
+			n.right = insert(n.right, newNode);
+			if (n.right.priority > n.priority)
+				return rotateLeft(n);
+		}
+		update(n);
+		return n;
+	}
+
+	private Node delete(Node n, int lo, int id) {
+		if (n == null)
+			return null;
+		int cmp = compare(n, lo, id);
+		if (cmp > 0) {
+			n.left = delete(n.left, lo, id);
+		} else if (cmp < 0) {
+			n.right = delete(n.right, lo, id);
+		} else {
+			size--;
+			return merge(n.left, n.right);
+		}
+		update(n);
+		return n;
+	}
+
+	/** join two treaps, all keys in a are lower than the keys in b */
+	private static Node merge(Node a, Node b) {
+		if (a == null)
+			return b;
+		if (b == null)
+			return a;
+		if (a.priority > b.priority) {
+			a.right = merge(a.right, b);
+			update(a);
+			return a;
+		}
+		b.left = merge(a, b.left);
+		update(b);
+		return b;
+	}
+
+	private static void find(Node n, int lo, int hi, IntArrayList result) {
+		if (n == null || n.maxHi <= lo)
+			return;
+		find(n.left, lo, hi, result);
+		if (n.lo >= hi)
+			return; // all intervals in the right subtree start even later
+		if (n.hi > lo)
+			result.add(n.id);
+		find(n.right, lo, hi, result);
+	}
+}
@@ -162,7 +162,7 @@ public class Long2IntClosedMap implements Long2IntClosedMapFunction{
 			throw new IllegalArgumentException("random access on sequential-only map requested");
 		}
 		long topId = key >> TOP_ID_SHIFT;
-		int indexPos = Arrays.binarySearch(index.toLongArray(),0,index.size(),topId);
+		int indexPos = Arrays.binarySearch(index.elements(), 0, index.size(), topId);
 		if (indexPos < 0)
 			return -1;
 		int lowerBound = bounds.getInt(indexPos);
@@ -0,0 +1,408 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.tools;
+
+import java.io.File;
+import java.util.Arrays;
+
+import uk.me.parabola.splitter.Utils;
+
+/**
+ * Stores long/int pairs in a succinct form. Like {@link Long2IntClosedMap} the keys
+ * must be added in ascending order and the maximum number of pairs must be known.
+ * <p>
+ * The keys are stored in blocks of {@code BLOCK_SIZE} keys, each block is Elias-Fano encoded
+ * relative to its first key: the lower l bits of each delta are stored with a fixed number of bits,
+ * the upper bits are stored as unary coded gaps in a bit vector. For OSM ids this typically
+ * requires 2 + log2(average gap) bits per key. The keys of the last, incomplete block are kept
+ * in a plain array.
+ * The values are stored as offsets to the smallest value with the minimal number of bits,
+ * the array is re-packed when a larger value is stored.
+ * <p>
+ * Random access requires a binary search on the first keys of the blocks and a short
+ * scan in the block. The map stays in memory, {@link #switchToSeqAccess(File)} doesn't
+ * write a temp file and random access is still possible after it.
+ */
+public class Long2IntEliasFanoMap implements Long2IntClosedMapFunction {
+	private static final int BLOCK_SIZE = 128;
+
+	private final String name;
+	private final int maxSize;
+	private final int unassigned;
+	private int size;
+	private long lastKey = Long.MIN_VALUE;
+	private boolean readOnly;
+
+	// the encoded blocks
+	private int numBlocks;
+	private final long[] blockFirstKey;
+	private final long[] blockLowPos;
+	private final int[] blockHighWord;
+	private final byte[] blockLowBits;
+	private long[] lowBits = new long[16];
+	private long lowBitsUsed;
+	private long[] highBits = new long[16];
+	private int highWordsUsed;
+
+	// the keys of the incomplete last block
+	private final long[] pending = new long[BLOCK_SIZE];
+	private int numPending;
+
+	// bit packed values, stored as offset to valBase
+	private long[] vals;
+	private int valBits;
+	private int valBase;
+
+	// state for sequential access
+	private int seqPos;
+	private long seqKey;
+	private long seqBit;
+	private long seqZeros;
+
+	/**
+	 * @param name the name used in messages
+	 * @param maxSize the maximum number of pairs
+	 * @param unassigned the value that is returned for unknown keys
+	 */
+	public Long2IntEliasFanoMap(String name, int maxSize, int unassigned) {
+		this.name = name;
+		this.maxSize = maxSize;
+		this.unassigned = unassigned;
+		int maxBlocks = maxSize / BLOCK_SIZE + 1;
+		blockFirstKey = new long[maxBlocks];
+		blockLowPos = new long[maxBlocks];
+		blockHighWord = new int[maxBlocks];
+		blockLowBits = new byte[maxBlocks];
+		valBase = unassigned;
+		close();
+	}
+
+	@Override
+	public int add(long key, int val) {
+		if (readOnly) {
+			throw new IllegalArgumentException(name + ": Add on read-only map requested");
+		}
+		if (size > 0 && lastKey >= key)
+			throw new IllegalArgumentException("New " + name + " id " + key + " is not higher than last id " + lastKey);
+		if (size + 1 > maxSize)
+			throw new IllegalArgumentException(name + " Map is full.");
+		pending[numPending++] = key;
+		lastKey = key;
+		int pos = size;
+		setVal(pos, val);
+		size++;
+		if (numPending == BLOCK_SIZE)
+			encodeBlock();
+		return pos;
+	}
+
+	/**
+	 * Elias-Fano encode the keys in the pending array.
+	 */
+	private void encodeBlock() {
+		long base = pending[0];
+		long range = pending[BLOCK_SIZE - 1] - base;
+		long avgGap = (range + 1) / BLOCK_SIZE;
+		int l = avgGap == 0 ? 0 : 63 - Long.numberOfLeadingZeros(avgGap);
+		long highLen = BLOCK_SIZE + (range >>> l) + 1;
+		int highWords = (int) ((highLen + 63) >>> 6);
+		lowBits = ensureCapacity(lowBits, (lowBitsUsed + (long) BLOCK_SIZE * l + 63) >>> 6);
+		highBits = ensureCapacity(highBits, (long) highWordsUsed + highWords);
+
+		blockFirstKey[numBlocks] = base;
+		blockLowPos[numBlocks] = lowBitsUsed;
+		blockHighWord[numBlocks] = highWordsUsed;
+		blockLowBits[numBlocks] = (byte) l;
+		long highStart = (long) highWordsUsed << 6;
+		for (int i = 0; i < BLOCK_SIZE; i++) {
+			long delta = pending[i] - base;
+			setBits(lowBits, lowBitsUsed, delta, l);
+			lowBitsUsed += l;
+			long bit = highStart + (delta >>> l) + i;
+			highBits[(int) (bit >>> 6)] |= 1L << (bit & 63);
+		}
+		highWordsUsed += highWords;
+		numBlocks++;
+		numPending = 0;
+	}
+
+	private static long[] ensureCapacity(long[] arr, long neededWords) {
+		if (neededWords <= arr.length)
+			return arr;
+		long newLen = Math.max(neededWords, arr.length + (arr.length >> 1));
+		if (newLen > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Map is too large");
+		return Arrays.copyOf(arr, (int) newLen);
+	}
+
+	private static long mask(int nBits) {
+		return nBits == 64 ? -1L : (1L << nBits) - 1;
+	}
+
+	/**
+	 * Write nBits of the value into the array, the bits must be cleared before.
+	 */
+	private static void setBits(long[] arr, long bitPos, long val, int nBits) {
+		if (nBits == 0)
+			return;
+		val &= mask(nBits);
+		int w = (int) (bitPos >>> 6);
+		int off = (int) (bitPos & 63);
+		arr[w] |= val << off;
+		if (off + nBits > 64)
+			arr[w + 1] |= val >>> (64 - off);
+	}
+
+	private static void clearBits(long[] arr, long bitPos, int nBits) {
+		if (nBits == 0)
+			return;
+		long m = mask(nBits);
+		int w = (int) (bitPos >>> 6);
+		int off = (int) (bitPos & 63);
+		arr[w] &= ~(m << off);
+		if (off + nBits > 64)
+			arr[w + 1] &= ~(m >>> (64 - off));
+	}
+
+	private static long getBits(long[] arr, long bitPos, int nBits) {
+		if (nBits == 0)
+			return 0;
+		int w = (int) (bitPos >>> 6);
+		int off = (int) (bitPos & 63);
+		long v = arr[w] >>> off;
+		if (off + nBits > 64)
+			v |= arr[w + 1] << (64 - off);
+		return v & mask(nBits);
+	}
+
+	private int getVal(int pos) {
+		if (valBits == 0)
+			return valBase;
+		return (int) (valBase + getBits(vals, (long) pos * valBits, valBits));
+	}
+
+	private void setVal(int pos, int val) {
+		long offset = (long) val - valBase;
+		if (offset < 0 || (offset >>> valBits) != 0) {
+			repack(val);
+			offset = (long) val - valBase;
+		}
+		if (valBits == 0)
+			return;
+		long bitPos = (long) pos * valBits;
+		clearBits(vals, bitPos, valBits);
+		setBits(vals, bitPos, offset, valBits);
+	}
+
+	/**
+	 * Increase the number of bits for the values so that the given value can be stored.
+	 * @param val the new value
+	 */
+	private void repack(int val) {
+		long maxVal = valBits == 0 ? valBase : valBase + mask(valBits);
+		int newBase = Math.min(valBase, val);
+		maxVal = Math.max(maxVal, val);
+		int newBits = 64 - Long.numberOfLeadingZeros(maxVal - newBase);
+		long[] newVals = new long[(int) (((long) maxSize * newBits + 63) >>> 6)];
+		long unassignedOffset = (long) unassigned - newBase;
+		for (int i = 0; i < maxSize; i++) {
+			// positions which are not yet used contain the unassigned value
+			long offset = (i < size) ? (long) getVal(i) - newBase : unassignedOffset;
+			setBits(newVals, (long) i * newBits, offset, newBits);
+		}
+		vals = newVals;
+		valBits = newBits;
+		valBase = newBase;
+	}
+
+	@Override
+	public int getRandom(long key) {
+		int pos = getKeyPos(key);
+		if (pos >= 0)
+			return getVal(pos);
+		return unassigned;
+	}
+
+	@Override
+	public int getKeyPos(long key) {
+		if (size == 0 || key > lastKey)
+			return -1;
+		if (numPending > 0 && key >= pending[0]) {
+			int pos = Arrays.binarySearch(pending, 0, numPending, key);
+			return pos < 0 ? -1 : numBlocks * BLOCK_SIZE + pos;
+		}
+		int b = Arrays.binarySearch(blockFirstKey, 0, numBlocks, key);
+		if (b >= 0)
+			return b * BLOCK_SIZE;
+		b = -b - 2;
+		if (b < 0)
+			return -1;
+		return findInBlock(b, key);
+	}
+
+	/**
+	 * Find the key in the given block.
+	 * @param b the block
+	 * @param key the key, not smaller than the first key in the block
+	 * @return the position or -1 if not found
+	 */
+	private int findInBlock(int b, long key) {
+		long delta = key - blockFirstKey[b];
+		int l = blockLowBits[b];
+		long high = delta >>> l;
+		long low = delta & mask(l);
+		long segStart = (long) blockHighWord[b] << 6;
+		// skip the unary coded high parts of all smaller keys, that is find the position behind the high-th zero
+		long bit = segStart;
+		if (high > 0) {
+			int w = blockHighWord[b];
+			long k = high;
+			while (true) {
+				if (w >= highWordsUsed)
+					return -1;
+				long inv = ~highBits[w];
+				int zeros = Long.bitCount(inv);
+				if (zeros >= k) {
+					for (int j = 1; j < k; j++)
+						inv &= inv - 1;
+					bit = ((long) w << 6) + Long.numberOfTrailingZeros(inv) + 1;
+					break;
+				}
+				k -= zeros;
+				w++;
+			}
+		}
+		// the following one bits are the keys with the same high part
+		while (true) {
+			int w = (int) (bit >>> 6);
+			if (w >= highWordsUsed || (highBits[w] & (1L << (bit & 63))) == 0)
+				return -1;
+			int i = (int) (bit - segStart - high);
+			if (i >= BLOCK_SIZE)
+				return -1;
+			long lowVal = getBits(lowBits, blockLowPos[b] + (long) i * l, l);
+			if (lowVal == low)
+				return b * BLOCK_SIZE + i;
+			if (lowVal > low)
+				return -1;
+			bit++;
+		}
+	}
+
+	/**
+	 * Decode the key at the next position, the position must be valid.
+	 */
+	private long nextSeqKey() {
+		seqPos++;
+		int b = seqPos / BLOCK_SIZE;
+		if (b >= numBlocks)
+			return pending[seqPos - numBlocks * BLOCK_SIZE];
+		int i = seqPos % BLOCK_SIZE;
+		if (i == 0) {
+			seqBit = (long) blockHighWord[b] << 6;
+			seqZeros = 0;
+		}
+		while (true) {
+			long word = highBits[(int) (seqBit >>> 6)] >>> (seqBit & 63);
+			if (word != 0) {
+				int tz = Long.numberOfTrailingZeros(word);
+				seqZeros += tz;
+				seqBit += tz + 1;
+				break;
+			}
+			int skip = 64 - (int) (seqBit & 63);
+			seqZeros += skip;
+			seqBit += skip;
+		}
+		int l = blockLowBits[b];
+		return blockFirstKey[b] + ((seqZeros << l) | getBits(lowBits, blockLowPos[b] + (long) i * l, l));
+	}
+
+	@Override
+	public int getSeq(long key) {
+		while (seqKey < key) {
+			if (seqPos + 1 >= size) {
+				seqKey = Long.MAX_VALUE;
+				break;
+			}
+			seqKey = nextSeqKey();
+		}
+		if (seqKey != key)
+			return unassigned;
+		return getVal(seqPos);
+	}
+
+	@Override
+	public long size() {
+		return size;
+	}
+
+	@Override
+	public int defaultReturnValue() {
+		return unassigned;
+	}
+
+	@Override
+	public void finish() {
+		close();
+	}
+
+	@Override
+	public void close() {
+		seqPos = -1;
+		seqKey = Long.MIN_VALUE;
+	}
+
+	/**
+	 * Makes the map read only. The data stays in memory, random access is still possible.
+	 */
+	@Override
+	public void switchToSeqAccess(File directory) {
+		readOnly = true;
+		lowBits = Arrays.copyOf(lowBits, (int) ((lowBitsUsed + 63) >>> 6));
+		highBits = Arrays.copyOf(highBits, highWordsUsed);
+		close();
+	}
+
+	@Override
+	public int replace(long key, int val) {
+		if (readOnly) {
+			throw new IllegalArgumentException("replace on read-only map requested");
+		}
+		int pos = getKeyPos(key);
+		if (pos < 0)
+			throw new IllegalArgumentException("replace on unknown key requested");
+		int oldVal = getVal(pos);
+		setVal(pos, val);
+		return oldVal;
+	}
+
+	/**
+	 * @return the estimated number of bytes used by this map
+	 */
+	long getEstimatedBytes() {
+		long bytes = (long) blockFirstKey.length * (8 + 8 + 4 + 1);
+		bytes += (long) (lowBits.length + highBits.length + pending.length) * 8;
+		if (vals != null)
+			bytes += (long) vals.length * 8;
+		return bytes;
+	}
+
+	@Override
+	public void stats(String prefix) {
+		long bytes = getEstimatedBytes();
+		System.out.println(prefix + name + "WriterMap contains " + Utils.format(size) + " pairs, requires ~"
+				+ Utils.format(bytes) + " bytes" + (size == 0 ? "." : ", " + (bytes * 8 / size) + " bits per pair."));
+	}
+}
@@ -0,0 +1,42 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+/**
+ * Stores long/int pairs, the keys can be added in any order.
+ * Implemented by {@link SparseLong2IntMap} and by the thread-safe {@link ConcurrentSparseLong2IntMap}.
+ */
+public interface Long2IntMapFunction {
+	/**
+	 * Add or replace a pair.
+	 * @param key the key
+	 * @param val the value, must not be the {@code unassigned} value
+	 * @return the previously stored value or the {@code unassigned} value
+	 */
+	public int put(long key, int val);
+	/**
+	 * @param key the key
+	 * @return the value to which the given key is mapped or the {@code unassigned} value
+	 */
+	public int get(long key);
+	public boolean containsKey(long key);
+	public void clear();
+	public long size();
+	public int defaultReturnValue();
+	public void defaultReturnValue(int arg0);
+	/**
+	 * calculate and print performance values regarding memory.
+	 * @param msgLevel higher values print more details
+	 */
+	public void stats(int msgLevel);
+}
@@ -0,0 +1,318 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+import it.unimi.dsi.fastutil.HashCommon;
+
+/**
+ * A thread-safe cache of long/long pairs with a maximum number of entries.
+ * The pairs are stored in open addressing hash tables with linear probing,
+ * the tables are allocated with the first pair and grow as needed up to the size required
+ * for the maximum number of entries.
+ * When the cache is full, an entry is evicted with the clock algorithm: each entry
+ * has a reference bit which is set when the entry is found or updated, the clock hand clears the
+ * bits and evicts the first entry that wasn't used since the last round. New entries
+ * start without the bit, so entries which are never used again are evicted first.
+ * <p>
+ * The key space is distributed to a number of segments by the hash of the key, each segment has
+ * its own table and clock hand. Threads that access the same segment are serialised by the monitor of the segment.
+ * The cache counts hits, misses, and evictions to allow tuning of the size.
+ */
+public final class Long2LongClockCache {
+	private static final int MIN_CAPACITY = 1 << 10;
+	private static final int MAX_SEGMENT_SIZE = 1 << 29;
+	private static final byte FREE = 0;
+	private static final byte USED = 1;
+	private static final byte REFERENCED = 2;
+
+	private final Segment[] segments;
+	private final int segmentShift;
+	private long defaultReturnValue;
+
+	/**
+	 * Create a cache.
+	 * @param maxSize the maximum number of entries
+	 * @param numThreads the number of threads that are expected to use the cache concurrently
+	 */
+	public Long2LongClockCache(int maxSize, int numThreads) {
+		if (maxSize < 1)
+			throw new IllegalArgumentException("maximum size of cache must be positive");
+		int numSegments = numThreads <= 1 ? 1 : Integer.highestOneBit(Math.min(64, numThreads * 4) - 1) << 1;
+		segmentShift = Long.SIZE - Integer.numberOfTrailingZeros(numSegments);
+		segments = new Segment[numSegments];
+		int maxSegmentSize = Math.max(1, Math.min(MAX_SEGMENT_SIZE, maxSize / numSegments));
+		for (int i = 0; i < numSegments; i++) {
+			segments[i] = new Segment(maxSegmentSize);
+		}
+	}
+
+	private Segment getSegment(long hash) {
+		// the table positions are calculated from the lower bits of the hash
+		return segments.length == 1 ? segments[0] : segments[(int) (hash >>> segmentShift)];
+	}
+
+	/**
+	 * @param key the key
+	 * @return the value to which the given key is mapped or the default return value
+	 */
+	public long get(long key) {
+		long hash = HashCommon.murmurHash3(key);
+		return getSegment(hash).get(key, (int) hash, defaultReturnValue);
+	}
+
+	/**
+	 * Add or replace a pair. If the cache is full, another pair is evicted.
+	 * @param key the key
+	 * @param val the value
+	 */
+	public void put(long key, long val) {
+		long hash = HashCommon.murmurHash3(key);
+		getSegment(hash).put(key, (int) hash, val, false);
+	}
+
+	/**
+	 * Add a pair or replace the value of an existing pair if the new value is lower.
+	 * If the cache is full, another pair is evicted.
+	 * @param key the key
+	 * @param val the value
+	 */
+	public void putMin(long key, long val) {
+		long hash = HashCommon.murmurHash3(key);
+		getSegment(hash).put(key, (int) hash, val, true);
+	}
+
+	/**
+	 * Add all pairs of another cache. For keys which are already in this cache the lower value is kept.
+	 * @param other the other cache, it must not be changed while the pairs are added
+	 */
+	public void putAllMin(Long2LongClockCache other) {
+		for (Segment s : other.segments) {
+			synchronized (s) {
+				if (s.keys == null)
+					continue;
+				for (int i = 0; i < s.states.length; i++) {
+					if (s.states[i] != FREE)
+						putMin(s.keys[i], s.values[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove all pairs and release the memory of the tables. The statistics are kept.
+	 */
+	public void clear() {
+		for (Segment s : segments) {
+			s.clear();
+		}
+	}
+
+	/**
+	 * @return the number of pairs in the cache
+	 */
+	public long size() {
+		long size = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				size += s.size;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of calls of {@link #get(long)} which found the key
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				hits += s.hits;
+			}
+		}
+		return hits;
+	}
+
+	/**
+	 * @return the number of calls of {@link #get(long)} which didn't find the key
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				misses += s.misses;
+			}
+		}
+		return misses;
+	}
+
+	/**
+	 * @return the number of pairs which were removed to make room for new pairs
+	 */
+	public long getEvictions() {
+		long evictions = 0;
+		for (Segment s : segments) {
+			synchronized (s) {
+				evictions += s.evictions;
+			}
+		}
+		return evictions;
+	}
+
+	public long defaultReturnValue() {
+		return defaultReturnValue;
+	}
+
+	public void defaultReturnValue(long val) {
+		defaultReturnValue = val;
+	}
+
+	private static final class Segment {
+		private final int maxSize;
+		/** the capacity that keeps the load factor at or below 0.5 when the segment is full */
+		private final int maxCapacity;
+		private long[] keys;
+		private long[] values;
+		private byte[] states;
+		private int mask;
+		private int size;
+		private int hand;
+		private long hits;
+		private long misses;
+		private long evictions;
+
+		Segment(int maxSize) {
+			this.maxSize = maxSize;
+			maxCapacity = (int) Math.max(MIN_CAPACITY, HashCommon.nextPowerOfTwo(2L * maxSize));
+		}
+
+		private void allocate(int capacity) {
+			keys = new long[capacity];
+			values = new long[capacity];
+			states = new byte[capacity];
+			mask = capacity - 1;
+		}
+
+		private int find(long key, int pos) {
+			while (states[pos] != FREE) {
+				if (keys[pos] == key)
+					return pos;
+				pos = (pos + 1) & mask;
+			}
+			return -pos - 1;
+		}
+
+		synchronized long get(long key, int hash, long defaultReturnValue) {
+			int pos = keys == null ? -1 : find(key, hash & mask);
+			if (pos < 0) {
+				misses++;
+				return defaultReturnValue;
+			}
+			hits++;
+			states[pos] = REFERENCED;
+			return values[pos];
+		}
+
+		synchronized void put(long key, int hash, long val, boolean keepLower) {
+			if (keys == null)
+				allocate(MIN_CAPACITY);
+			int pos = find(key, hash & mask);
+			if (pos >= 0) {
+				if (!keepLower || val < values[pos])
+					values[pos] = val;
+				states[pos] = REFERENCED;
+				return;
+			}
+			if (size >= maxSize) {
+				evict();
+				pos = find(key, hash & mask);
+			} else if (2 * (size + 1) > keys.length && keys.length < maxCapacity) {
+				rehash(keys.length * 2);
+				pos = find(key, hash & mask);
+			}
+			pos = -pos - 1;
+			keys[pos] = key;
+			values[pos] = val;
+			states[pos] = USED;
+			size++;
+		}
+
+		private void rehash(int capacity) {
+			long[] oldKeys = keys;
+			long[] oldValues = values;
+			byte[] oldStates = states;
+			allocate(capacity);
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldStates[i] != FREE) {
+					int pos = -find(oldKeys[i], (int) HashCommon.murmurHash3(oldKeys[i]) & mask) - 1;
+					keys[pos] = oldKeys[i];
+					values[pos] = oldValues[i];
+					states[pos] = oldStates[i];
+				}
+			}
+			hand = 0;
+		}
+
+		/**
+		 * Move the clock hand to the next entry that wasn't referenced and remove it.
+		 */
+		private void evict() {
+			while (true) {
+				if (states[hand] == REFERENCED) {
+					states[hand] = USED;
+				} else if (states[hand] == USED) {
+					// the slot may be filled again by shifting, it is visited again in the next call
+					remove(hand);
+					evictions++;
+					return;
+				}
+				hand = (hand + 1) & mask;
+			}
+		}
+
+		/**
+		 * Remove the entry at the given position and shift the following entries of the
+		 * probe sequence so that all entries can still be found.
+		 */
+		private void remove(int pos) {
+			size--;
+			while (true) {
+				int last = pos;
+				pos = (pos + 1) & mask;
+				long curr;
+				while (true) {
+					if (states[pos] == FREE) {
+						states[last] = FREE;
+						return;
+					}
+					curr = keys[pos];
+					int slot = (int) HashCommon.murmurHash3(curr) & mask;
+					if (last <= pos ? last >= slot || slot > pos : last >= slot && slot > pos)
+						break;
+					pos = (pos + 1) & mask;
+				}
+				keys[last] = curr;
+				values[last] = values[pos];
+				states[last] = states[pos];
+			}
+		}
+
+		synchronized void clear() {
+			keys = null;
+			values = null;
+			states = null;
+			size = 0;
+			hand = 0;
+		}
+	}
+}
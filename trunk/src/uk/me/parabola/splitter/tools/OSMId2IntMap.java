@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+import it.unimi.dsi.fastutil.ints.Int2IntMap;
+import it.unimi.dsi.fastutil.ints.Int2IntOpenHashMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+
+/**
+ * A memory efficient Map implementation that stores an OSM id with an int value.
+ * Uses the same split of the key as {@link OSMId2ObjectMap}, but the values
+ * are stored as primitives, so no Integer objects are created.
+ */
+public class OSMId2IntMap {
+	private static final long LOW_ID_MASK = OSMId2ObjectMap.LOW_ID_MASK;
+	private static final int TOP_ID_SHIFT = Long.numberOfTrailingZeros(OSMId2ObjectMap.TOP_ID_MASK);
+
+	/** Receives the entries of the map. */
+	public interface EntryConsumer {
+		void accept(long key, int val);
+	}
+
+	private final Long2ObjectOpenHashMap<Int2IntOpenHashMap> topMap = new Long2ObjectOpenHashMap<>();
+	private final int unassigned;
+	private int size;
+
+	/**
+	 * @param unassigned the value that is returned for keys which are not in the map
+	 */
+	public OSMId2IntMap(int unassigned) {
+		this.unassigned = unassigned;
+	}
+
+	/**
+	 * @return the previous value or the {@code unassigned} value
+	 */
+	public int put(long key, int val) {
+		long topId = key >> TOP_ID_SHIFT;
+		Int2IntOpenHashMap midMap = topMap.get(topId);
+		if (midMap == null) {
+			midMap = new Int2IntOpenHashMap();
+			midMap.defaultReturnValue(unassigned);
+			topMap.put(topId, midMap);
+		}
+		int midId = (int) (key & LOW_ID_MASK);
+		int oldSize = midMap.size();
+		int old = midMap.put(midId, val);
+		size += midMap.size() - oldSize;
+		return old;
+	}
+
+	/**
+	 * @return the value or the {@code unassigned} value
+	 */
+	public int get(long key) {
+		Int2IntOpenHashMap midMap = topMap.get(key >> TOP_ID_SHIFT);
+		if (midMap == null)
+			return unassigned;
+		return midMap.get((int) (key & LOW_ID_MASK));
+	}
+
+	/**
+	 * @return the removed value or the {@code unassigned} value
+	 */
+	public int remove(long key) {
+		long topId = key >> TOP_ID_SHIFT;
+		Int2IntOpenHashMap midMap = topMap.get(topId);
+		if (midMap == null)
+			return unassigned;
+		int midId = (int) (key & LOW_ID_MASK);
+		if (!midMap.containsKey(midId))
+			return unassigned;
+		int old = midMap.remove(midId);
+		if (midMap.isEmpty())
+			topMap.remove(topId);
+		size--;
+		return old;
+	}
+
+	public boolean containsKey(long key) {
+		Int2IntOpenHashMap midMap = topMap.get(key >> TOP_ID_SHIFT);
+		return midMap != null && midMap.containsKey((int) (key & LOW_ID_MASK));
+	}
+
+	/**
+	 * Pass all entries to the consumer. The order is not defined.
+	 * @param consumer the consumer
+	 */
+	public void forEach(EntryConsumer consumer) {
+		for (Long2ObjectMap.Entry<Int2IntOpenHashMap> top : topMap.long2ObjectEntrySet()) {
+			long topVal = top.getLongKey() << TOP_ID_SHIFT;
+			for (Int2IntMap.Entry e : top.getValue().int2IntEntrySet()) {
+				consumer.accept(topVal | (e.getIntKey() & LOW_ID_MASK), e.getIntValue());
+			}
+		}
+	}
+
+	public void clear() {
+		topMap.clear();
+		size = 0;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public int defaultReturnValue() {
+		return unassigned;
+	}
+}
@@ -0,0 +1,609 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+import it.unimi.dsi.fastutil.longs.AbstractLongIterator;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import uk.me.parabola.splitter.SplitFailedException;
+
+/**
+ * A compressed BitSet for long values, organised like a Roaring bitmap.
+ * The upper 48 bits of a key select a container which stores the lower 16 bits.
+ * A container is either a sorted array (up to 4096 values), a bitmap with 65536 bits
+ * or a list of runs. Sparse groups of ids need 2 bytes per id, dense groups
+ * need 1 bit per id and long ranges of consecutive ids need only a few bytes.
+ * Run containers are only created by {@link #runOptimize()}.
+ * <p>
+ * Compared to {@link SparseBitSet} this needs much less memory for the typical
+ * clusters of OSM ids and allows ordered iteration and union.
+ */
+public class RoaringBitSet {
+	private static final int CONTAINER_BITS = 16;
+	private static final int LOW_MASK = (1 << CONTAINER_BITS) - 1;
+	/** an array container with more values would need more memory than a bitmap */
+	private static final int MAX_ARRAY = 4096;
+
+	private final Long2ObjectOpenHashMap<Container> containers = new Long2ObjectOpenHashMap<>();
+	private long bitCount;
+	// the last used container, OSM ids are often accessed in groups
+	private long lastHigh = Long.MIN_VALUE;
+	private Container lastContainer;
+
+	private Container getContainer(long high) {
+		if (high != lastHigh || lastContainer == null) {
+			lastContainer = containers.get(high);
+			lastHigh = high;
+		}
+		return lastContainer;
+	}
+
+	private void putContainer(long high, Container c) {
+		containers.put(high, c);
+		lastHigh = high;
+		lastContainer = c;
+	}
+
+	public void set(long key) {
+		long high = key >> CONTAINER_BITS;
+		char low = (char) (key & LOW_MASK);
+		Container c = getContainer(high);
+		if (c == null) {
+			c = new ArrayContainer();
+			putContainer(high, c);
+		}
+		int oldCard = c.cardinality();
+		Container nc = c.add(low);
+		if (nc != c)
+			putContainer(high, nc);
+		bitCount += nc.cardinality() - oldCard;
+	}
+
+	public void clear(long key) {
+		long high = key >> CONTAINER_BITS;
+		Container c = getContainer(high);
+		if (c == null)
+			return;
+		int oldCard = c.cardinality();
+		Container nc = c.remove((char) (key & LOW_MASK));
+		bitCount += nc.cardinality() - oldCard;
+		if (nc.cardinality() == 0) {
+			containers.remove(high);
+			lastContainer = null;
+		} else if (nc != c) {
+			putContainer(high, nc);
+		}
+	}
+
+	public boolean get(long key) {
+		Container c = getContainer(key >> CONTAINER_BITS);
+		return c != null && c.contains((char) (key & LOW_MASK));
+	}
+
+	public void clear() {
+		containers.clear();
+		lastContainer = null;
+		bitCount = 0;
+	}
+
+	public int cardinality() {
+		if (bitCount > Integer.MAX_VALUE)
+			throw new SplitFailedException("cardinality too high for int " + bitCount);
+		return (int) bitCount;
+	}
+
+	/**
+	 * Add all values of the other set to this set.
+	 * @param other the other set, it is not modified
+	 */
+	public void or(RoaringBitSet other) {
+		for (Long2ObjectMap.Entry<Container> e : other.containers.long2ObjectEntrySet()) {
+			Container mine = containers.get(e.getLongKey());
+			Container res = Container.union(mine, e.getValue());
+			bitCount += res.cardinality() - (mine == null ? 0 : mine.cardinality());
+			containers.put(e.getLongKey(), res);
+		}
+		lastContainer = null;
+	}
+
+	/**
+	 * Convert containers to run containers where this saves memory.
+	 * Should be called when the set is completely filled.
+	 */
+	public void runOptimize() {
+		for (Long2ObjectMap.Entry<Container> e : containers.long2ObjectEntrySet()) {
+			Container c = e.getValue();
+			int numRuns = c.numRuns();
+			if (RunContainer.bytesFor(numRuns) < c.getBytes())
+				e.setValue(RunContainer.fromContainer(c, numRuns));
+		}
+		lastContainer = null;
+	}
+
+	/**
+	 * @return the estimated number of bytes used by the containers
+	 */
+	public long getEstimatedBytes() {
+		// a hash map entry needs a long key and a reference
+		long bytes = (long) containers.size() * 16;
+		for (Container c : containers.values())
+			bytes += c.getBytes();
+		return bytes;
+	}
+
+	/**
+	 * @return an iterator which returns the set values in ascending order.
+	 * The set must not be modified while the iterator is used.
+	 */
+	public LongIterator iterator() {
+		final long[] highs = containers.keySet().toLongArray();
+		Arrays.sort(highs);
+		return new AbstractLongIterator() {
+			private int highPos = -1;
+			private Container c;
+			private int nextLow = -1;
+
+			{
+				advance(0);
+			}
+
+			private void advance(int from) {
+				while (true) {
+					if (c != null && from <= LOW_MASK) {
+						nextLow = c.nextValue(from);
+						if (nextLow >= 0)
+							return;
+					}
+					if (++highPos >= highs.length) {
+						nextLow = -1;
+						return;
+					}
+					c = containers.get(highs[highPos]);
+					from = 0;
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return nextLow >= 0;
+			}
+
+			@Override
+			public long nextLong() {
+				if (nextLow < 0)
+					throw new NoSuchElementException();
+				long res = (highs[highPos] << CONTAINER_BITS) | nextLow;
+				advance(nextLow + 1);
+				return res;
+			}
+		};
+	}
+
+	/**
+	 * Stores the lower 16 bits of the keys. The modifying methods return the
+	 * container which has to be used afterwards.
+	 */
+	abstract static class Container {
+		abstract Container add(char x);
+		abstract Container remove(char x);
+		abstract boolean contains(char x);
+		abstract int cardinality();
+		/** @return the smallest value &gt;= from or -1 */
+		abstract int nextValue(int from);
+		/** set the bits of all values in the bitmap */
+		abstract void orInto(long[] bits);
+		abstract int numRuns();
+		abstract int getBytes();
+		abstract Container copy();
+
+		static Container union(Container a, Container b) {
+			if (a == null)
+				return b.copy();
+			if (a instanceof ArrayContainer && b instanceof ArrayContainer
+					&& a.cardinality() + b.cardinality() <= MAX_ARRAY) {
+				return ((ArrayContainer) a).merge((ArrayContainer) b);
+			}
+			BitmapContainer res = new BitmapContainer();
+			a.orInto(res.bits);
+			b.orInto(res.bits);
+			res.recount();
+			return res.card <= MAX_ARRAY ? res.toArray() : res;
+		}
+	}
+
+	static final class ArrayContainer extends Container {
+		private char[] content;
+		private int card;
+
+		ArrayContainer() {
+			content = new char[4];
+		}
+
+		ArrayContainer(char[] content, int card) {
+			this.content = content;
+			this.card = card;
+		}
+
+		@Override
+		Container add(char x) {
+			int pos = Arrays.binarySearch(content, 0, card, x);
+			if (pos >= 0)
+				return this;
+			if (card >= MAX_ARRAY)
+				return toBitmap().add(x);
+			pos = -pos - 1;
+			if (card == content.length)
+				content = Arrays.copyOf(content, Math.min(MAX_ARRAY, card + (card >> 1) + 4));
+			System.arraycopy(content, pos, content, pos + 1, card - pos);
+			content[pos] = x;
+			card++;
+			return this;
+		}
+
+		@Override
+		Container remove(char x) {
+			int pos = Arrays.binarySearch(content, 0, card, x);
+			if (pos >= 0) {
+				System.arraycopy(content, pos + 1, content, pos, card - pos - 1);
+				card--;
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char x) {
+			return Arrays.binarySearch(content, 0, card, x) >= 0;
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		int nextValue(int from) {
+			int pos = Arrays.binarySearch(content, 0, card, (char) from);
+			if (pos < 0)
+				pos = -pos - 1;
+			return pos < card ? content[pos] : -1;
+		}
+
+		@Override
+		void orInto(long[] bits) {
+			for (int i = 0; i < card; i++)
+				bits[content[i] >>> 6] |= 1L << content[i];
+		}
+
+		@Override
+		int numRuns() {
+			int runs = card == 0 ? 0 : 1;
+			for (int i = 1; i < card; i++) {
+				if (content[i] != content[i - 1] + 1)
+					runs++;
+			}
+			return runs;
+		}
+
+		@Override
+		int getBytes() {
+			return 24 + content.length * 2;
+		}
+
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(content, card), card);
+		}
+
+		BitmapContainer toBitmap() {
+			BitmapContainer bc = new BitmapContainer();
+			orInto(bc.bits);
+			bc.card = card;
+			return bc;
+		}
+
+		ArrayContainer merge(ArrayContainer other) {
+			char[] res = new char[card + other.card];
+			int i = 0, j = 0, n = 0;
+			while (i < card && j < other.card) {
+				char a = content[i];
+				char b = other.content[j];
+				if (a <= b) {
+					res[n++] = a;
+					i++;
+					if (a == b)
+						j++;
+				} else {
+					res[n++] = b;
+					j++;
+				}
+			}
+			while (i < card)
+				res[n++] = content[i++];
+			while (j < other.card)
+				res[n++] = other.content[j++];
+			return new ArrayContainer(res, n);
+		}
+	}
+
+	static final class BitmapContainer extends Container {
+		private final long[] bits = new long[(1 << CONTAINER_BITS) / 64];
+		private int card;
+
+		@Override
+		Container add(char x) {
+			long mask = 1L << x;
+			if ((bits[x >>> 6] & mask) == 0) {
+				bits[x >>> 6] |= mask;
+				card++;
+			}
+			return this;
+		}
+
+		@Override
+		Container remove(char x) {
+			long mask = 1L << x;
+			if ((bits[x >>> 6] & mask) != 0) {
+				bits[x >>> 6] &= ~mask;
+				card--;
+				// convert only when much smaller, so that changes near the limit don't convert each time
+				if (card <= MAX_ARRAY / 2)
+					return toArray();
+			}
+			return this;
+		}
+
+		@Override
+		boolean contains(char x) {
+			return (bits[x >>> 6] & (1L << x)) != 0;
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		int nextValue(int from) {
+			int w = from >>> 6;
+			long word = bits[w] & (-1L << from);
+			while (word == 0) {
+				if (++w >= bits.length)
+					return -1;
+				word = bits[w];
+			}
+			return w * 64 + Long.numberOfTrailingZeros(word);
+		}
+
+		@Override
+		void orInto(long[] target) {
+			for (int i = 0; i < bits.length; i++)
+				target[i] |= bits[i];
+		}
+
+		@Override
+		int numRuns() {
+			int runs = 0;
+			long prev = 0;
+			for (long word : bits) {
+				// count the bits which start a run
+				runs += Long.bitCount(word & ~((word << 1) | (prev >>> 63)));
+				prev = word;
+			}
+			return runs;
+		}
+
+		@Override
+		int getBytes() {
+			return 24 + bits.length * 8;
+		}
+
+		@Override
+		Container copy() {
+			BitmapContainer bc = new BitmapContainer();
+			System.arraycopy(bits, 0, bc.bits, 0, bits.length);
+			bc.card = card;
+			return bc;
+		}
+
+		void recount() {
+			card = 0;
+			for (long word : bits)
+				card += Long.bitCount(word);
+		}
+
+		ArrayContainer toArray() {
+			char[] content = new char[card];
+			int n = 0;
+			for (int w = 0; w < bits.length; w++) {
+				long word = bits[w];
+				while (word != 0) {
+					content[n++] = (char) (w * 64 + Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+			return new ArrayContainer(content, n);
+		}
+	}
+
+	/**
+	 * Stores runs of consecutive values as pairs of start value and length-1.
+	 */
+	static final class RunContainer extends Container {
+		private char[] runs;
+		private int numRuns;
+		private int card;
+
+		private RunContainer(char[] runs, int numRuns, int card) {
+			this.runs = runs;
+			this.numRuns = numRuns;
+			this.card = card;
+		}
+
+		static int bytesFor(int numRuns) {
+			return 24 + numRuns * 4;
+		}
+
+		static RunContainer fromContainer(Container c, int numRuns) {
+			char[] runs = new char[numRuns * 2];
+			int n = 0;
+			int v = c.nextValue(0);
+			while (v >= 0) {
+				int end = v;
+				while (end < LOW_MASK && c.contains((char) (end + 1)))
+					end++;
+				runs[n++] = (char) v;
+				runs[n++] = (char) (end - v);
+				v = end < LOW_MASK ? c.nextValue(end + 1) : -1;
+			}
+			return new RunContainer(runs, n / 2, c.cardinality());
+		}
+
+		private int start(int i) {
+			return runs[2 * i];
+		}
+
+		private int end(int i) {
+			return runs[2 * i] + runs[2 * i + 1];
+		}
+
+		/** @return the index of the last run that starts at or before x, or -1 */
+		private int findRun(int x) {
+			int lo = 0;
+			int hi = numRuns - 1;
+			while (lo <= hi) {
+				int mid = (lo + hi) >>> 1;
+				if (start(mid) <= x)
+					lo = mid + 1;
+				else
+					hi = mid - 1;
+			}
+			return hi;
+		}
+
+		private void setRun(int i, int start, int end) {
+			runs[2 * i] = (char) start;
+			runs[2 * i + 1] = (char) (end - start);
+		}
+
+		private void insertRun(int i, int start, int end) {
+			if (2 * numRuns + 2 > runs.length)
+				runs = Arrays.copyOf(runs, runs.length + (runs.length >> 1) + 4);
+			System.arraycopy(runs, 2 * i, runs, 2 * i + 2, 2 * (numRuns - i));
+			numRuns++;
+			setRun(i, start, end);
+		}
+
+		private void removeRun(int i) {
+			System.arraycopy(runs, 2 * i + 2, runs, 2 * i, 2 * (numRuns - i - 1));
+			numRuns--;
+		}
+
+		@Override
+		Container add(char x) {
+			int i = findRun(x);
+			if (i >= 0 && x <= end(i))
+				return this;
+			boolean joinsPrev = i >= 0 && end(i) + 1 == x;
+			boolean joinsNext = i + 1 < numRuns && start(i + 1) == x + 1;
+			if (joinsPrev && joinsNext) {
+				setRun(i, start(i), end(i + 1));
+				removeRun(i + 1);
+			} else if (joinsPrev) {
+				setRun(i, start(i), x);
+			} else if (joinsNext) {
+				setRun(i + 1, x, end(i + 1));
+			} else {
+				insertRun(i + 1, x, x);
+			}
+			card++;
+			return this;
+		}
+
+		@Override
+		Container remove(char x) {
+			int i = findRun(x);
+			if (i < 0 || x > end(i))
+				return this;
+			int start = start(i);
+			int end = end(i);
+			if (start == end)
+				removeRun(i);
+			else if (x == start)
+				setRun(i, start + 1, end);
+			else if (x == end)
+				setRun(i, start, end - 1);
+			else {
+				setRun(i, start, x - 1);
+				insertRun(i + 1, x + 1, end);
+			}
+			card--;
+			return this;
+		}
+
+		@Override
+		boolean contains(char x) {
+			int i = findRun(x);
+			return i >= 0 && x <= end(i);
+		}
+
+		@Override
+		int cardinality() {
+			return card;
+		}
+
+		@Override
+		int nextValue(int from) {
+			int i = findRun(from);
+			if (i >= 0 && from <= end(i))
+				return from;
+			return i + 1 < numRuns ? start(i + 1) : -1;
+		}
+
+		@Override
+		void orInto(long[] bits) {
+			for (int i = 0; i < numRuns; i++) {
+				int start = start(i);
+				int end = end(i);
+				int firstWord = start >>> 6;
+				int lastWord = end >>> 6;
+				for (int w = firstWord; w <= lastWord; w++) {
+					long mask = -1L;
+					if (w == firstWord)
+						mask &= -1L << start;
+					if (w == lastWord)
+						mask &= -1L >>> (63 - (end & 63));
+					bits[w] |= mask;
+				}
+			}
+		}
+
+		@Override
+		int numRuns() {
+			return numRuns;
+		}
+
+		@Override
+		int getBytes() {
+			return 24 + runs.length * 2;
+		}
+
+		@Override
+		Container copy() {
+			return new RunContainer(Arrays.copyOf(runs, numRuns * 2), numRuns, card);
+		}
+	}
+}
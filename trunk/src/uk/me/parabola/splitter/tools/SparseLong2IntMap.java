@@ -13,7 +13,9 @@
 
 package uk.me.parabola.splitter.tools;
 
+import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
 import java.util.Arrays;
 
 import it.unimi.dsi.fastutil.Hash;
@@ -70,11 +72,21 @@ import uk.me.parabola.splitter.Utils;
  * z is the position of the chunk within the store. (0-15)
  * The maximum values for these three values are chosen so that we can place them
  * together into the int value that is kept in the large vector.
+ *
+ * With {@link Encoding#FAST} the values of a chunk are simply stored with a fixed
+ * number of bytes, this needs more memory but avoids the search for the best encoding.
+ *
+ * Random reads are served from a small set-associative cache of decoded chunks,
+ * so that the many reads of way nodes don't decode the same chunks again and again.
+ *
+ * With {@link Storage#DIRECT} or {@link Storage#MAPPED} the large vectors and the 
+ * chunk stores are kept outside of the Java heap in a {@link ChunkArena}, only the 
+ * small management structures remain on the heap.
  */
 
-public final class SparseLong2IntMap {
+public final class SparseLong2IntMap implements Long2IntMapFunction {
 	private static final boolean SELF_TEST = false;
-	private static final int CHUNK_SIZE = 64;
+	static final int CHUNK_SIZE = 64;
 	private static final int CHUNK_SHIFT = Integer.numberOfTrailingZeros(CHUNK_SIZE);
 	
 	private static final int MAX_BYTES_FOR_VAL = Integer.BYTES;
@@ -123,6 +135,7 @@ public final class SparseLong2IntMap {
 	
 	// bit masks for the flag byte
 	private static final int FLAG1_USED_BYTES_MASK = 0x03; // number of bytes - 1 
+	private static final int FLAG1_FIXED_WIDTH = 0x04; // all vals are stored with the number of bytes given in FLAG1_USED_BYTES_MASK, only used without FLAG1_COMP_METHOD_BITS 
 	private static final int FLAG1_RUNLEN_MASK = 0x1C; // number of bits for run length values 
 	private static final int FLAG1_DICTIONARY = 0x20; // if set a dictionary follows the flag bytes
 	private static final int FLAG1_COMP_METHOD_BITS = 0x40; // rest of vals are "bit" encoded 
@@ -147,6 +160,29 @@ public final class SparseLong2IntMap {
 	private Integer bias1; // used for initial delta encoding
 	private final BitWriter bitWriter = new BitWriter(1000);
 	
+	/** Where the chunks are stored. */
+	public enum Storage {
+		/** byte arrays on the Java heap */
+		HEAP, 
+		/** direct buffers outside of the Java heap */
+		DIRECT, 
+		/** memory mapped temporary file */
+		MAPPED
+	}
+	private final Storage storage;
+	private final File tmpDir;
+	private ChunkArena arena;
+
+	/** How chunks are encoded. Both encodings can be decoded at any time. */
+	public enum Encoding {
+		/** try different encodings to find the smallest */
+		COMPACT,
+		/** store the values with a fixed number of bytes */
+		FAST
+	}
+	private Encoding encoding = Encoding.COMPACT;
+
+	private final ChunkCache cache = new ChunkCache(CHUNK_SIZE);
 
 	/**
 	 * A map that stores pairs of (OSM) IDs and int values identifying the
@@ -154,12 +190,38 @@ public final class SparseLong2IntMap {
 	 * @param dataDesc
 	 */
 	public SparseLong2IntMap(String dataDesc) {
+		this(dataDesc, Storage.HEAP, null, true);
+	}
+
+	/**
+	 * A map that stores pairs of (OSM) IDs and int values identifying the
+	 * areas in which the object with the ID occurs. 
+	 * @param dataDesc
+	 * @param storage where the chunks are stored
+	 * @param tmpDir the directory for the temporary file used with {@link Storage#MAPPED}
+	 */
+	public SparseLong2IntMap(String dataDesc, Storage storage, File tmpDir) {
+		this(dataDesc, storage, tmpDir, true);
+	}
+
+	/**
+	 * @param dataDesc
+	 * @param storage where the chunks are stored
+	 * @param tmpDir the directory for the temporary file used with {@link Storage#MAPPED}
+	 * @param reportType if false, don't print the name of the implementation
+	 */
+	SparseLong2IntMap(String dataDesc, Storage storage, File tmpDir, boolean reportType) {
 		// sanity check to make sure that we can store enough chunks with the same length
 		// If this test fails it is not possible to store the same value for all ids 
 		long reserve = ((1L << CHUNK_STORE_BITS_FOR_Y) - 1) * CHUNK_SIZE - LARGE_VECTOR_SIZE;
 		assert reserve > 0 : "Bad combination of constants";
 		this.dataDesc = dataDesc;
-		System.out.println(dataDesc + " Map: uses " + this.getClass().getSimpleName());
+		this.storage = storage;
+		this.tmpDir = (storage == Storage.MAPPED && tmpDir == null) ? new File(".") : tmpDir;
+		if (reportType) {
+			System.out.println(dataDesc + " Map: uses " + this.getClass().getSimpleName()
+					+ (storage == Storage.HEAP ? "" : " with " + storage.name().toLowerCase() + " storage"));
+		}
 		clear();
 	}
 
@@ -180,15 +242,28 @@ public final class SparseLong2IntMap {
 		private int lastFlag;
 		private long lastChunkId = INVALID_CHUNK_ID;
 		private boolean checkReuse;
+		// only used with off-heap storage
+		private final ChunkArena arena;
+		private IntBuffer offHeapVector;
+		private ByteBuffer[][] offHeapStore;
+		private int[] offHeapStoreCount;
 		
-		public ChunkMem(long topID) {
+		public ChunkMem(long topID, ChunkArena arena) {
 			this.topId = topID;
-			chunkStore = new byte[MAX_STORED_BYTES_FOR_CHUNK][][];
+			this.arena = arena;
 			freePosInStore = new int[MAX_STORED_BYTES_FOR_CHUNK];
 			reusableChunks = new Int2ObjectOpenHashMap<>(0, Hash.VERY_FAST_LOAD_FACTOR);
-			largeVector = new int[LARGE_VECTOR_SIZE];
-			estimatedBytes = (long) LARGE_VECTOR_SIZE * Integer.BYTES 
-					+ (MAX_STORED_BYTES_FOR_CHUNK) * (8 + 1 * Integer.BYTES) + 3 * (24 + 16) + 190; 
+			estimatedBytes = (MAX_STORED_BYTES_FOR_CHUNK) * (8 + 1 * Integer.BYTES) + 3 * (24 + 16) + 190; 
+			if (arena == null) {
+				chunkStore = new byte[MAX_STORED_BYTES_FOR_CHUNK][][];
+				largeVector = new int[LARGE_VECTOR_SIZE];
+				estimatedBytes += (long) LARGE_VECTOR_SIZE * Integer.BYTES;
+			} else {
+				offHeapStore = new ByteBuffer[MAX_STORED_BYTES_FOR_CHUNK][];
+				offHeapStoreCount = new int[MAX_STORED_BYTES_FOR_CHUNK];
+				offHeapVector = arena.allocate(LARGE_VECTOR_SIZE * Integer.BYTES).asIntBuffer();
+				estimatedBytes += (MAX_STORED_BYTES_FOR_CHUNK) * (8 + Integer.BYTES) + 64;
+			}
 		}
 
 		private void grow(int x) {
@@ -213,7 +288,7 @@ public final class SparseLong2IntMap {
 			int len = bufEncoded.limit();
 			int x = len - (1 + BYTES_FOR_MASK); 
 
-			if (chunkStore[x] == null) {
+			if (arena == null && chunkStore[x] == null) {
 				chunkStore[x] = new byte[2][];
 				estimatedBytes += 24 + 2 * 8; // pointer-pointer
 			}
@@ -247,12 +322,30 @@ public final class SparseLong2IntMap {
 				}
 			}
 			int y, z;
-			byte[] store;
+			byte[] store = null;
 			if (reuseFlag != 0) {
 				y = (reuseFlag >> CHUNK_STORE_Y_SHIFT) & CHUNK_STORE_Y_MASK;
 				y--; // we store the y value incremented by 1
 				z = (reuseFlag >> CHUNK_STORE_Z_SHIFT) & CHUNK_STORE_Z_MASK;
-				store = chunkStore[x][y];
+				if (arena == null)
+					store = chunkStore[x][y];
+			} else if (arena != null) {
+				y = offHeapStoreCount[x] - 1;
+				if (y < 0 || freePosInStore[x] * len >= offHeapStore[x][y].capacity()) {
+					y++;
+					if (offHeapStore[x] == null || y >= offHeapStore[x].length) {
+						int newCapacity = offHeapStore[x] == null ? 2 : Math.min(CHUNK_STORE_Y_MASK, offHeapStore[x].length * 2);
+						offHeapStore[x] = offHeapStore[x] == null ? new ByteBuffer[newCapacity] : Arrays.copyOf(offHeapStore[x], newCapacity);
+						estimatedBytes += newCapacity / 2 * 8;
+					}
+					// start with small stores, most chunk lengths are rarely used
+					int numChunks = y < 4 ? 16 << y : CHUNK_STORE_ELEMS;
+					offHeapStore[x][y] = arena.allocate(numChunks * len);
+					offHeapStoreCount[x] = y + 1;
+					freePosInStore[x] = 0;
+					estimatedBytes += 48; // the ByteBuffer instance
+				}
+				z = freePosInStore[x]++;
 			} else {
 				y = ++freePosInStore[x] / CHUNK_STORE_ELEMS;
 				if (y >= chunkStore[x].length)
@@ -275,8 +368,14 @@ public final class SparseLong2IntMap {
 				}
 			}
 
-			ByteBuffer storeBuf = ByteBuffer.wrap(store, z * len + 1, len);
-			storeBuf.put(bufEncoded);
+			if (arena == null) {
+				ByteBuffer storeBuf = ByteBuffer.wrap(store, z * len + 1, len);
+				storeBuf.put(bufEncoded);
+			} else {
+				ByteBuffer storeBuf = offHeapStore[x][y].duplicate();
+				storeBuf.position(z * len);
+				storeBuf.put(bufEncoded);
+			}
 		
 			// calculate the position in the large vector
 			y++; // we store the y value incremented by 1
@@ -290,7 +389,10 @@ public final class SparseLong2IntMap {
 			assert flag != 0;
 			
 			int vectorPos = getVectorPos(chunkId);
-			largeVector[vectorPos] = flag;
+			if (arena == null)
+				largeVector[vectorPos] = flag;
+			else 
+				offHeapVector.put(vectorPos, flag);
 		}
 
 		/**
@@ -304,7 +406,22 @@ public final class SparseLong2IntMap {
 		
 		private int getFlag(long chunkId) {
 			int vectorPos = getVectorPos(chunkId);
-			return largeVector[vectorPos];
+			if (arena == null)
+				return largeVector[vectorPos];
+			return offHeapVector.get(vectorPos);
+		}
+
+		/**
+		 * Remember the flag of the stored chunk before it is replaced, same as 
+		 * {@link #getStoredChunk(long, boolean)} with forUpdate = true.
+		 * @param key the key
+		 */
+		void prepareUpdate(long key) {
+			int flag = getFlag(key);
+			if (flag != 0) {
+				lastChunkId = key & OLD_CHUNK_ID_MASK; 
+				lastFlag = flag;
+			}
 		}
 		
 		/**
@@ -329,12 +446,20 @@ public final class SparseLong2IntMap {
 			y--; // we store the y value incremented by 1
 			int z = (flag >> CHUNK_STORE_Z_SHIFT) & CHUNK_STORE_Z_MASK;
 			int chunkLenWithMask = x + 1 + BYTES_FOR_MASK;
-			int startPos = z * chunkLenWithMask + 1;
 			if (forUpdate) {
 				lastChunkId = key & OLD_CHUNK_ID_MASK; 
 				lastFlag = flag;
 			}
-			return ByteBuffer.wrap(chunkStore[x][y], startPos, chunkLenWithMask);
+			if (arena == null) {
+				int startPos = z * chunkLenWithMask + 1;
+				return ByteBuffer.wrap(chunkStore[x][y], startPos, chunkLenWithMask);
+			}
+			// the decoder works on arrays, so copy the few bytes to the heap
+			byte[] bytes = new byte[chunkLenWithMask];
+			ByteBuffer storeBuf = offHeapStore[x][y].duplicate();
+			storeBuf.position(z * chunkLenWithMask);
+			storeBuf.get(bytes);
+			return ByteBuffer.wrap(bytes);
 		}
 	}
 	
@@ -541,6 +666,29 @@ public final class SparseLong2IntMap {
 		}
 	}
 	
+	/**
+	 * Store all values of the "mask-encoded" chunk with the same number of bytes.
+	 * @param numVals number of elements in the chunk 
+	 * @param minVal smallest value in maskedChunk 
+	 * @param maxVal highest value in maskedChunk 
+	 */
+	private void fixedWidthEncode(int numVals, int minVal, int maxVal) {
+		int bytesToUse = bytesNeeded(minVal, maxVal);
+		if (1 + numVals * bytesToUse >= MAX_STORED_BYTES_FOR_CHUNK) {
+			// no flag byte for worst case 
+			for (int i = 0; i < numVals; i++) {
+				putVal(bufEncoded, currentChunk[i], 4);
+			}
+			return;
+		}
+		bufEncoded.put((byte) (FLAG1_FIXED_WIDTH | (bytesToUse - 1)));
+		for (int i = 0; i < numVals; i++) {
+			putVal(bufEncoded, maskedChunk[i], bytesToUse);
+		}
+		if (bufEncoded.position() - BYTES_FOR_MASK <= SINGLE_VAL_CHUNK_LEN_NO_FLAG) 
+			bufEncoded.put((byte) 0); // padding, short chunks without flag are single value chunks
+	}
+
 	/**
 	 * calculate the number of bytes consumed by given a number of bits
 	 * @param nBits the number of bits
@@ -616,6 +764,8 @@ public final class SparseLong2IntMap {
 				bufEncoded.put((byte) (bytesFor1st - 1)); // flag byte
 			}
 			putVal(bufEncoded, maskedChunk[0], bytesFor1st);
+		} else if (encoding == Encoding.FAST) {
+			fixedWidthEncode(simpleLen, minVal, maxVal);
 		} else {
 			chunkCompress(simpleLen, minVal, maxVal);
 			assert bufEncoded.position() > SINGLE_VAL_CHUNK_LEN_NO_FLAG;
@@ -624,11 +774,16 @@ public final class SparseLong2IntMap {
 		ChunkMem mem = getMem(currentChunkId);
 		if (mem == null) {
 			long topID = currentChunkId >> TOP_ID_SHIFT;
-			mem = new ChunkMem(topID);
+			if (arena == null && storage != Storage.HEAP)
+				arena = new ChunkArena(dataDesc, storage == Storage.MAPPED ? tmpDir : null);
+			mem = new ChunkMem(topID, arena);
 			topMap.put(topID, mem);
 			currentMem = mem;
 		}
 		mem.putChunk(currentChunkId, bufEncoded);
+		int[] cached = cache.find(currentChunkId);
+		if (cached != null)
+			System.arraycopy(currentChunk, 0, cached, 0, CHUNK_SIZE);
 		if (SELF_TEST) {
 			Arrays.fill(testChunk, unassigned);
 			decodeStoredChunk(currentChunkId, testChunk, -1);
@@ -708,7 +863,13 @@ public final class SparseLong2IntMap {
 	 * @return the extracted value or unassigned 
 	 */
 	private int decodeStoredChunk (long key, int[] targetChunk, int chunkOffset) {
-		ChunkMem mem = getMem(key);
+		return decodeStoredChunk(getMem(key), key, targetChunk, chunkOffset, maskedChunk);
+	}
+
+	/**
+	 * @param masked buffer for the values of the chunk before the mask is applied 
+	 */
+	private int decodeStoredChunk (ChunkMem mem, long key, int[] targetChunk, int chunkOffset, int[] masked) {
 		if (mem == null)
 			return unassigned;
 
@@ -743,7 +904,10 @@ public final class SparseLong2IntMap {
 			flag = inBuf.get();
 			if ((flag & FLAG1_COMP_METHOD_BITS) != 0) {
 				inBuf.position(inBuf.position() - 1);
-				return decodeBits(chunkMask, targetChunk, chunkOffset, inBuf);
+				return decodeBits(chunkMask, targetChunk, chunkOffset, inBuf, masked);
+			}
+			if ((flag & FLAG1_FIXED_WIDTH) != 0) {
+				return decodeFixedWidth(chunkMask, targetChunk, chunkOffset, inBuf, (flag & FLAG1_USED_BYTES_MASK) + 1, masked);
 			}
 			bytesToUse = (flag & FLAG1_USED_BYTES_MASK) + 1;	
 		}
@@ -753,20 +917,20 @@ public final class SparseLong2IntMap {
 		if (targetChunk == null) {
 			return start;
 		}
-		maskedChunk[0] = start;
-		updateTargetChunk(targetChunk, chunkMask, isSingleValueChunk);
+		masked[0] = start;
+		updateTargetChunk(targetChunk, masked, chunkMask, isSingleValueChunk);
 		return unassigned; 
 	}
 
 	
-	private void updateTargetChunk(int[] targetChunk, long chunkMask, boolean singleValueChunk) {
+	private static void updateTargetChunk(int[] targetChunk, int[] masked, long chunkMask, boolean singleValueChunk) {
 		if (targetChunk == null)
 			return;
 		int j = 0;
 		int opos = 0;
 		while (chunkMask != 0) {
 			if ((chunkMask & 1L) != 0) {
-				targetChunk[opos] = maskedChunk[j];
+				targetChunk[opos] = masked[j];
 				if (!singleValueChunk)
 					j++;
 			}
@@ -775,6 +939,29 @@ public final class SparseLong2IntMap {
 		}
 	}
 
+	/**
+	 * Decode a stored chunk written by {@link #fixedWidthEncode(int, int, int)}.
+	 * @param chunkMask the mask of used positions
+	 * @param targetChunk if not null, data will be decoded into this buffer
+	 * @param chunkOffset gives the wanted element (targetChunk must be null)
+	 * @param inBuf buffer positioned behind the flag byte 
+	 * @param bytesToUse number of bytes for each value
+	 * @param masked buffer for the values of the chunk before the mask is applied 
+	 * @return the extracted value or unassigned 
+	 */
+	private int decodeFixedWidth(long chunkMask, int[] targetChunk, int chunkOffset, ByteBuffer inBuf, int bytesToUse, int[] masked) {
+		if (targetChunk == null) {
+			inBuf.position(inBuf.position() + countUnder(chunkMask, chunkOffset) * bytesToUse);
+			return getVal(inBuf, bytesToUse) + bias1;
+		}
+		int n = Long.bitCount(chunkMask);
+		for (int i = 0; i < n; i++) {
+			masked[i] = getVal(inBuf, bytesToUse) + bias1;
+		}
+		updateTargetChunk(targetChunk, masked, chunkMask, false);
+		return unassigned;
+	}
+
 	/**
 	 * Decode a stored chunk written with the {@link BitWriter}.
 	 * @param mp
@@ -783,7 +970,7 @@ public final class SparseLong2IntMap {
 	 * @param inBuf
 	 * @return
 	 */
-	private int decodeBits(long chunkMask, int[] targetChunk, int chunkOffset, ByteBuffer inBuf) {
+	private int decodeBits(long chunkMask, int[] targetChunk, int chunkOffset, ByteBuffer inBuf, int[] masked) {
 		int flag1 = inBuf.get();
 		assert (flag1 & FLAG1_COMP_METHOD_BITS) != 0;
 		int index = CHUNK_SIZE + 1; 
@@ -856,7 +1043,7 @@ public final class SparseLong2IntMap {
 				return val;
 			if (targetChunk != null) {
 				do {
-					maskedChunk[mPos++] = val;
+					masked[mPos++] = val;
 				} while (mPos < nVals);
 			}
 			if (nVals >= n)
@@ -872,7 +1059,7 @@ public final class SparseLong2IntMap {
 				val = readVal(br, bits, sign) + bias;
 			}
 		}
-		updateTargetChunk(targetChunk, chunkMask, false);
+		updateTargetChunk(targetChunk, masked, chunkMask, false);
 		return unassigned; 
 	}
 
@@ -884,13 +1071,25 @@ public final class SparseLong2IntMap {
 	 */
 	private void replaceCurrentChunk(long key) {
 		saveCurrentChunk();
-		Arrays.fill(currentChunk, unassigned);
 		oldModCount = modCount;
 		currentChunkId = key & OLD_CHUNK_ID_MASK; 
-		
+		int[] cached = cache.find(currentChunkId);
+		if (cached != null) {
+			System.arraycopy(cached, 0, currentChunk, 0, CHUNK_SIZE);
+			ChunkMem mem = getMem(key);
+			if (mem != null)
+				mem.prepareUpdate(key);
+			return;
+		}
+		Arrays.fill(currentChunk, unassigned);
 		decodeStoredChunk(key, currentChunk, -1);
 	}
 
+	private void clearCache() {
+		cache.clear();
+		cache.resetStats();
+	}
+
 	
 	/**
 	 * Returns the value to which the given key is mapped or the {@code unassigned} value.
@@ -904,11 +1103,57 @@ public final class SparseLong2IntMap {
 		if (currentChunkId == chunkId) {
 			return currentChunk[chunkoffset];
 		}
-		return decodeStoredChunk(key, null, chunkoffset);
+		int[] chunk = cache.get(chunkId);
+		if (chunk == null) {
+			chunk = cache.add(chunkId);
+			Arrays.fill(chunk, unassigned);
+			decodeStoredChunk(key, chunk, -1);
+		}
+		return chunk[chunkoffset];
+	}
+
+	/**
+	 * Store the current chunk so that all values are kept in the chunk store.
+	 * Must be called before {@link #getStored(long)} is used.
+	 */
+	public void flush() {
+		saveCurrentChunk();
+		oldModCount = modCount;
+		currentChunkId = INVALID_CHUNK_ID;
+	}
+
+	/**
+	 * Returns the value to which the given key is mapped or the {@code unassigned} value.
+	 * In contrast to {@link #get(long)} this method doesn't change any field of the map,
+	 * so it can be called by multiple threads as long as no thread calls {@link #put(long, int)}.
+	 * Values which were not yet stored with {@link #flush()} are not found.
+	 * @param key the key
+	 * @return the value to which the given key is mapped or the {@code unassigned} value
+	 */
+	public int getStored(long key) {
+		ChunkMem mem = topMap.get(key >> TOP_ID_SHIFT);
+		return decodeStoredChunk(mem, key, null, (int) (key & CHUNK_OFFSET_MASK), null);
+	}
+
+	/**
+	 * Decode the stored chunk that contains the key. Like {@link #getStored(long)} this 
+	 * doesn't change any field of the map.
+	 * @param key the key
+	 * @param targetChunk receives the values of the chunk, positions without a value are set to the {@code unassigned} value
+	 * @param masked buffer for the values of the chunk before the mask is applied
+	 */
+	void decodeStored(long key, int[] targetChunk, int[] masked) {
+		Arrays.fill(targetChunk, unassigned);
+		ChunkMem mem = topMap.get(key >> TOP_ID_SHIFT);
+		decodeStoredChunk(mem, key, targetChunk, -1, masked);
 	}
 
 	public void clear() {
 		topMap = new Long2ObjectOpenHashMap<>(Hash.DEFAULT_INITIAL_SIZE, Hash.VERY_FAST_LOAD_FACTOR);
+		if (arena != null) {
+			arena.close();
+			arena = null;
+		}
 		
 		Arrays.fill(currentChunk, 0);
 		Arrays.fill(maskedChunk, 0);
@@ -916,6 +1161,7 @@ public final class SparseLong2IntMap {
 		currentMem = null;
 		bias1 = null;
 		size = 0;
+		clearCache();
 	}
 
 	public long size() {
@@ -926,11 +1172,58 @@ public final class SparseLong2IntMap {
 		return unassigned;
 	}
 
+	/**
+	 * Select the encoding for chunks that are saved from now on. 
+	 * @param encoding the encoding
+	 */
+	public void setEncoding(Encoding encoding) {
+		this.encoding = encoding;
+	}
+
 	public void defaultReturnValue(int arg0) {
 		unassigned = arg0;
+		clearCache();
 	}
 
 
+	/**
+	 * @return estimated number of bytes used by this map
+	 */
+	long getEstimatedBytes() {
+		long totalBytes = (long) currentChunk.length * Integer.BYTES;
+		for (ChunkMem mem : topMap.values()) {
+			totalBytes += mem.estimatedBytes;
+		}
+		if (arena != null)
+			totalBytes += arena.getUsedBytes();
+		return totalBytes;
+	}
+
+	/**
+	 * @return number of used chunks including the current chunk
+	 */
+	long getChunkCount() {
+		long totalChunks = 1; // current chunk
+		for (ChunkMem mem : topMap.values()) {
+			totalChunks += mem.getChunkCount();
+		}
+		return totalChunks;
+	}
+
+	/**
+	 * @return number of allocated large vectors
+	 */
+	int getNumLargeVectors() {
+		return topMap.size();
+	}
+
+	/**
+	 * @return number of bytes used by one large vector 
+	 */
+	static long getLargeVectorBytes() {
+		return (long) LARGE_VECTOR_SIZE * Integer.BYTES;
+	}
+
 	/**
 	 * calculate and print performance values regarding memory.
 	 */
@@ -939,28 +1232,39 @@ public final class SparseLong2IntMap {
 			System.out.println(dataDesc + " Map is empty");
 			return;
 		}
-		long totalBytes = (long) currentChunk.length * Integer.BYTES;
-		long totalChunks = 1; // current chunk
-			
-		for (ChunkMem mem : topMap.values()) {
-			totalChunks += mem.getChunkCount();
-			totalBytes += mem.estimatedBytes;
-		}
+		long totalBytes = getEstimatedBytes();
+		long totalChunks = getChunkCount();
 		
 		long bytesPerKey = Math.round((double) totalBytes / size());
 		System.out.println(dataDesc + " Map: " + Utils.format(size()) + " stored long/int pairs require ca. " +
 				bytesPerKey + " bytes per pair. " +
 				Utils.format(totalChunks) + " chunks are used, the avg. number of values in one " + CHUNK_SIZE + "-chunk is " +
 				(totalChunks == 0 ? 0 : (size() / totalChunks)) + ".");
+		printCacheStats(dataDesc, cache.getHits(), cache.getMisses());
 		if (msgLevel >= 0) {
 			String details = dataDesc + " Map details: ~" + bytesToMB(totalBytes) + ", including " + topMap.size()
-					+ " array(s) with " + bytesToMB((long) LARGE_VECTOR_SIZE * Integer.BYTES);
+					+ " array(s) with " + bytesToMB(getLargeVectorBytes());
+			System.out.println(details);
+		}
+		if (arena != null) {
+			String details = dataDesc + " Map " + storage.name().toLowerCase() + " storage: " + bytesToMB(arena.getUsedBytes())
+					+ " used in " + bytesToMB(arena.getReservedBytes()) + (arena.isMapped() ? " mapped" : " allocated")
+					+ ", ~" + bytesToMB(arena.getResidentBytes()) + " resident, "
+					+ bytesToMB(totalBytes - arena.getUsedBytes()) + " on the heap";
 			System.out.println(details);
 		}
 		System.out.println();
 	}
 
-	private static String bytesToMB (long bytes) {
+	static void printCacheStats(String dataDesc, long hits, long misses) {
+		long cacheReads = hits + misses;
+		if (cacheReads > 0) {
+			System.out.println(dataDesc + " Map: " + Utils.format(cacheReads) + " reads of stored chunks, hit rate of chunk cache is "
+					+ String.format("%.1f", 100.0 * hits / cacheReads) + "%, " + Utils.format(misses) + " chunks were decoded.");
+		}
+	}
+
+	static String bytesToMB (long bytes) {
 		return ((bytes + (1 << 19)) >>> 20) + " MB";
 	}
 	
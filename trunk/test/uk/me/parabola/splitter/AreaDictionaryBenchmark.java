@@ -0,0 +1,48 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures the time needed to create an {@link AreaDictionary}, mainly the search for
+ * neighbouring areas that form rectangles.
+ * This is not a unit test, run it with
+ * <pre>
+ * java -cp ... uk.me.parabola.splitter.AreaDictionaryBenchmark
+ * </pre>
+ * The areas are created by random splits of the planet.
+ */
+public class AreaDictionaryBenchmark {
+	private static final int ROUNDS = 3;
+
+	public static void main(String[] args) {
+		Area planet = new Area(-0x3fffff, -0x800000, 0x3fffff, 0x7fffff);
+		int[] counts = { 1000, 8000, 32000 };
+		long[] times = new long[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			List<Area> areas = AreaIndexTest.createAreas(planet, counts[i], new Random(counts[i]));
+			long best = Long.MAX_VALUE;
+			for (int round = 0; round < ROUNDS; round++) {
+				long start = System.nanoTime();
+				new AreaDictionary(areas, 0);
+				best = Math.min(best, System.nanoTime() - start);
+			}
+			times[i] = best;
+		}
+		for (int i = 0; i < counts.length; i++)
+			System.out.println(String.format("areas: %7d  %9.1f ms", counts[i], times[i] / 1e6));
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the area dictionary
+ */
+public class AreaDictionaryTest {
+
+	private static AreaDictionary createDictionary(int dim) {
+		return new AreaDictionary(createGrid(dim), 0);
+	}
+
+	@Test
+	public void testTranslate() {
+		AreaDictionary dict = createDictionary(10);
+		int initialSize = dict.size();
+		for (int i = 0; i < 100; i++) {
+			AreaSet single = new AreaSet();
+			single.set(i);
+			assertEquals(AreaDictionary.translate(i), dict.translate(single));
+			assertEquals(single, dict.getSet(dict.translate(single)));
+		}
+		AreaSet set = new AreaSet();
+		for (int i = 0; i < 100; i += 2)
+			set.set(i);
+		int idx = dict.translate(set);
+		assertEquals(initialSize + 1, dict.size());
+		assertEquals(set, dict.getSet(idx));
+		AreaSet copy = new AreaSet(set);
+		assertEquals(idx, dict.translate(copy));
+		copy.clear(98);
+		assertEquals(idx + 1, dict.translate(copy));
+		assertEquals(initialSize + 2, dict.size());
+	}
+
+	@Test
+	public void testConcurrentTranslate() throws InterruptedException {
+		final AreaDictionary dict = createDictionary(20);
+		final int numThreads = 4;
+		final int[][] results = new int[numThreads][];
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int part = t;
+			threads[t] = new Thread(() -> {
+				// all threads use the same sequence of sets
+				Random random = new Random(17);
+				int[] res = new int[20_000];
+				for (int i = 0; i < res.length; i++) {
+					AreaSet set = new AreaSet();
+					int n = 2 + random.nextInt(part == 0 ? 3 : 40);
+					for (int j = 0; j < n; j++)
+						set.set(random.nextInt(400));
+					res[i] = dict.translate(set);
+					if (!dict.getSet(res[i]).equals(set))
+						res[i] = Integer.MIN_VALUE;
+				}
+				results[part] = res;
+			});
+		}
+		for (Thread t : threads)
+			t.start();
+		for (Thread t : threads)
+			t.join();
+		for (int t = 0; t < numThreads; t++) {
+			for (int i = 0; i < results[t].length; i++) {
+				assertEquals(false, results[t][i] == Integer.MIN_VALUE);
+			}
+		}
+		// the same set is always translated to the same value
+		for (int t = 2; t < numThreads; t++) {
+			for (int i = 0; i < results[t].length; i++) {
+				assertEquals(results[1][i], results[t][i]);
+			}
+		}
+	}
+
+	/**
+	 * Compare the cached combinations with those found by comparing all pairs of rectangles.
+	 */
+	@Test
+	public void testSimpleNeighbours() {
+		checkSimpleNeighbours(createGrid(4));
+		Random random = new Random(5);
+		for (int num : new int[] { 2, 30, 200 }) {
+			checkSimpleNeighbours(AreaIndexTest.createAreas(new Area(0, 0, 100_000, 200_000), num, random));
+		}
+	}
+
+	private static List<Area> createGrid(int dim) {
+		List<Area> areas = new ArrayList<>();
+		for (int i = 0; i < dim; i++) {
+			for (int j = 0; j < dim; j++) {
+				areas.add(new Area(i * 1000, j * 1000, (i + 1) * 1000, (j + 1) * 1000));
+			}
+		}
+		return areas;
+	}
+
+	private static void checkSimpleNeighbours(List<Area> areas) {
+		AreaDictionary dict = new AreaDictionary(areas, 0);
+		HashSet<AreaSet> expected = new HashSet<>();
+		List<Rectangle> rectangles = new ArrayList<>();
+		List<AreaSet> sets = new ArrayList<>();
+		for (int i = 0; i < areas.size(); i++) {
+			rectangles.add(Utils.area2Rectangle(areas.get(i), 0));
+			sets.add(new AreaSet(i));
+		}
+		boolean added = true;
+		while (added && expected.size() < 1000) {
+			added = false;
+			int n = rectangles.size();
+			for (int i = 0; i < n; i++) {
+				Rectangle r1 = rectangles.get(i);
+				for (int j = i + 1; j < n; j++) {
+					Rectangle r2 = rectangles.get(j);
+					if (r1.y == r2.y && r1.height == r2.height && (r1.x == r2.getMaxX() || r2.x == r1.getMaxX())
+							|| r1.x == r2.x && r1.width == r2.width && (r1.y == r2.getMaxY() || r2.y == r1.getMaxY())) {
+						AreaSet set = new AreaSet(sets.get(i));
+						set.or(sets.get(j));
+						if (set.cardinality() <= 10 && expected.add(set)) {
+							Rectangle pair = new Rectangle(r1);
+							pair.add(r2);
+							rectangles.add(pair);
+							sets.add(set);
+							added = true;
+						}
+					}
+				}
+			}
+		}
+		for (AreaSet set : expected)
+			assertEquals(false, dict.mayCross(set));
+		for (int i = 0; i < areas.size(); i++) {
+			for (int j = i + 1; j < areas.size(); j++) {
+				AreaSet pair = new AreaSet(i);
+				pair.set(j);
+				assertEquals(!expected.contains(pair), dict.mayCross(pair));
+			}
+		}
+	}
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import java.util.List;
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
+/**
+ * Compares the lookup throughput of {@link AreaGrid} and {@link FlatAreaIndex}.
+ * This is not a unit test, run it with
+ * <pre>
+ * java -cp ... uk.me.parabola.splitter.AreaIndexBenchmark [overlap]
+ * </pre>
+ * The areas are created by random splits of the planet, the points are
+ * uniformly distributed within the bounds of the areas.
+ */
+public class AreaIndexBenchmark {
+	private static final int ROUNDS = 5;
+	private static final int NUM_POINTS = 5_000_000;
+
+	public static void main(String[] args) {
+		int overlap = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		Area planet = new Area(-0x3fffff, -0x800000, 0x3fffff, 0x7fffff);
+		for (int numAreas : new int[] { 100, 1000, 8000 }) {
+			Random random = new Random(numAreas);
+			List<Area> areas = AreaIndexTest.createAreas(planet, numAreas, random);
+			AreaDictionary dict = new AreaDictionary(areas, overlap);
+			int[] lats = new int[NUM_POINTS];
+			int[] lons = new int[NUM_POINTS];
+			for (int i = 0; i < NUM_POINTS; i++) {
+				lats[i] = planet.getMinLat() + random.nextInt(planet.getHeight());
+				lons[i] = planet.getMinLong() + random.nextInt(planet.getWidth());
+			}
+			System.out.println("areas: " + numAreas + ", overlap: " + overlap);
+			Area[] extAreas = new Area[numAreas];
+			for (int i = 0; i < numAreas; i++)
+				extAreas[i] = dict.getExtendedArea(i);
+			run("AreaGrid", new AreaGrid(dict), extAreas, lats, lons);
+			run("FlatAreaIndex", new FlatAreaIndex(dict), extAreas, lats, lons);
+		}
+	}
+
+	/**
+	 * Lookup all points and test the candidates like {@link SplitProcessor} does.
+	 */
+	private static void run(String name, AreaIndex index, Area[] extAreas, int[] lats, int[] lons) {
+		long best = Long.MAX_VALUE;
+		long tests = 0;
+		long found = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			tests = 0;
+			found = 0;
+			long start = System.nanoTime();
+			for (int i = 0; i < lats.length; i++) {
+				AreaGridResult res = index.get(lats[i], lons[i]);
+				if (res == null)
+					continue;
+				if (!res.testNeeded) {
+					found += res.set.cardinality();
+					continue;
+				}
+				for (IntIterator iter = res.set.iterator(); iter.hasNext();) {
+					tests++;
+					if (extAreas[iter.nextInt()].contains(lats[i], lons[i]))
+						found++;
+				}
+			}
+			best = Math.min(best, System.nanoTime() - start);
+		}
+		System.out.println(String.format("  %-14s %8.1f M lookups/s, %.3f contains tests per lookup, %d areas found", name,
+				lats.length * 1000.0 / best, (double) tests / lats.length, found));
+	}
+}
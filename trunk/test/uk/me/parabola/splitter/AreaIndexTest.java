@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Compare the results of the {@link AreaIndex} implementations with a brute force search.
+ */
+public class AreaIndexTest {
+
+	/**
+	 * Split the bounds randomly into the wanted number of areas, like the splitter does.
+	 */
+	static List<Area> createAreas(Area bounds, int num, Random random) {
+		List<Area> areas = new ArrayList<>();
+		areas.add(bounds);
+		while (areas.size() < num) {
+			// split the largest area
+			int largest = 0;
+			for (int i = 1; i < areas.size(); i++) {
+				if ((long) areas.get(i).getWidth() * areas.get(i).getHeight() > (long) areas.get(largest).getWidth() * areas.get(largest).getHeight())
+					largest = i;
+			}
+			Area a = areas.remove(largest);
+			if (a.getWidth() > a.getHeight()) {
+				int split = a.getMinLong() + (a.getWidth() / 4 + random.nextInt(a.getWidth() / 2)) / 2048 * 2048;
+				areas.add(new Area(a.getMinLat(), a.getMinLong(), a.getMaxLat(), split));
+				areas.add(new Area(a.getMinLat(), split, a.getMaxLat(), a.getMaxLong()));
+			} else {
+				int split = a.getMinLat() + (a.getHeight() / 4 + random.nextInt(a.getHeight() / 2)) / 2048 * 2048;
+				areas.add(new Area(a.getMinLat(), a.getMinLong(), split, a.getMaxLong()));
+				areas.add(new Area(split, a.getMinLong(), a.getMaxLat(), a.getMaxLong()));
+			}
+		}
+		for (int i = 0; i < areas.size(); i++)
+			areas.get(i).setMapId(63240000 + i);
+		return areas;
+	}
+
+	@Test
+	public void testAgainstBruteForce() {
+		Random random = new Random(3);
+		List<Area> areas = createAreas(new Area(2_000_000, -400_000, 2_600_000, 600_000), 150, random);
+		AreaDictionary dict = new AreaDictionary(areas, 2000);
+		check(dict, new AreaGrid(dict), random, false);
+		check(dict, new FlatAreaIndex(dict), random, true);
+	}
+
+	/**
+	 * @param exact true if the index must not return testNeeded
+	 */
+	static void check(AreaDictionary dict, AreaIndex index, Random random, boolean exact) {
+		Area bounds = index.getBounds();
+		for (int i = 0; i < 200_000; i++) {
+			int lat = bounds.getMinLat() - 10 + random.nextInt(bounds.getHeight() + 20);
+			int lon = bounds.getMinLong() - 10 + random.nextInt(bounds.getWidth() + 20);
+			AreaSet expected = new AreaSet();
+			for (int j = 0; j < dict.getNumOfAreas(); j++) {
+				if (dict.getExtendedArea(j).contains(lat, lon))
+					expected.set(j);
+			}
+			AreaGridResult res = index.get(lat, lon);
+			if (res == null) {
+				assertTrue(expected.isEmpty());
+				continue;
+			}
+			if (exact)
+				assertEquals(false, res.testNeeded);
+			if (res.testNeeded) {
+				for (int j : expected)
+					assertTrue(res.set.get(j));
+			} else {
+				assertEquals("lat=" + lat + " lon=" + lon, expected, res.set);
+			}
+		}
+	}
+}
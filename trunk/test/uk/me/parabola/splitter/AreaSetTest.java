@@ -15,8 +15,14 @@ package uk.me.parabola.splitter;
 
 import static org.junit.Assert.assertEquals;
 
+import java.util.Random;
+import java.util.TreeSet;
+
 import org.junit.Test;
 
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.ints.IntIterator;
+
 /**
  * Unit tests for the sparse BitSet implementation
  */
@@ -80,4 +86,68 @@ public class AreaSetTest {
 		set.clear(29);
 		set.clear(29);
 	}
+
+	@Test
+	public void testBitmapAndListAreEqual() {
+		AreaSet large = new AreaSet();
+		AreaSet small = new AreaSet();
+		for (int i = 0; i < 100; i++) {
+			large.set(i * 7);
+		}
+		for (int i = 0; i < 100; i++) {
+			if (i >= 3)
+				large.clear(i * 7);
+		}
+		// large is stored as bitmap, small as list
+		small.set(14);
+		small.set(0);
+		small.set(7);
+		assertEquals(small, large);
+		assertEquals(large, small);
+		assertEquals(small.hashCode(), large.hashCode());
+		assertEquals(small.toString(), large.toString());
+		AreaSet copy = new AreaSet(large);
+		copy.lock();
+		assertEquals(small, copy);
+		assertEquals(small.hashCode(), copy.hashCode());
+	}
+
+	@Test
+	public void testOrAndSubtract() {
+		Random random = new Random(42);
+		for (int round = 0; round < 200; round++) {
+			AreaSet a = new AreaSet();
+			AreaSet b = new AreaSet();
+			TreeSet<Integer> ref = new TreeSet<>();
+			TreeSet<Integer> refB = new TreeSet<>();
+			int sizeA = random.nextInt(80);
+			int sizeB = random.nextInt(80);
+			for (int i = 0; i < sizeA; i++) {
+				int v = random.nextInt(3000);
+				a.set(v);
+				ref.add(v);
+			}
+			for (int i = 0; i < sizeB; i++) {
+				int v = random.nextInt(3000);
+				b.set(v);
+				refB.add(v);
+			}
+			if (round % 2 == 0) {
+				a.or(b);
+				ref.addAll(refB);
+			} else {
+				a.subtract(b);
+				ref.removeAll(refB);
+			}
+			assertEquals(ref.size(), a.cardinality());
+			IntIterator iter = a.iterator();
+			for (int v : ref) {
+				assertEquals(true, a.get(v));
+				assertEquals(v, iter.nextInt());
+			}
+			assertEquals(false, iter.hasNext());
+			assertEquals(new IntArrayList(ref).hashCode(), a.hashCode());
+			assertEquals(ref.toString(), a.toString());
+		}
+	}
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the sweep-line calculations of distinct areas and pseudo-areas
+ */
+public class DistinctAreasTest {
+
+	/**
+	 * Tiles of a split with some gaps, a few of them are enlarged so that they overlap their neighbours.
+	 */
+	private static List<Area> createTiles(Random random, int num, boolean enlarge) {
+		List<Area> areas = new ArrayList<>();
+		for (Area a : AreaIndexTest.createAreas(new Area(2_000_000, -400_000, 2_600_000, 600_000), num, random)) {
+			if (random.nextInt(8) == 0)
+				continue;
+			if (enlarge && random.nextInt(10) == 0) {
+				Area large = new Area(a.getMinLat() - 4096, a.getMinLong(), a.getMaxLat(), a.getMaxLong() + 2048);
+				large.setMapId(a.getMapId());
+				a = large;
+			}
+			areas.add(a);
+		}
+		return areas;
+	}
+
+	private static long size(Area a) {
+		return (long) a.getWidth() * a.getHeight();
+	}
+
+	@Test
+	public void testFindOverlaps() {
+		Random random = new Random(11);
+		List<Area> areas = createTiles(random, 400, true);
+		List<int[]> expected = new ArrayList<>();
+		for (int i = 0; i < areas.size(); i++) {
+			for (int j = i + 1; j < areas.size(); j++) {
+				if (areas.get(i).overlaps(areas.get(j)))
+					expected.add(new int[] { i, j });
+			}
+		}
+		List<int[]> overlaps = DistinctAreas.findOverlaps(areas);
+		assertFalse(expected.isEmpty());
+		assertEquals(expected.size(), overlaps.size());
+		for (int i = 0; i < expected.size(); i++) {
+			assertEquals(expected.get(i)[0], overlaps.get(i)[0]);
+			assertEquals(expected.get(i)[1], overlaps.get(i)[1]);
+		}
+		assertTrue(DistinctAreas.findOverlaps(createTiles(random, 400, false)).isEmpty());
+	}
+
+	@Test
+	public void testNonOverlappingAreas() {
+		Random random = new Random(12);
+		List<Area> areas = createTiles(random, 300, false);
+		// without overlaps the list is not changed
+		assertEquals(areas, ProblemLists.getNonOverlappingAreas(areas));
+
+		areas = createTiles(random, 300, true);
+		List<Area> distinct = ProblemLists.getNonOverlappingAreas(areas);
+		assertTrue(DistinctAreas.findOverlaps(distinct).isEmpty());
+		long sum = 0;
+		for (Area d : distinct) {
+			sum += size(d);
+			// each distinct area lies completely within the areas that overlap it
+			int numContaining = 0;
+			for (Area a : areas) {
+				if (a.overlaps(d)) {
+					assertTrue(a.contains(d));
+					numContaining++;
+				}
+			}
+			assertTrue(numContaining > 0);
+			if (numContaining == 1)
+				assertTrue(d.isJoinable());
+			else
+				assertTrue(d.getMapId() < 0);
+		}
+		// together they cover the same part
+		assertEquals(unionSize(areas), sum);
+	}
+
+	/**
+	 * Brute force calculation of the size of the union.
+	 */
+	private static long unionSize(List<Area> areas) {
+		TreeSet<Integer> lons = new TreeSet<>();
+		TreeSet<Integer> lats = new TreeSet<>();
+		for (Area a : areas) {
+			lons.add(a.getMinLong());
+			lons.add(a.getMaxLong());
+			lats.add(a.getMinLat());
+			lats.add(a.getMaxLat());
+		}
+		long size = 0;
+		Integer lon0 = null;
+		for (Integer lon1 : lons) {
+			if (lon0 != null) {
+				Integer lat0 = null;
+				for (Integer lat1 : lats) {
+					if (lat0 != null) {
+						for (Area a : areas) {
+							if (a.getMinLong() <= lon0 && a.getMaxLong() >= lon1 && a.getMinLat() <= lat0
+									&& a.getMaxLat() >= lat1) {
+								size += (long) (lon1 - lon0) * (lat1 - lat0);
+								break;
+							}
+						}
+					}
+					lat0 = lat1;
+				}
+			}
+			lon0 = lon1;
+		}
+		return size;
+	}
+
+	@Test
+	public void testPseudoAreas() {
+		Random random = new Random(13);
+		List<Area> areas = createTiles(random, 300, false);
+		List<Area> all = ProblemLists.addPseudoAreas(areas);
+		assertEquals(areas, all.subList(0, areas.size()));
+		assertTrue(DistinctAreas.findOverlaps(all).isEmpty());
+		long sum = 0;
+		for (int i = 0; i < all.size(); i++) {
+			Area a = all.get(i);
+			sum += size(a);
+			assertEquals(i >= areas.size(), a.isPseudoArea());
+			assertTrue(a.verify());
+		}
+		long planet = (long) (Utils.MAX_LON_MAP_UNITS - Utils.MIN_LON_MAP_UNITS)
+				* (Utils.MAX_LAT_MAP_UNITS - Utils.MIN_LAT_MAP_UNITS);
+		assertEquals(planet, sum);
+		// nothing to add
+		assertEquals(all.size(), ProblemLists.addPseudoAreas(all).size());
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit tests for the worker threads of the problem-list generator. They must find
+ * the same problem ways and relations as a single thread.
+ */
+public class ProblemListProcessorTest {
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testWorkersSortedTypes() throws IOException {
+		File input = ProblemListsTest.writeTestFile(tmpFolder.newFolder(), false);
+		checkWorkers(input);
+		checkWorkers(input, "--max-areas=5");
+	}
+
+	/**
+	 * Nodes, ways and relations are mixed, so the workers have to wait for the pending batches
+	 * whenever the type changes.
+	 */
+	@Test
+	public void testWorkersInterleavedTypes() throws IOException {
+		File input = ProblemListsTest.writeTestFile(tmpFolder.newFolder(), true);
+		checkWorkers(input, "--mixed");
+		checkWorkers(input, "--mixed", "--max-areas=5");
+	}
+
+	private static void checkWorkers(File input, String... args) throws IOException {
+		String serial = ProblemListsTest.calcProblemList(input, withThreads(1, args));
+		assertTrue(serial.contains("way: "));
+		assertTrue(serial.contains("rel: "));
+		for (int threads : new int[] { 3, 6 }) {
+			assertEquals("problem list with " + threads + " threads", serial,
+					ProblemListsTest.calcProblemList(input, withThreads(threads, args)));
+		}
+	}
+
+	private static String[] withThreads(int threads, String... args) {
+		String[] res = new String[args.length + 1];
+		System.arraycopy(args, 0, res, 0, args.length);
+		res[args.length] = "--max-threads=" + threads;
+		return res;
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import uk.me.parabola.splitter.args.ParamParser;
+import uk.me.parabola.splitter.args.SplitterParams;
+
+/**
+ * Unit tests for the merging of problem ids and the problem-list generator
+ */
+public class ProblemListsTest {
+	/** number of areas in each direction, each area covers one degree */
+	private static final int GRID_SIZE = 6;
+
+	@Rule
+	public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+	@Test
+	public void testMergeEmpty() {
+		assertTrue(ProblemLists.mergeSortedIds(new ArrayList<LongArrayList>()).isEmpty());
+		assertTrue(ProblemLists.mergeSortedIds(Arrays.asList(new LongArrayList(), new LongArrayList())).isEmpty());
+	}
+
+	@Test
+	public void testMergeRandom() {
+		Random random = new Random(42);
+		List<LongArrayList> lists = new ArrayList<>();
+		TreeSet<Long> expected = new TreeSet<>();
+		for (int i = 0; i < 7; i++) {
+			LongArrayList list = new LongArrayList();
+			int n = i == 3 ? 0 : random.nextInt(5000);
+			for (int j = 0; j < n; j++) {
+				long id = random.nextInt(20000) - 100;
+				if (random.nextInt(10) == 0)
+					id += 1L << 40;
+				list.add(id);
+				expected.add(id);
+			}
+			lists.add(list);
+		}
+		LongArrayList merged = ProblemLists.mergeSortedIds(lists);
+		assertEquals(expected.size(), merged.size());
+		int i = 0;
+		for (long id : expected) {
+			assertEquals(id, merged.getLong(i++));
+		}
+	}
+
+	/**
+	 * The problem list must not depend on the number of passes. 
+	 */
+	@Test
+	public void testPassModes() throws IOException {
+		File input = writeTestFile(tmpFolder.newFolder(), false);
+		String multiPass = calcProblemList(input, "--problem-list-passes=max-areas", "--max-areas=5");
+		String singlePass = calcProblemList(input, "--problem-list-passes=single");
+		assertTrue(multiPass.contains("way: "));
+		assertTrue(multiPass.contains("rel: "));
+		assertEquals(multiPass, singlePass);
+	}
+
+	/**
+	 * Run the problem-list generator for a grid of areas. 
+	 * @param input the OSM file
+	 * @param args additional program arguments
+	 * @return the content of the written problem list
+	 */
+	static String calcProblemList(File input, String... args) throws IOException {
+		File outputDir = input.getParentFile();
+		List<String> argList = new ArrayList<>(Arrays.asList(args));
+		argList.add("--output-dir=" + outputDir.getPath());
+		SplitterParams params = new ParamParser().parse(SplitterParams.class, argList.toArray(new String[0]));
+		OSMFileHandler osmFileHandler = new OSMFileHandler();
+		osmFileHandler.setFileNames(Collections.singletonList(input.getPath()));
+		osmFileHandler.setMixed(params.isMixed());
+		osmFileHandler.setMaxThreads(params.getMaxThreads().getCount());
+		List<Area> areas = new ArrayList<>();
+		for (int i = 0; i < GRID_SIZE * GRID_SIZE; i++) {
+			int lat = i / GRID_SIZE;
+			int lon = i % GRID_SIZE;
+			Area area = new Area(Utils.toMapUnit(lat), Utils.toMapUnit(lon), Utils.toMapUnit(lat + 1),
+					Utils.toMapUnit(lon + 1));
+			area.setMapId(63240001 + i);
+			areas.add(area);
+		}
+		ProblemLists problemLists = new ProblemLists();
+		problemLists.calcProblemLists(osmFileHandler, areas, 0, params, outputDir);
+		File problemFile = new File(outputDir, "problem.list");
+		problemLists.writeProblemList(outputDir, problemFile.getName());
+		return new String(Files.readAllBytes(problemFile.toPath()), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Write an OSM file with random nodes, ways and relations in and around the grid of areas.
+	 * The ids are not sorted. 
+	 * @param dir the directory for the file
+	 * @param interleaved if true, the nodes, ways, and relations are mixed
+	 * @return the file
+	 */
+	static File writeTestFile(File dir, boolean interleaved) throws IOException {
+		Random random = new Random(4711);
+		List<String> nodes = new ArrayList<>();
+		List<String> ways = new ArrayList<>();
+		List<String> rels = new ArrayList<>();
+		LongArrayList nodeIds = new LongArrayList();
+		LongArrayList wayIds = new LongArrayList();
+		for (int w = 0; w < 3000; w++) {
+			// most ways are short, so that only some of them cross the border of an area 
+			double lat = -0.2 + random.nextDouble() * (GRID_SIZE + 0.4);
+			double lon = -0.2 + random.nextDouble() * (GRID_SIZE + 0.4);
+			StringBuilder sb = new StringBuilder();
+			long wayId = 1 + random.nextInt(1_000_000);
+			if (wayIds.contains(wayId))
+				continue;
+			wayIds.add(wayId);
+			sb.append("<way id=\"").append(wayId).append("\">");
+			int numRefs = 2 + random.nextInt(5);
+			for (int i = 0; i < numRefs; i++) {
+				long nodeId;
+				if (!nodeIds.isEmpty() && random.nextInt(10) == 0) {
+					nodeId = nodeIds.getLong(random.nextInt(nodeIds.size()));
+				} else {
+					nodeId = 1 + random.nextInt(1 << 30);
+					if (random.nextInt(20) == 0)
+						nodeId += 1L << 33;
+					if (nodeIds.contains(nodeId))
+						continue;
+					nodeIds.add(nodeId);
+					nodes.add(String.format("<node id=\"%d\" lat=\"%.7f\" lon=\"%.7f\"/>", nodeId,
+							lat + random.nextGaussian() * 0.05, lon + random.nextGaussian() * 0.05));
+				}
+				sb.append("<nd ref=\"").append(nodeId).append("\"/>");
+			}
+			sb.append("</way>");
+			ways.add(sb.toString());
+		}
+		String[][] relTags = { { "type", "multipolygon" }, { "type", "restriction" }, { "type", "boundary" },
+				{ "type", "route" } };
+		for (int r = 0; r < 500; r++) {
+			StringBuilder sb = new StringBuilder();
+			sb.append("<relation id=\"").append(1 + random.nextInt(100_000) * 7).append("\">");
+			int numMembers = 1 + random.nextInt(4);
+			for (int i = 0; i < numMembers; i++) {
+				if (random.nextBoolean()) {
+					sb.append("<member type=\"way\" ref=\"").append(wayIds.getLong(random.nextInt(wayIds.size())))
+							.append("\" role=\"outer\"/>");
+				} else {
+					sb.append("<member type=\"node\" ref=\"").append(nodeIds.getLong(random.nextInt(nodeIds.size())))
+							.append("\" role=\"\"/>");
+				}
+			}
+			String[] tag = relTags[random.nextInt(relTags.length)];
+			sb.append("<tag k=\"").append(tag[0]).append("\" v=\"").append(tag[1]).append("\"/>");
+			if ("boundary".equals(tag[1]))
+				sb.append("<tag k=\"boundary\" v=\"administrative\"/><tag k=\"admin_level\" v=\"")
+						.append(2 + random.nextInt(10)).append("\"/>");
+			sb.append("</relation>");
+			rels.add(sb.toString());
+		}
+		Collections.shuffle(nodes, random);
+		Collections.shuffle(ways, random);
+		List<String> elements = new ArrayList<>();
+		if (interleaved) {
+			// runs of random length of each type, also longer than a batch of the worker threads 
+			List<List<String>> lists = Arrays.asList(nodes, ways, rels);
+			int[] pos = new int[lists.size()];
+			while (elements.size() < nodes.size() + ways.size() + rels.size()) {
+				int t = random.nextInt(lists.size());
+				int len = random.nextInt(10) == 0 ? 5000 : 1 + random.nextInt(50);
+				List<String> list = lists.get(t);
+				for (int i = 0; i < len && pos[t] < list.size(); i++)
+					elements.add(list.get(pos[t]++));
+			}
+		} else {
+			elements.addAll(nodes);
+			elements.addAll(ways);
+			elements.addAll(rels);
+		}
+		File file = new File(dir, "test.osm");
+		try (PrintWriter w = new PrintWriter(file, "UTF-8")) {
+			w.println("<?xml version='1.0' encoding='UTF-8'?>");
+			w.println("<osm version=\"0.6\" generator=\"test\">");
+			for (String e : elements)
+				w.println(e);
+			w.println("</osm>");
+		}
+		return file;
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+
+import org.junit.Test;
+
+import uk.me.parabola.splitter.tools.RoaringBitSet;
+
+/**
+ * Unit tests for the relation graph of the {@link MultiTileProcessor}
+ */
+public class RelationGraphTest {
+
+	private static Relation createRel(long id, long... subRels) {
+		Relation rel = new Relation();
+		rel.setId(id);
+		rel.addTag("type", "multipolygon");
+		rel.addTag("name", "r" + id);
+		rel.addMember("way", id * 10, "outer");
+		rel.addMember("way", id * 10 + 1, "inner");
+		rel.addMember("node", id * 10 + 2, "label");
+		for (long sub : subRels)
+			rel.addMember("relation", sub, "subarea");
+		return rel;
+	}
+
+	private static RelationGraph createGraph() {
+		RelationGraph graph = new RelationGraph();
+		graph.add(createRel(1, 2, 3));
+		graph.add(createRel(2, 4));
+		graph.add(createRel(3, 4, 99));
+		graph.add(createRel(4));
+		// loop 5 -> 6 -> 7 -> 5
+		graph.add(createRel(5, 6));
+		graph.add(createRel(6, 7));
+		graph.add(createRel(7, 5, 4));
+		graph.finish();
+		return graph;
+	}
+
+	@Test
+	public void testMembers() {
+		RelationGraph graph = createGraph();
+		assertEquals(7, graph.size());
+		int idx = graph.getIndex(3);
+		assertEquals(2, idx);
+		assertEquals(-1, graph.getIndex(99));
+		assertEquals("r3", graph.getName(idx));
+		assertTrue(graph.isMultiPolygon(idx));
+		assertTrue(graph.hasRelMembers(idx));
+		assertFalse(graph.hasRelMembers(graph.getIndex(4)));
+		int start = graph.getMemberStart(idx);
+		assertEquals(5, graph.getMemberEnd(idx) - start);
+		assertEquals(31, graph.getMemberRef(start + 1));
+		assertEquals(RelationGraph.MEM_WAY_TYPE, graph.getMemberType(start + 1));
+		assertEquals("inner", graph.getMemberRole(start + 1));
+		assertEquals(RelationGraph.MEM_NODE_TYPE, graph.getMemberType(start + 2));
+		assertEquals(RelationGraph.MEM_REL_TYPE, graph.getMemberType(start + 4));
+		// missing sub relation 99 is not an edge
+		assertEquals(1, graph.getSubRelEnd(idx) - graph.getSubRelStart(idx));
+		assertEquals(graph.getIndex(4), graph.getSubRel(graph.getSubRelStart(idx)));
+	}
+
+	@Test
+	public void testComponents() {
+		RelationGraph graph = createGraph();
+		int[] comp = new int[graph.size()];
+		int numComps = graph.findComponents(comp);
+		assertEquals(5, numComps);
+		int loopComp = comp[graph.getIndex(5)];
+		assertEquals(loopComp, comp[graph.getIndex(6)]);
+		assertEquals(loopComp, comp[graph.getIndex(7)]);
+		// sub relations come first
+		for (int rel = 0; rel < graph.size(); rel++) {
+			for (int e = graph.getSubRelStart(rel); e < graph.getSubRelEnd(rel); e++)
+				assertTrue(comp[graph.getSubRel(e)] <= comp[rel]);
+		}
+	}
+
+	@Test
+	public void testRetain() {
+		RelationGraph graph = createGraph();
+		graph.setWriterIndex(graph.getIndex(3), 42);
+		RoaringBitSet keep = new RoaringBitSet();
+		keep.set(1);
+		keep.set(3);
+		RelationGraph retained = graph.retain(keep);
+		assertEquals(2, retained.size());
+		assertEquals(1, retained.getId(0));
+		assertEquals(3, retained.getId(1));
+		assertEquals(42, retained.getWriterIndex(1));
+		assertEquals("inner", retained.getMemberRole(retained.getMemberStart(1) + 1));
+		// only sub relation 3 is still known
+		assertEquals(1, retained.getSubRelEnd(0) - retained.getSubRelStart(0));
+		assertEquals(0, retained.getSubRelEnd(1) - retained.getSubRelStart(1));
+	}
+
+	@Test
+	public void testStore() {
+		RelationStore store = new RelationStore(new File(System.getProperty("java.io.tmpdir")));
+		for (long id = 1; id < 1000; id += 3) {
+			store.add(createRel(id * 1000, id * 1000 - 3000));
+		}
+		try {
+			store.add(createRel(5));
+			fail();
+		} catch (IllegalArgumentException e) {
+			// expected
+		}
+		store.finishWrite();
+		assertEquals(333, store.size());
+		RelationStore.Entry e = new RelationStore.Entry();
+		assertFalse(store.get(0, e));
+		assertFalse(store.get(2000, e));
+		assertFalse(store.get(1_000_000_000, e));
+		for (long id = 997; id > 0; id -= 3) {
+			assertTrue(store.get(id * 1000, e));
+			assertEquals(id * 1000, e.id);
+			assertEquals(4, e.numMembers);
+			assertEquals(id * 10000 + 1, e.refs[1]);
+			assertEquals("inner", e.roles[1]);
+			assertEquals(RelationGraph.MEM_REL_TYPE, e.types[3]);
+			assertEquals(id * 1000 - 3000, e.refs[3]);
+			assertEquals("r" + id * 1000, e.name);
+		}
+		RelationGraph graph = new RelationGraph();
+		store.get(4000, e);
+		graph.add(e);
+		store.get(7000, e);
+		graph.add(e);
+		graph.finish();
+		assertTrue(graph.isMultiPolygon(1));
+		assertEquals(0, graph.getSubRel(graph.getSubRelStart(1)));
+		store.finish();
+	}
+}
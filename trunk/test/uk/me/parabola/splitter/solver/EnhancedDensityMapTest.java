@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.solver;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Polygon;
+import java.awt.Rectangle;
+import java.util.Random;
+
+import org.junit.Test;
+
+import uk.me.parabola.splitter.Area;
+
+/**
+ * Unit tests for the prefix sums in {@link EnhancedDensityMap} and the searches in {@link Tile} 
+ */
+public class EnhancedDensityMapTest {
+	private static final int RESOLUTION = 16;
+
+	private static EnhancedDensityMap createMap(Random random, java.awt.geom.Area polygon) {
+		DensityMap densityMap = new DensityMap(new Area(0, 0, 40 << 8, 60 << 8), RESOLUTION);
+		for (int i = 0; i < 20_000; i++) {
+			// a few clusters and some empty rows and columns
+			int lat = random.nextInt(40 << 8);
+			int lon = random.nextInt(60 << 8);
+			if (i % 3 == 0) {
+				lat = (lat >> 3) + (10 << 8);
+				lon = (lon >> 2) + (30 << 8);
+			}
+			if ((lon >> 8) % 7 == 0)
+				continue;
+			densityMap.addNode(lat, lon);
+		}
+		return new EnhancedDensityMap(densityMap, polygon);
+	}
+
+	private static java.awt.geom.Area createPolygon() {
+		Polygon p = new Polygon();
+		p.addPoint(5 << 8, 2 << 8);
+		p.addPoint(55 << 8, 8 << 8);
+		p.addPoint(40 << 8, 38 << 8);
+		p.addPoint(10 << 8, 30 << 8);
+		return new java.awt.geom.Area(p);
+	}
+
+	@Test
+	public void testSums() {
+		Random random = new Random(3);
+		for (java.awt.geom.Area polygon : new java.awt.geom.Area[] { null, createPolygon() }) {
+			EnhancedDensityMap map = createMap(random, polygon);
+			DensityMap densityMap = map.getDensityMap();
+			assertEquals(densityMap.getNodeCount(), new Tile(map).getCount());
+			for (int i = 0; i < 500; i++) {
+				int x = random.nextInt(densityMap.getWidth());
+				int y = random.nextInt(densityMap.getHeight());
+				int w = random.nextInt(densityMap.getWidth() - x + 1);
+				int h = random.nextInt(densityMap.getHeight() - y + 1);
+				long sum = 0;
+				long sumOutside = 0;
+				int numOutside = 0;
+				for (int j = x; j < x + w; j++) {
+					for (int k = y; k < y + h; k++) {
+						sum += densityMap.getNodeCount(j, k);
+						if (!map.isGridElemInPolygon(j, k)) {
+							numOutside++;
+							sumOutside += densityMap.getNodeCount(j, k);
+						}
+					}
+				}
+				assertEquals(sum, map.getNodeCount(x, y, w, h));
+				assertEquals(sumOutside, map.getNodeCountOutsidePolygon(x, y, w, h));
+				assertEquals(numOutside, map.countElemsOutsidePolygon(x, y, w, h));
+				if (w > 0 && h > 0) {
+					Tile tile = new Tile(map, new Rectangle(x, y, w, h));
+					assertEquals(sum, tile.getCount());
+					assertEquals(sum - sumOutside, tile.countInside());
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testSearches() {
+		Random random = new Random(4);
+		EnhancedDensityMap map = createMap(random, null);
+		DensityMap densityMap = map.getDensityMap();
+		for (int i = 0; i < 300; i++) {
+			int x = random.nextInt(densityMap.getWidth() - 1);
+			int y = random.nextInt(densityMap.getHeight() - 1);
+			int w = 1 + random.nextInt(densityMap.getWidth() - x);
+			int h = 1 + random.nextInt(densityMap.getHeight() - y);
+			Tile tile = new Tile(map, new Rectangle(x, y, w, h));
+			long minNodes = 1 + random.nextInt(2000);
+			TileMetaInfo smi = new TileMetaInfo(tile, null, null);
+			smi.setMinNodes(minNodes);
+			long[] colSums = new long[w];
+			for (int j = 0; j < w; j++)
+				colSums[j] = tile.getColSum(j);
+			long[] rowSums = new long[h];
+			for (int j = 0; j < h; j++)
+				rowSums[j] = tile.getRowSum(j);
+			assertEquals(validStart(colSums, minNodes), tile.findValidStartX(smi));
+			assertEquals(validStart(rowSums, minNodes), tile.findValidStartY(smi));
+			assertEquals(validEnd(colSums, minNodes), tile.findValidEndX(smi));
+			assertEquals(validEnd(rowSums, minNodes), tile.findValidEndY(smi));
+			assertEquals(firstNonZero(colSums), smi.getFirstNonZeroX());
+			assertEquals(firstNonZero(rowSums), smi.getFirstNonZeroY());
+			long limit = random.nextInt(3000);
+			assertEquals(firstHigher(colSums, limit, h), tile.findFirstXHigher(smi, limit));
+			assertEquals(firstHigher(rowSums, limit, h), tile.findFirstYHigher(smi, limit));
+			for (int split = 1; split < w; split += 1 + w / 5) {
+				if (tile.splitHoriz(split, smi)) {
+					assertEquals(new Tile(map, smi.getParts()[0]).getCount(), smi.getParts()[0].getCount());
+					assertEquals(new Tile(map, smi.getParts()[1]).getCount(), smi.getParts()[1].getCount());
+				}
+			}
+		}
+	}
+
+	private static int validStart(long[] sums, long minNodes) {
+		long sum = 0;
+		for (int i = 0; i < sums.length; i++) {
+			sum += sums[i];
+			if (sum >= minNodes)
+				return i + 1;
+		}
+		return sums.length;
+	}
+
+	private static int validEnd(long[] sums, long minNodes) {
+		long sum = 0;
+		for (int i = sums.length - 1; i >= 0; i--) {
+			sum += sums[i];
+			if (sum >= minNodes)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int firstNonZero(long[] sums) {
+		for (int i = 0; i < sums.length; i++) {
+			if (sums[i] > 0)
+				return i;
+		}
+		return -1;
+	}
+
+	private static int firstHigher(long[] sums, long limit, int height) {
+		long sum = 0;
+		for (int i = 0; i < sums.length; i++) {
+			sum += sums[i];
+			if (sum > 0 && sum > limit)
+				return i;
+		}
+		return height;
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.solver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import uk.me.parabola.splitter.Area;
+import uk.me.parabola.splitter.SplitFailedException;
+
+/**
+ * Unit tests for the solvers of {@link SplittableDensityArea}
+ */
+public class SplittableDensityAreaTest {
+	private static final int RESOLUTION = 13;
+	private static final int SEARCH_LIMIT = 200_000;
+
+	static DensityMap createDensityMap(Random random, int numNodes) {
+		DensityMap densityMap = new DensityMap(new Area(0, 0, 120 << 8, 180 << 8), RESOLUTION);
+		for (int i = 0; i < numNodes; i++) {
+			// a few clusters
+			int lat = random.nextInt(120 << 8);
+			int lon = random.nextInt(180 << 8);
+			if (i % 3 == 0) {
+				lat = (lat >> 3) + (30 << 8);
+				lon = (lon >> 2) + (90 << 8);
+			} else if (i % 5 == 0) {
+				lat = (lat >> 4) + (80 << 8);
+				lon = (lon >> 4) + (20 << 8);
+			}
+			densityMap.addNode(lat, lon);
+		}
+		return densityMap;
+	}
+
+	static SplittableDensityArea.Solver createSolver(DensityMap densityMap, Tile tile, boolean searchAll,
+			long maxNodes) {
+		SplittableDensityArea.Solver solver = new SplittableDensityArea.Solver(1, searchAll, maxNodes, tile,
+				densityMap.getShift(), 0, false, SEARCH_LIMIT, false);
+		solver.maxAspectRatio = SplittableDensityArea.NICE_MAX_ASPECT_RATIO;
+		return solver;
+	}
+
+	private static List<String> getTiles(Solution sol) {
+		List<String> tiles = new ArrayList<>();
+		for (Tile tile : sol.getTiles())
+			tiles.add(tile.toString());
+		return tiles;
+	}
+
+	/**
+	 * The parallel search of split positions must find the same solution as the sequential search.
+	 */
+	@Test
+	public void testParallelSearch() {
+		Random random = new Random(47);
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			for (int i = 0; i < 3; i++) {
+				DensityMap densityMap = createDensityMap(random, 50_000 + random.nextInt(100_000));
+				EnhancedDensityMap map = new EnhancedDensityMap(densityMap, null);
+				long maxNodes = 2000 + random.nextInt(3000);
+				for (boolean searchAll : new boolean[] { true, false }) {
+					Tile tile = new Tile(map);
+					SplittableDensityArea.Solver sequential = createSolver(densityMap, tile, searchAll, maxNodes);
+					sequential.solve();
+					SplittableDensityArea.Solver parallel = createSolver(densityMap, tile, searchAll, maxNodes);
+					parallel.searchPool = pool;
+					parallel.solve();
+					assertFalse(sequential.bestSolution.isEmpty());
+					assertEquals(getTiles(sequential.bestSolution), getTiles(parallel.bestSolution));
+				}
+			}
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * When the time budget has expired, the solver stops with the first solution instead of
+	 * searching for better ones. 
+	 */
+	@Test
+	public void testExpiredTimeBudget() {
+		DensityMap densityMap = createDensityMap(new Random(49), 100_000);
+		Tile tile = new Tile(new EnhancedDensityMap(densityMap, null));
+		SplittableDensityArea.Solver unlimited = createSolver(densityMap, tile, true, 3000);
+		unlimited.solve();
+		assertFalse(unlimited.isStopped());
+		SplittableDensityArea.Solver limited = createSolver(densityMap, tile, true, 3000);
+		limited.hasDeadline = true;
+		limited.deadline = System.nanoTime();
+		limited.solve();
+		assertTrue(limited.isStopped());
+		assertFalse(limited.bestSolution.isEmpty());
+		// the unlimited solver found a better solution in the following loops
+		assertTrue(limited.bestSolution.compareTo(unlimited.bestSolution) > 0);
+	}
+
+	/**
+	 * A crash of one solver stops the other one and the split fails.
+	 */
+	@Test
+	public void testSolverCrash() throws InterruptedException {
+		DensityMap densityMap = createDensityMap(new Random(50), 10_000);
+		SplittableDensityArea area = new SplittableDensityArea(densityMap, SEARCH_LIMIT, false);
+		area.setMaxNodes(1000);
+		Tile tile = new Tile(new EnhancedDensityMap(densityMap, null));
+		CountDownLatch otherEnded = new CountDownLatch(1);
+		SplittableDensityArea.Solver other = new SplittableDensityArea.Solver(1, true, 1000, tile,
+				densityMap.getShift(), 0, false, SEARCH_LIMIT, false) {
+			@Override
+			public void solve() {
+				// runs until it is stopped
+				while (!isStopped()) {
+					try {
+						Thread.sleep(10);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						return;
+					}
+				}
+				otherEnded.countDown();
+			}
+		};
+		SplittableDensityArea.Solver crashing = new SplittableDensityArea.Solver(2, false, 1000, tile,
+				densityMap.getShift(), 0, false, SEARCH_LIMIT, false) {
+			@Override
+			public void solve() {
+				throw new IllegalStateException("test crash");
+			}
+		};
+		try {
+			area.runSolvers(Arrays.asList(other, crashing));
+			fail("crash was not reported");
+		} catch (SplitFailedException e) {
+			assertTrue(e.getCause() instanceof IllegalStateException);
+		}
+		assertTrue(other.isStopped());
+		assertTrue(otherEnded.await(10, TimeUnit.SECONDS));
+	}
+}
@@ -15,8 +15,10 @@ package uk.me.parabola.splitter.tools;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
@@ -39,6 +41,47 @@ public class CustomCollectionsTest {
 		testMap(new Long2IntClosedMap("test", 10000, -1));
 	}
 
+	@Test
+	public void testLong2IntEliasFanoMap() {
+		testMap(new Long2IntEliasFanoMap("test", 10000, -1));
+
+		// sparse keys with dense runs, values change their range while the map is filled
+		Random random = new Random(101);
+		int n = 5000;
+		long[] keys = new long[n];
+		int[] vals = new int[n];
+		Long2IntEliasFanoMap map = new Long2IntEliasFanoMap("test", n, Short.MIN_VALUE);
+		long key = -1L << 40;
+		for (int i = 0; i < n; i++) {
+			key += random.nextInt(10) == 0 ? 1 + random.nextInt(1 << 20) : 1 + random.nextInt(3);
+			keys[i] = key;
+			vals[i] = i < 1000 ? Short.MIN_VALUE : random.nextInt(i) - 500;
+			assertEquals(i, map.add(key, vals[i]));
+		}
+		for (int i = 0; i < n; i += 7) {
+			int old = vals[i];
+			vals[i] = random.nextInt();
+			assertEquals(old, map.replace(keys[i], vals[i]));
+		}
+		for (int i = 0; i < n; i++) {
+			assertEquals(i, map.getKeyPos(keys[i]));
+			assertEquals(vals[i], map.getRandom(keys[i]));
+			if (keys[i] + 1 != (i + 1 < n ? keys[i + 1] : 0))
+				assertEquals(-1, map.getKeyPos(keys[i] + 1));
+		}
+		assertEquals(-1, map.getKeyPos(keys[0] - 1));
+		map.switchToSeqAccess(null);
+		for (int pass = 0; pass < 2; pass++) {
+			for (int i = 0; i < n; i++) {
+				if (i == 0 || keys[i - 1] != keys[i] - 1)
+					assertEquals(Short.MIN_VALUE, map.getSeq(keys[i] - 1));
+				assertEquals(vals[i], map.getSeq(keys[i]));
+			}
+			map.close();
+		}
+		map.finish();
+	}
+
 	private static void testMap(Long2IntClosedMapFunction map) {
 		int val;
 		for (int i = 1; i < 1000; i++) {
@@ -81,6 +124,34 @@ public class CustomCollectionsTest {
 		map.finish();
 	}
 
+	@Test
+	public void testOSMId2IntMap() {
+		OSMId2IntMap map = new OSMId2IntMap(Integer.MIN_VALUE);
+		long[] keys = { 1, 0x7ffffff, 0x8000000, 1L << 40, -1, -(1L << 40) };
+		for (int i = 0; i < keys.length; i++) {
+			assertEquals(Integer.MIN_VALUE, map.put(keys[i], i - 3));
+		}
+		assertEquals(keys.length, map.size());
+		assertEquals(-3, map.put(keys[0], Short.MIN_VALUE));
+		assertEquals(keys.length, map.size());
+		assertEquals(Integer.MIN_VALUE, map.get(2));
+		Map<Long, Integer> seen = new HashMap<>();
+		map.forEach((key, val) -> seen.put(key, val));
+		assertEquals(keys.length, seen.size());
+		assertEquals(Short.MIN_VALUE, seen.get(keys[0]).intValue());
+		for (int i = 1; i < keys.length; i++) {
+			assertEquals(i - 3, map.get(keys[i]));
+			assertEquals(i - 3, seen.get(keys[i]).intValue());
+		}
+		assertEquals(Integer.MIN_VALUE, map.remove(2));
+		assertEquals(-2, map.remove(keys[1]));
+		assertEquals(false, map.containsKey(keys[1]));
+		assertEquals(true, map.containsKey(keys[2]));
+		assertEquals(keys.length - 1, map.size());
+		map.clear();
+		assertEquals(true, map.isEmpty());
+	}
+
 	private static void testVals(SparseLong2IntMap map, long idOffset, List<Integer> vals) {
 		map.clear();
 		map.put(1, -12000);
@@ -123,9 +194,118 @@ public class CustomCollectionsTest {
 		testMap(-1L << 35);
 	}
 
+	@Test
+	public void testConcurrentSparseLong2IntMap() throws InterruptedException {
+		final int numThreads = 4;
+		final int idsPerThread = 300_000;
+		ConcurrentSparseLong2IntMap map = new ConcurrentSparseLong2IntMap("test", numThreads);
+		map.defaultReturnValue(UNASSIGNED);
+		// each thread writes an interleaved set of id ranges 
+		Thread[] threads = new Thread[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int part = t;
+			threads[t] = new Thread(() -> {
+				for (int i = 0; i < idsPerThread; i++) {
+					long id = -100_000L + (long) (i / 1000 * numThreads + part) * 1000 + i % 1000;
+					map.put(id, (int) (id % 5000) - 2000);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		assertEquals((long) numThreads * idsPerThread, map.size());
+		map.seal();
+		final boolean[] ok = new boolean[numThreads];
+		for (int t = 0; t < numThreads; t++) {
+			final int part = t;
+			threads[t] = new Thread(() -> {
+				boolean res = true;
+				for (long id = -100_000L + part; id < -100_000L + numThreads * idsPerThread; id += numThreads) {
+					res &= map.get(id) == (int) (id % 5000) - 2000;
+				}
+				ok[part] = res && map.get(-100_001L) == UNASSIGNED;
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads)
+			t.join();
+		for (boolean b : ok)
+			assertEquals(true, b);
+
+		// updates after seal, the chunk cache of this thread must not return old values 
+		assertEquals(-2000, map.get(0));
+		assertEquals(-2000, map.put(0, 17));
+		assertEquals(17, map.get(0));
+		map.seal();
+		assertEquals(17, map.get(0));
+		assertEquals(-1999, map.get(1));
+		assertEquals(UNASSIGNED, map.get(-100_001L));
+		map.defaultReturnValue(-1);
+		assertEquals(-1, map.get(-100_001L));
+	}
+
+	@Test
+	public void testSparseLong2IntMapChunkCache() {
+		SparseLong2IntMap map = new SparseLong2IntMap("test");
+		map.defaultReturnValue(UNASSIGNED);
+		Random random = new Random(42);
+		Map<Long, Integer> ref = new HashMap<>();
+		// many chunks map to the same cache set 
+		for (int i = 0; i < 20_000; i++) {
+			long id = (random.nextInt(50) * 1024L + random.nextInt(8)) * 64 + random.nextInt(64);
+			if (random.nextInt(3) == 0) {
+				int val = random.nextInt(100);
+				ref.put(id, val);
+				map.put(id, val);
+			} else {
+				Integer expected = ref.get(id);
+				assertEquals("id=" + id, expected == null ? UNASSIGNED : expected, map.get(id));
+			}
+		}
+		map.defaultReturnValue(-1);
+		assertEquals(-1, map.get(-64));
+	}
+
+	@Test
+	public void testFastEncodingSparseLong2IntMap() {
+		SparseLong2IntMap map = new SparseLong2IntMap("test");
+		map.setEncoding(SparseLong2IntMap.Encoding.FAST);
+		testMap(map, 0L);
+		testMap(map, -1L << 35);
+		// chunks written with both encodings
+		map.clear();
+		map.setEncoding(SparseLong2IntMap.Encoding.COMPACT);
+		for (int i = 0; i < 1000; i++)
+			map.put(i, i % 7);
+		map.setEncoding(SparseLong2IntMap.Encoding.FAST);
+		for (int i = 1000; i < 2000; i++)
+			map.put(i, i % 7);
+		for (int i = 0; i < 2000; i += 3)
+			map.put(i, -i);
+		for (int i = 0; i < 2000; i++)
+			assertEquals(i % 3 == 0 ? -i : i % 7, map.get(i));
+	}
+
+	@Test
+	public void testOffHeapSparseLong2IntMap() throws IOException {
+		testMap(new SparseLong2IntMap("test", SparseLong2IntMap.Storage.DIRECT, null), 0L);
+		testMap(new SparseLong2IntMap("test", SparseLong2IntMap.Storage.DIRECT, null), -1L << 35);
+		File tmpDir = Files.createTempDirectory("splitter-test").toFile();
+		try {
+			testMap(new SparseLong2IntMap("test", SparseLong2IntMap.Storage.MAPPED, tmpDir), 0L);
+			testMap(new SparseLong2IntMap("test", SparseLong2IntMap.Storage.MAPPED, tmpDir), 1L << 35);
+		} finally {
+			tmpDir.delete();
+		}
+	}
+
 	private static int UNASSIGNED = Integer.MIN_VALUE;
 	private static void testMap(long idOffset) {
-		SparseLong2IntMap map = new SparseLong2IntMap("test");
+		testMap(new SparseLong2IntMap("test"), idOffset);
+	}
+	
+	private static void testMap(SparseLong2IntMap map, long idOffset) {
 		map.defaultReturnValue(UNASSIGNED);
 
 		// special patterns
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the bounded cache
+ */
+public class Long2LongClockCacheTest {
+
+	@Test
+	public void testNoEviction() {
+		Long2LongClockCache cache = new Long2LongClockCache(100_000, 1);
+		cache.defaultReturnValue(Long.MAX_VALUE);
+		Map<Long, Long> expected = new HashMap<>();
+		Random random = new Random(4711);
+		for (int i = 0; i < 200_000; i++) {
+			long key = random.nextInt(50_000) * 0x1_0000_0001L;
+			long val = random.nextInt(1000);
+			if (random.nextBoolean()) {
+				cache.put(key, val);
+				expected.put(key, val);
+			} else {
+				cache.putMin(key, val);
+				expected.merge(key, val, Math::min);
+			}
+		}
+		assertEquals(expected.size(), cache.size());
+		for (int i = -10; i < 60_000; i++) {
+			long key = i * 0x1_0000_0001L;
+			assertEquals(expected.getOrDefault(key, Long.MAX_VALUE).longValue(), cache.get(key));
+		}
+		assertEquals(expected.size(), cache.getHits());
+		assertEquals(60_010 - expected.size(), cache.getMisses());
+		assertEquals(0, cache.getEvictions());
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertEquals(Long.MAX_VALUE, cache.get(0));
+	}
+
+	@Test
+	public void testEviction() {
+		for (int numThreads : new int[] { 1, 4 }) {
+			Long2LongClockCache cache = new Long2LongClockCache(10_000, numThreads);
+			cache.defaultReturnValue(-1);
+			// a small set of keys which is used all the time
+			for (long key = 0; key < 100; key++) {
+				cache.put(key, key);
+			}
+			for (long key = 100; key < 100_000; key++) {
+				cache.put(key, key);
+				assertEquals(key % 100, cache.get(key % 100));
+			}
+			assertTrue(cache.size() <= 10_000);
+			assertTrue(cache.size() > 9_000);
+			assertEquals(100_000 - cache.size(), cache.getEvictions());
+			int found = 0;
+			for (long key = 0; key < 100_000; key++) {
+				long val = cache.get(key);
+				if (val >= 0) {
+					assertEquals(key, val);
+					found++;
+				}
+			}
+			assertEquals(cache.size(), found);
+			for (long key = 0; key < 100; key++) {
+				assertEquals(key, cache.get(key));
+			}
+		}
+	}
+
+	@Test
+	public void testPutAllMin() {
+		Long2LongClockCache cache = new Long2LongClockCache(10_000, 4);
+		cache.defaultReturnValue(-1);
+		Long2LongClockCache other = new Long2LongClockCache(10_000, 1);
+		other.defaultReturnValue(-1);
+		cache.putAllMin(other);
+		assertEquals(0, cache.size());
+		for (long key = 0; key < 1000; key++) {
+			cache.put(key, 500);
+			other.put(key + 500, key);
+		}
+		cache.putAllMin(other);
+		assertEquals(1500, cache.size());
+		for (long key = 0; key < 1500; key++) {
+			long expected = key < 500 ? 500 : Math.min(key - 500, key < 1000 ? 500 : Long.MAX_VALUE);
+			assertEquals(expected, cache.get(key));
+		}
+	}
+
+	@Test
+	public void testConcurrentAccess() throws InterruptedException {
+		Long2LongClockCache cache = new Long2LongClockCache(5_000, 4);
+		cache.defaultReturnValue(-1);
+		Thread[] threads = new Thread[4];
+		for (int t = 0; t < threads.length; t++) {
+			final int start = t;
+			threads[t] = new Thread(() -> {
+				for (long key = start; key < 200_000; key += 4) {
+					cache.putMin(key, key);
+					long val = cache.get(key);
+					if (val != key && val != -1)
+						throw new AssertionError("wrong value for key " + key);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread t : threads) {
+			t.join();
+		}
+		assertTrue(cache.size() <= 5_000);
+		assertEquals(200_000, cache.getHits() + cache.getMisses());
+		assertEquals(200_000 - cache.size(), cache.getEvictions());
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 or
+ * version 2 as published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+package uk.me.parabola.splitter.tools;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import it.unimi.dsi.fastutil.longs.LongIterator;
+
+/**
+ * Unit tests for the Roaring-style BitSet implementation
+ */
+public class RoaringBitSetTest {
+	private static final int NUM = 10000;
+	private static final long[] POS = { 1, 63, 64, 65, 4711, 65535, 65536, 12345654321L, -1, -65537 };
+
+	@Test
+	public void testSequential() {
+		RoaringBitSet set = new RoaringBitSet();
+		for (long i = 1; i < NUM; i++) {
+			set.set(i);
+			assertEquals("get(" + i + ")", true, set.get(i));
+		}
+		assertEquals("cardinality() returns wrong value", NUM - 1, set.cardinality());
+		set.runOptimize();
+		assertTrue(set.getEstimatedBytes() < 100);
+		for (long i = 1; i < NUM; i++) {
+			set.clear(i);
+			assertEquals("get(" + i + ")", false, set.get(i));
+			assertEquals("cardinality() returns wrong value", NUM - i - 1, set.cardinality());
+		}
+	}
+
+	@Test
+	public void testSingleValues() {
+		RoaringBitSet set = new RoaringBitSet();
+		for (long i : POS) {
+			set.set(i);
+			assertEquals("get(" + i + ")", true, set.get(i));
+			assertEquals("cardinality() returns wrong value", 1, set.cardinality());
+			set.clear(i);
+			assertEquals("get(" + i + ")", false, set.get(i));
+			assertEquals("cardinality() returns wrong value", 0, set.cardinality());
+		}
+	}
+
+	@Test
+	public void testRandomAgainstTreeSet() {
+		Random random = new Random(4711);
+		RoaringBitSet set = new RoaringBitSet();
+		TreeSet<Long> ref = new TreeSet<>();
+		for (int round = 0; round < 4; round++) {
+			// dense ranges, sparse values and removals in a few containers
+			for (int i = 0; i < 60_000; i++) {
+				long base = (random.nextInt(6) - 2) * 65536L;
+				long key;
+				if (round % 2 == 0)
+					key = base + random.nextInt(65536);
+				else
+					key = base + 1000 + i % 20000;
+				if (random.nextInt(4) == 0) {
+					set.clear(key);
+					ref.remove(key);
+				} else {
+					set.set(key);
+					ref.add(key);
+				}
+			}
+			if (round >= 1)
+				set.runOptimize();
+			check(set, ref);
+		}
+	}
+
+	@Test
+	public void testOr() {
+		Random random = new Random(42);
+		RoaringBitSet a = new RoaringBitSet();
+		RoaringBitSet b = new RoaringBitSet();
+		TreeSet<Long> ref = new TreeSet<>();
+		for (int i = 0; i < 20_000; i++) {
+			long key = random.nextInt(300_000);
+			a.set(key);
+			ref.add(key);
+		}
+		for (long key = 100_000; key < 200_000; key++) {
+			b.set(key);
+			ref.add(key);
+		}
+		b.runOptimize();
+		b.set(5_000_000);
+		ref.add(5_000_000L);
+		int cardB = b.cardinality();
+		a.or(b);
+		check(a, ref);
+		assertEquals(cardB, b.cardinality());
+		// the result must not share containers with b
+		a.clear(150_000);
+		assertTrue(b.get(150_000));
+	}
+
+	private static void check(RoaringBitSet set, TreeSet<Long> ref) {
+		assertEquals(ref.size(), set.cardinality());
+		LongIterator iter = set.iterator();
+		Iterator<Long> refIter = ref.iterator();
+		while (refIter.hasNext()) {
+			long expected = refIter.next();
+			assertTrue(iter.hasNext());
+			assertEquals(expected, iter.nextLong());
+			assertTrue(set.get(expected));
+			if (!ref.contains(expected + 1))
+				assertEquals(false, set.get(expected + 1));
+		}
+		assertEquals(false, iter.hasNext());
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2026
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License version 3 as
+ * published by the Free Software Foundation.
+ *
+ * This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * General Public License for more details.
+ */
+
+package uk.me.parabola.splitter.tools;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Random;
+
+import it.unimi.dsi.fastutil.ints.IntArrayList;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import uk.me.parabola.splitter.AbstractMapProcessor;
+import uk.me.parabola.splitter.Node;
+import uk.me.parabola.splitter.OSMFileHandler;
+import uk.me.parabola.splitter.Way;
+
+/**
+ * Compares put/get throughput and memory of the {@link SparseLong2IntMap} encodings.
+ * This is not a unit test, run it with an OSM file to use a real node id distribution:
+ * <pre>
+ * java -cp ... uk.me.parabola.splitter.tools.SparseLong2IntMapBenchmark [file.osm.pbf]
+ * </pre>
+ * The values stored for the nodes are the numbers of the cells of a 2^16 map units grid,
+ * the gets follow the node refs of the ways. Without a file a synthetic distribution is used.
+ */
+public class SparseLong2IntMapBenchmark {
+	private static final int ROUNDS = 5;
+
+	private final LongArrayList ids = new LongArrayList();
+	private final IntArrayList vals = new IntArrayList();
+	private final LongArrayList refs = new LongArrayList();
+
+	public static void main(String[] args) {
+		SparseLong2IntMapBenchmark bench = new SparseLong2IntMapBenchmark();
+		if (args.length > 0 && new File(args[0]).exists())
+			bench.readFile(args[0]);
+		else
+			bench.synthesize(20_000_000, 42);
+		System.out.println("nodes: " + bench.ids.size() + ", way refs: " + bench.refs.size());
+		for (SparseLong2IntMap.Encoding encoding : SparseLong2IntMap.Encoding.values()) {
+			bench.run(encoding);
+		}
+	}
+
+	private void readFile(String fileName) {
+		OSMFileHandler handler = new OSMFileHandler();
+		handler.setFileNames(Collections.singletonList(fileName));
+		handler.execute(new AbstractMapProcessor() {
+			@Override
+			public void processNode(Node n) {
+				ids.add(n.getId());
+				vals.add((n.getMapLat() >> 16) * 512 + (n.getMapLon() >> 16));
+			}
+
+			@Override
+			public void processWay(Way w) {
+				refs.addAll(w.getRefs());
+			}
+		});
+	}
+
+	/**
+	 * Create sorted ids with gaps, values change in runs like tiles in a sorted OSM file,
+	 * refs are short sequences starting at random positions.
+	 */
+	private void synthesize(int numNodes, long seed) {
+		Random random = new Random(seed);
+		long id = 1;
+		int val = 0;
+		for (int i = 0; i < numNodes; i++) {
+			id += 1 + (random.nextInt(10) == 0 ? random.nextInt(50) : 0);
+			if (random.nextInt(2000) == 0)
+				val = random.nextInt(20);
+			ids.add(id);
+			vals.add(random.nextInt(100) == 0 ? val + 1 : val); // node near a tile border
+		}
+		while (refs.size() < numNodes) {
+			int pos = random.nextInt(numNodes - 20);
+			int len = 2 + random.nextInt(15);
+			for (int i = 0; i < len; i++)
+				refs.add(ids.getLong(pos + i));
+		}
+	}
+
+	private void run(SparseLong2IntMap.Encoding encoding) {
+		long bestPut = Long.MAX_VALUE;
+		long bestGet = Long.MAX_VALUE;
+		long bytes = 0;
+		long check = 0;
+		for (int round = 0; round < ROUNDS; round++) {
+			SparseLong2IntMap map = new SparseLong2IntMap("bench", SparseLong2IntMap.Storage.HEAP, null, false);
+			map.setEncoding(encoding);
+			long t0 = System.nanoTime();
+			for (int i = 0; i < ids.size(); i++) {
+				map.put(ids.getLong(i), vals.getInt(i));
+			}
+			map.flush();
+			long t1 = System.nanoTime();
+			for (int i = 0; i < refs.size(); i++) {
+				check += map.get(refs.getLong(i));
+			}
+			long t2 = System.nanoTime();
+			bestPut = Math.min(bestPut, t1 - t0);
+			bestGet = Math.min(bestGet, t2 - t1);
+			bytes = map.getEstimatedBytes();
+		}
+		System.out.println(String.format("%-8s put: %6.1f M ops/s, get: %6.1f M ops/s, memory: %5.2f MB per million entries (%d)",
+				encoding, ids.size() * 1e3 / bestPut, refs.size() * 1e3 / bestGet,
+				bytes / (ids.size() / 1e6) / (1 << 20), check));
+	}
+}